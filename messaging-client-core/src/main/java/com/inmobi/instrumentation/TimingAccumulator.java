@@ -42,6 +42,13 @@ public class TimingAccumulator {
     invocationCount.incrementAndGet();
   }
 
+  /**
+   * Account for a batch of invocations at once.
+   */
+  public void accumulateInvocations(int count) {
+    invocationCount.addAndGet(count);
+  }
+
   public long accumulateInvocationStartTimer() {
     long r = System.nanoTime();
     invocationCount.incrementAndGet();
@@ -56,20 +63,20 @@ public class TimingAccumulator {
    * Accumulator for time spent in a call
    * Usually incremented only on successful returns
    */
-  private void accumulateSuccess() {
-    successCount.incrementAndGet();
+  private void accumulateSuccess(int count) {
+    successCount.addAndGet(count);
   }
 
-  private void accumulateFailure() {
-    failureCount.incrementAndGet();
+  private void accumulateFailure(int count) {
+    failureCount.addAndGet(count);
   }
 
-  private void accumulateRetry() {
-    retryCount.incrementAndGet();
+  private void accumulateRetry(int count) {
+    retryCount.addAndGet(count);
   }
 
-  private void accumulateLost() {
-    lostCount.incrementAndGet();
+  private void accumulateLost(int count) {
+    lostCount.addAndGet(count);
   }
 
   /**
@@ -80,37 +87,45 @@ public class TimingAccumulator {
     cumulativeNanoseconds.addAndGet(nanos);
   }
 
-  private void accumulateGracefulTerminates() {
-    gracefulTerminates.incrementAndGet();
+  private void accumulateGracefulTerminates(int count) {
+    gracefulTerminates.addAndGet(count);
   }
 
   public void accumulateOutcomeWithDelta(Outcome o, long delta) {
-    accumulateOutcome(o);
+    accumulateOutcomes(o, 1);
     accumulateTimeSpent(delta);    	
   }
 
+  /**
+   * Account for the same outcome of a batch of invocations at once.
+   */
+  public void accumulateOutcomeWithDelta(Outcome o, long delta, int count) {
+    accumulateOutcomes(o, count);
+    accumulateTimeSpent(delta);
+  }
+
   public void accumulateOutcome(Outcome o, long startTime) {
-    accumulateOutcome(o);
+    accumulateOutcomes(o, 1);
     long e = System.nanoTime();
     accumulateTimeSpent(e - startTime);    	
   }
 
-  private void accumulateOutcome(Outcome o) {
+  private void accumulateOutcomes(Outcome o, int count) {
     switch(o) {
     case SUCCESS:
-      accumulateSuccess();
+      accumulateSuccess(count);
       break;
     case GRACEFUL_FAILURE:
-      accumulateGracefulTerminates();
+      accumulateGracefulTerminates(count);
       break;
     case UNHANDLED_FAILURE:
-      accumulateFailure();
+      accumulateFailure(count);
       break;
     case LOST:
-      accumulateLost();
+      accumulateLost(count);
       break;
     case RETRY:
-      accumulateRetry();
+      accumulateRetry(count);
       break;
     }
   }
@@ -5,10 +5,15 @@ import java.nio.ByteBuffer;
 /**
  *  Message class holding the data.
  *
+ *  Messages allocated from a {@link MessagePool} are reference counted; the
+ *  holder of the last reference calls {@link #release()} to hand the buffer
+ *  back to the pool. For other messages {@link #retain()} and
+ *  {@link #release()} do nothing.
  */
 public final class Message {
 
   private final ByteBuffer data;
+  private final MessagePool.PooledBuffer buffer;
 
   /**
    * Create new message with {@link ByteBuffer}
@@ -16,7 +21,7 @@ public final class Message {
    * @param data The {@link ByteBuffer}
    */
   public Message(ByteBuffer data) {
-    this.data = data;
+    this(data, null);
   }
 
   /**
@@ -25,7 +30,12 @@ public final class Message {
    * @param data The byte array.
    */
   public Message(byte[] data) {
-    this.data = ByteBuffer.wrap(data);
+    this(ByteBuffer.wrap(data), null);
+  }
+
+  Message(ByteBuffer data, MessagePool.PooledBuffer buffer) {
+    this.data = data;
+    this.buffer = buffer;
   }
 
   /**
@@ -37,6 +47,40 @@ public final class Message {
     return data;
   }
 
+  /**
+   * Whether the message data is backed by a pooled buffer.
+   */
+  public boolean isPooled() {
+    return buffer != null;
+  }
+
+  MessagePool.PooledBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * Take an additional reference on the pooled buffer of this message.
+   * 
+   * @return this message
+   */
+  public Message retain() {
+    if (buffer != null) {
+      buffer.retain();
+    }
+    return this;
+  }
+
+  /**
+   * Drop a reference on the pooled buffer of this message. The buffer goes
+   * back to the pool once the last reference is dropped, after which the data
+   * must not be accessed anymore.
+   */
+  public void release() {
+    if (buffer != null) {
+      buffer.release();
+    }
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
@@ -62,9 +106,16 @@ public final class Message {
     return true;
   }
 
+  /**
+   * Create a message sharing the data of this message. For pooled messages
+   * the clone holds its own reference, which has to be released separately.
+   */
   @Override
   public Message clone() {
-    Message m = new Message(data.duplicate());
+    if (buffer != null) {
+      buffer.retain();
+    }
+    Message m = new Message(data.duplicate(), buffer);
     return m;
   }
 }
@@ -0,0 +1,269 @@
+package com.inmobi.messaging;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size-classed pool of heap buffers backing reference counted
+ * {@link Message}s.
+ *
+ * Buffers are bucketed in power of two size classes, starting at
+ * {@link #MIN_BUFFER_SIZE} bytes. A message allocated from the pool starts
+ * with a reference count of one; {@link Message#retain()} and
+ * {@link Message#release()} adjust it and the buffer goes back to its size
+ * class when the count drops to zero. Requests larger than the maximum
+ * buffer size are served with plain buffers which are left to the garbage
+ * collector on release.
+ *
+ * Since a pooled buffer is usually larger than the message it holds, readers
+ * of pooled messages must honour the position and limit of
+ * {@link Message#getData()} instead of reading the whole backing array.
+ *
+ * When leak tracking is enabled, the pool remembers where every outstanding
+ * buffer was allocated; {@link #reportLeaks()} logs those sites.
+ */
+public class MessagePool {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MessagePool.class);
+
+  public static final int MIN_BUFFER_SIZE = 64;
+  public static final int DEFAULT_MAX_BUFFER_SIZE = 1024 * 1024;
+  public static final int DEFAULT_BUFFERS_PER_SIZE_CLASS = 1024;
+
+  private static final int MIN_SHIFT = 6;
+
+  private final int maxBufferSize;
+  private final int maxBuffersPerSizeClass;
+  private final SizeClass[] sizeClasses;
+  private final Map<PooledBuffer, Throwable> allocationSites;
+
+  private final AtomicLong numAllocations = new AtomicLong(0);
+  private final AtomicLong numReused = new AtomicLong(0);
+  private final AtomicLong numReleased = new AtomicLong(0);
+
+  public MessagePool() {
+    this(DEFAULT_MAX_BUFFER_SIZE, DEFAULT_BUFFERS_PER_SIZE_CLASS, false);
+  }
+
+  /**
+   * Create a new pool.
+   *
+   * @param maxBufferSize The largest buffer size which is pooled, rounded up
+   * to a power of two
+   * @param maxBuffersPerSizeClass The number of idle buffers retained per
+   * size class
+   * @param trackLeaks Whether to remember allocation sites of outstanding
+   * buffers
+   */
+  public MessagePool(int maxBufferSize, int maxBuffersPerSizeClass,
+      boolean trackLeaks) {
+    if (maxBufferSize < MIN_BUFFER_SIZE) {
+      throw new IllegalArgumentException("Max buffer size should be at least "
+          + MIN_BUFFER_SIZE);
+    }
+    int numClasses = sizeClassIndex(maxBufferSize) + 1;
+    this.maxBufferSize = MIN_BUFFER_SIZE << (numClasses - 1);
+    this.maxBuffersPerSizeClass = maxBuffersPerSizeClass;
+    this.sizeClasses = new SizeClass[numClasses];
+    for (int i = 0; i < numClasses; i++) {
+      sizeClasses[i] = new SizeClass(MIN_BUFFER_SIZE << i);
+    }
+    if (trackLeaks) {
+      allocationSites = new HashMap<PooledBuffer, Throwable>();
+    } else {
+      allocationSites = null;
+    }
+  }
+
+  static int sizeClassIndex(int size) {
+    if (size <= MIN_BUFFER_SIZE) {
+      return 0;
+    }
+    return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+  }
+
+  /**
+   * Allocate a message with room for <code>size</code> bytes. The data of the
+   * returned message has position zero and limit <code>size</code>.
+   *
+   * @param size The number of bytes the message holds
+   *
+   * @return The pooled {@link Message} with reference count of one
+   */
+  public Message allocate(int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("Negative message size " + size);
+    }
+    PooledBuffer buffer;
+    if (size > maxBufferSize) {
+      buffer = new PooledBuffer(this, new byte[size], -1);
+    } else {
+      int index = sizeClassIndex(size);
+      byte[] array = sizeClasses[index].poll();
+      if (array != null) {
+        numReused.incrementAndGet();
+      } else {
+        array = new byte[sizeClasses[index].bufferSize];
+      }
+      buffer = new PooledBuffer(this, array, index);
+    }
+    numAllocations.incrementAndGet();
+    if (allocationSites != null) {
+      synchronized (allocationSites) {
+        allocationSites.put(buffer, new Throwable("Buffer of size " + size
+            + " allocated here"));
+      }
+    }
+    ByteBuffer data = ByteBuffer.wrap(buffer.array, 0, size).slice();
+    return new Message(data, buffer);
+  }
+
+  /**
+   * Allocate a message holding a copy of the passed bytes.
+   *
+   * @param src The source array
+   * @param offset The offset of the first byte to copy
+   * @param length The number of bytes to copy
+   *
+   * @return The pooled {@link Message} with reference count of one
+   */
+  public Message copyOf(byte[] src, int offset, int length) {
+    Message m = allocate(length);
+    System.arraycopy(src, offset, m.getBuffer().array, 0, length);
+    return m;
+  }
+
+  void recycle(PooledBuffer buffer) {
+    numReleased.incrementAndGet();
+    if (allocationSites != null) {
+      synchronized (allocationSites) {
+        allocationSites.remove(buffer);
+      }
+    }
+    if (buffer.sizeClass >= 0) {
+      sizeClasses[buffer.sizeClass].offer(buffer.array);
+    }
+  }
+
+  /**
+   * Get the number of buffers handed out and not yet released.
+   */
+  public long getOutstanding() {
+    return numAllocations.get() - numReleased.get();
+  }
+
+  public long getNumAllocations() {
+    return numAllocations.get();
+  }
+
+  /**
+   * Get the number of allocations served from an idle pooled buffer.
+   */
+  public long getNumReused() {
+    return numReused.get();
+  }
+
+  /**
+   * Log the allocation sites of all outstanding buffers. Needs leak tracking
+   * to be enabled, otherwise only the count is reported.
+   *
+   * @return The number of outstanding buffers
+   */
+  public int reportLeaks() {
+    if (allocationSites == null) {
+      long outstanding = getOutstanding();
+      if (outstanding > 0) {
+        LOG.warn(outstanding + " pooled buffers are not released");
+      }
+      return (int) outstanding;
+    }
+    List<Throwable> sites;
+    synchronized (allocationSites) {
+      sites = new ArrayList<Throwable>(allocationSites.values());
+    }
+    for (Throwable site : sites) {
+      LOG.warn("Pooled buffer is not released", site);
+    }
+    return sites.size();
+  }
+
+  private class SizeClass {
+    private final int bufferSize;
+    private final ConcurrentLinkedQueue<byte[]> idle =
+        new ConcurrentLinkedQueue<byte[]>();
+    private final AtomicInteger numIdle = new AtomicInteger(0);
+
+    SizeClass(int bufferSize) {
+      this.bufferSize = bufferSize;
+    }
+
+    byte[] poll() {
+      byte[] array = idle.poll();
+      if (array != null) {
+        numIdle.decrementAndGet();
+      }
+      return array;
+    }
+
+    void offer(byte[] array) {
+      if (numIdle.incrementAndGet() > maxBuffersPerSizeClass) {
+        numIdle.decrementAndGet();
+        return;
+      }
+      idle.offer(array);
+    }
+  }
+
+  /**
+   * Reference count of a buffer handed out by the pool. Every allocation gets
+   * a fresh counter, so a stale reference released twice can never return a
+   * buffer which has been handed out again.
+   */
+  static final class PooledBuffer {
+    private final MessagePool pool;
+    private final byte[] array;
+    private final int sizeClass;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    PooledBuffer(MessagePool pool, byte[] array, int sizeClass) {
+      this.pool = pool;
+      this.array = array;
+      this.sizeClass = sizeClass;
+    }
+
+    void retain() {
+      while (true) {
+        int count = refCount.get();
+        if (count <= 0) {
+          throw new IllegalStateException("Buffer is already released");
+        }
+        if (refCount.compareAndSet(count, count + 1)) {
+          return;
+        }
+      }
+    }
+
+    void release() {
+      int count = refCount.decrementAndGet();
+      if (count == 0) {
+        pool.recycle(this);
+      } else if (count < 0) {
+        refCount.incrementAndGet();
+        throw new IllegalStateException("Buffer is already released");
+      }
+    }
+
+    int refCount() {
+      return refCount.get();
+    }
+  }
+}
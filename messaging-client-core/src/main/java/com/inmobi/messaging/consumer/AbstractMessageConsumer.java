@@ -1,7 +1,10 @@
 package com.inmobi.messaging.consumer;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import com.inmobi.instrumentation.AbstractMessagingClientStatsExposer;
 import com.inmobi.instrumentation.MessagingClientStatBuilder;
@@ -29,6 +32,8 @@ import com.inmobi.messaging.Message;
  */
 public abstract class AbstractMessageConsumer implements MessageConsumer {
 
+  private static final int MAX_INITIAL_BATCH_CAPACITY = 1024;
+
   private ClientConfig config;
   protected String topicName;
   protected String consumerName;
@@ -55,12 +60,62 @@ public abstract class AbstractMessageConsumer implements MessageConsumer {
 
   protected abstract Message getNext() throws InterruptedException;
 
+  /**
+   * Get the next message, waiting up to the passed timeout for it.
+   * 
+   * @return The message, null if there is none within the timeout
+   */
+  protected abstract Message getNext(long timeout, TimeUnit unit)
+      throws InterruptedException;
+
+  /**
+   * Add the next batch of messages to the passed list, waiting up to the
+   * passed timeout for the first one.
+   * 
+   * The default implementation reads message by message through
+   * {@link #getNext(long, TimeUnit)}.
+   */
+  protected void getNextBatch(List<Message> batch, int maxMessages,
+      long timeout, TimeUnit unit) throws InterruptedException {
+    Message msg = getNext(timeout, unit);
+    while (msg != null) {
+      batch.add(msg);
+      if (batch.size() >= maxMessages) {
+        break;
+      }
+      msg = getNext(0, unit);
+    }
+  }
+
   public synchronized Message next() throws InterruptedException {
     Message msg = getNext();
     metrics.incrementMessagesConsumed();
     return msg;
   }
 
+  public synchronized Message next(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    Message msg = getNext(timeout, unit);
+    if (msg != null) {
+      metrics.incrementMessagesConsumed();
+    }
+    return msg;
+  }
+
+  public synchronized List<Message> nextBatch(int maxMessages, long timeout,
+      TimeUnit unit) throws InterruptedException {
+    if (maxMessages <= 0) {
+      throw new IllegalArgumentException("Batch size should be positive");
+    }
+    List<Message> batch = new ArrayList<Message>(Math.min(maxMessages,
+        MAX_INITIAL_BATCH_CAPACITY));
+    getNextBatch(batch, maxMessages, timeout, unit);
+    if (!batch.isEmpty()) {
+      metrics.addMessagesConsumed(batch.size());
+    }
+    return batch;
+  }
+
   public synchronized void mark() throws IOException {
     if (isMarkSupported()) {
       doMark();
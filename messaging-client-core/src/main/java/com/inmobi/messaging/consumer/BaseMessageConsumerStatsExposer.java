@@ -21,6 +21,10 @@ public class BaseMessageConsumerStatsExposer extends
     numMessagesConsumed.incrementAndGet();
   }
 
+  public void addMessagesConsumed(int count) {
+    numMessagesConsumed.addAndGet(count);
+  }
+
   public void incrementMarkCalls() {
     numMarkCalls.incrementAndGet();
   }
@@ -1,6 +1,8 @@
 package com.inmobi.messaging.consumer;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import com.inmobi.messaging.Message;
 
@@ -16,12 +18,50 @@ public interface MessageConsumer {
    * It is a blocking call which waits for the message to be available on the
    * stream
    * 
+   * If the consumer hands out pooled messages, the caller should
+   * {@link Message#release()} the message once it is done with it.
+   * 
    * @return {@link Message} object
    * 
    * @throws InterruptedException 
    */
   public Message next() throws InterruptedException;
 
+  /**
+   * Reads the next message, waiting up to the specified time for it to be
+   * available on the stream
+   * 
+   * @param timeout How long to wait for the message, in units of
+   *  <code>unit</code>
+   * @param unit The {@link TimeUnit} of the timeout
+   * 
+   * @return {@link Message} object, <code>null</code> if no message is
+   *  available within the timeout
+   * 
+   * @throws InterruptedException
+   */
+  public Message next(long timeout, TimeUnit unit) throws InterruptedException;
+
+  /**
+   * Reads the next batch of messages.
+   * 
+   * Waits up to the specified time for the first message to be available on
+   * the stream and returns it together with the messages which are available
+   * right away, up to <code>maxMessages</code> in total.
+   * 
+   * @param maxMessages The maximum number of messages to return
+   * @param timeout How long to wait for the first message, in units of
+   *  <code>unit</code>
+   * @param unit The {@link TimeUnit} of the timeout
+   * 
+   * @return The {@link List} of messages in stream order, empty if no message
+   *  is available within the timeout
+   * 
+   * @throws InterruptedException
+   */
+  public List<Message> nextBatch(int maxMessages, long timeout, TimeUnit unit)
+      throws InterruptedException;
+
   /**
    * Tells if this interface supports <code>mark</code> and <code>reset</code>
    * methods 
@@ -0,0 +1,27 @@
+package com.inmobi.messaging.consumer;
+
+import com.inmobi.messaging.Message;
+
+/**
+ * Callback for consumers which push messages to the application instead of
+ * being polled with {@link MessageConsumer#next()}.
+ *
+ * The handler is called from several threads at a time, but messages of the
+ * same partition are handed over one at a time, in stream order.
+ */
+public interface MessageHandler {
+
+  /**
+   * Process the message.
+   *
+   * The message is released once the call returns; a handler which keeps a
+   * pooled message around has to {@link Message#retain()} it.
+   *
+   * @param msg The {@link Message} to be processed
+   *
+   * @throws Exception if the message could not be processed. The message is
+   * passed again a limited number of times; the checkpoint of its partition is
+   * never advanced past a message which kept failing.
+   */
+  public void handle(Message msg) throws Exception;
+}
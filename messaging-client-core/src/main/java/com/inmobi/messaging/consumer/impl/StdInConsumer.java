@@ -3,6 +3,9 @@ package com.inmobi.messaging.consumer.impl;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import com.inmobi.instrumentation.AbstractMessagingClientStatsExposer;
 import com.inmobi.messaging.ClientConfig;
@@ -14,11 +17,21 @@ import com.inmobi.messaging.consumer.BaseMessageConsumerStatsExposer;
 
 /**
  * Stdin consumer reads messages from stdin.
+ *
+ * Lines are read by a background thread into a small queue, so that reads
+ * can wait with a timeout. Once stdin ends, reads return null.
  */
 public class StdInConsumer extends AbstractMessageConsumer {
 
+  private static final int QUEUE_SIZE = 100;
+  // put in the queue once stdin ends
+  private static final Message END = new Message(new byte[0]);
+
   BufferedReader in;
   String topicName;
+  private final BlockingQueue<Message> lines =
+      new LinkedBlockingQueue<Message>(QUEUE_SIZE);
+  private Thread readerThread;
 
   protected void init(ClientConfig config) throws IOException {
 	  super.init(config);
@@ -28,15 +41,23 @@ public class StdInConsumer extends AbstractMessageConsumer {
 
   @Override
   public Message getNext() throws InterruptedException {
-    try {
-      String str = in.readLine();
-      if (str != null) {
-        return new Message(str.getBytes());
-      }
-    } catch (IOException e) {
-      e.printStackTrace();
+    return toMessage(lines.take());
+  }
+
+  @Override
+  protected Message getNext(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    Message msg = lines.poll(timeout, unit);
+    return msg == null ? null : toMessage(msg);
+  }
+
+  private Message toMessage(Message msg) {
+    if (msg == END) {
+      // later reads see the end too
+      lines.offer(END);
+      return null;
     }
-    return null;
+    return msg;
   }
 
   @Override
@@ -56,6 +77,7 @@ public class StdInConsumer extends AbstractMessageConsumer {
 
   @Override
   public void close() {
+    readerThread.interrupt();
     try {
       in.close();
     } catch (IOException e) {
@@ -65,6 +87,25 @@ public class StdInConsumer extends AbstractMessageConsumer {
 
   protected void start() {
     in = new BufferedReader(new InputStreamReader(System.in));
+    readerThread = new Thread("StdInConsumer") {
+      public void run() {
+        try {
+          try {
+            String str;
+            while ((str = in.readLine()) != null) {
+              lines.put(new Message(str.getBytes()));
+            }
+          } catch (IOException e) {
+            e.printStackTrace();
+          }
+          lines.put(END);
+        } catch (InterruptedException e) {
+          // closed
+        }
+      }
+    };
+    readerThread.setDaemon(true);
+    readerThread.start();
   }
 
   public static void main(String[] args) throws Exception {
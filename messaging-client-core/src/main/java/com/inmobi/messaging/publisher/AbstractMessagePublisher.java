@@ -1,7 +1,9 @@
 package com.inmobi.messaging.publisher;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -38,19 +40,58 @@ public abstract class AbstractMessagePublisher implements MessagePublisher {
     if (m == null) {
       throw new IllegalArgumentException("Cannot publish null message");
     }
+    initTopic(topicName, 1);
+    // TODO: generate headers
+    Map<String, String> headers = new HashMap<String, String>();
+    headers.put(HEADER_TOPIC, topicName);
+    publish(headers, m);
+  }
+
+  @Override
+  public void publishAll(String topicName, List<Message> msgs) {
+    if (topicName == null) {
+      throw new IllegalArgumentException("Cannot publish to null topic");
+    }
+    if (msgs == null) {
+      throw new IllegalArgumentException("Cannot publish null messages");
+    }
+    // validate the whole batch before any message is handed over
+    for (Message m : msgs) {
+      if (m == null) {
+        throw new IllegalArgumentException("Cannot publish null message");
+      }
+    }
+    if (msgs.isEmpty()) {
+      return;
+    }
+    initTopic(topicName, msgs.size());
+    Map<String, String> headers = new HashMap<String, String>();
+    headers.put(HEADER_TOPIC, topicName);
+    publish(headers, msgs);
+  }
+
+  @Override
+  public void publishAll(String topicName, Message[] msgs) {
+    if (msgs == null) {
+      throw new IllegalArgumentException("Cannot publish null messages");
+    }
+    publishAll(topicName, Arrays.asList(msgs));
+  }
+
+  private void initTopic(String topicName, int numMessages) {
     // initialization should happen only by one thread
     synchronized (this) {
       if (getStats(topicName) == null) {
         TimingAccumulator stats = new TimingAccumulator();
         initTopicStats(topicName, stats);
       }
-      getStats(topicName).accumulateInvocation();
+      if (numMessages == 1) {
+        getStats(topicName).accumulateInvocation();
+      } else {
+        getStats(topicName).accumulateInvocations(numMessages);
+      }
       initTopic(topicName, getStats(topicName));
     }
-    // TODO: generate headers
-    Map<String, String> headers = new HashMap<String, String>();
-    headers.put(HEADER_TOPIC, topicName);
-    publish(headers, m);
   }
 
   protected void initTopic(String topic, TimingAccumulator stats) {}
@@ -71,6 +112,19 @@ public abstract class AbstractMessagePublisher implements MessagePublisher {
 
   protected abstract void publish(Map<String, String> headers, Message m);
 
+  /**
+   * Publishes a batch of messages with the same headers. Publishers which can
+   * enqueue a batch cheaper than message by message should override this.
+   * 
+   * @param headers The headers of all the messages
+   * @param msgs The messages to be published
+   */
+  protected void publish(Map<String, String> headers, List<Message> msgs) {
+    for (Message m : msgs) {
+      publish(headers, m);
+    }
+  }
+
   MessagingClientStatBuilder getMetrics() {
     return statsEmitter;
   }
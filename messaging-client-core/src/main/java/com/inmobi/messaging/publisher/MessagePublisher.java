@@ -1,5 +1,7 @@
 package com.inmobi.messaging.publisher;
 
+import java.util.List;
+
 import com.inmobi.messaging.Message;
 
 /**
@@ -19,6 +21,29 @@ public interface MessagePublisher {
    */
   public void publish(String topicName, Message m);
 
+  /**
+   * Publishes a batch of messages onto the configured concrete
+   * MessagePublisher, in the order of the list.
+   * 
+   * The batch is handed over to the underlying publisher at once, which is
+   * cheaper than publishing the messages one by one.
+   *
+   * @param topicName The topic on which messages should be published
+   * @param msgs The {@link Message} objects to be published
+   */
+  public void publishAll(String topicName, List<Message> msgs);
+
+  /**
+   * Publishes a batch of messages onto the configured concrete
+   * MessagePublisher, in the order of the array.
+   *
+   * @param topicName The topic on which messages should be published
+   * @param msgs The {@link Message} objects to be published
+   * 
+   * @see #publishAll(String, List)
+   */
+  public void publishAll(String topicName, Message[] msgs);
+
   /**
    * Closes and cleans up any connections, file handles etc.
    * 
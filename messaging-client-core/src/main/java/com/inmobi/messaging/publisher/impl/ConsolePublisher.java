@@ -1,5 +1,6 @@
 package com.inmobi.messaging.publisher.impl;
 
+import java.util.List;
 import java.util.Map;
 
 import com.inmobi.messaging.Message;
@@ -10,6 +11,17 @@ public class ConsolePublisher extends AbstractMessagePublisher {
   @Override
   protected void publish(Map<String, String> headers, Message m) {
     System.out.println(m.getData().asCharBuffer().toString());
+    m.release();
+  }
+
+  @Override
+  protected void publish(Map<String, String> headers, List<Message> msgs) {
+    StringBuilder out = new StringBuilder();
+    for (Message m : msgs) {
+      out.append(m.getData().asCharBuffer()).append('\n');
+      m.release();
+    }
+    System.out.print(out);
   }
 
 }
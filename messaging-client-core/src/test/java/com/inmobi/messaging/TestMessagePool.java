@@ -0,0 +1,92 @@
+package com.inmobi.messaging;
+
+import java.nio.ByteBuffer;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestMessagePool {
+
+  @Test
+  public void testSizeClasses() {
+    Assert.assertEquals(MessagePool.sizeClassIndex(0), 0);
+    Assert.assertEquals(MessagePool.sizeClassIndex(64), 0);
+    Assert.assertEquals(MessagePool.sizeClassIndex(65), 1);
+    Assert.assertEquals(MessagePool.sizeClassIndex(128), 1);
+    Assert.assertEquals(MessagePool.sizeClassIndex(129), 2);
+    Assert.assertEquals(MessagePool.sizeClassIndex(1024 * 1024), 14);
+  }
+
+  @Test
+  public void testAllocateAndReuse() {
+    MessagePool pool = new MessagePool(1024, 4, true);
+    byte[] data = "pooled message".getBytes();
+    Message m1 = pool.copyOf(data, 0, data.length);
+    Assert.assertTrue(m1.isPooled());
+    ByteBuffer buf = m1.getData();
+    Assert.assertEquals(buf.remaining(), data.length);
+    byte[] read = new byte[buf.remaining()];
+    buf.duplicate().get(read);
+    Assert.assertEquals(read, data);
+    Assert.assertEquals(m1, new Message(data));
+    Assert.assertEquals(pool.getOutstanding(), 1);
+
+    m1.release();
+    Assert.assertEquals(pool.getOutstanding(), 0);
+    Message m2 = pool.allocate(20);
+    Assert.assertEquals(pool.getNumReused(), 1);
+    m2.release();
+
+    // larger than the max pooled size
+    Message m3 = pool.allocate(2048);
+    Assert.assertEquals(m3.getData().remaining(), 2048);
+    m3.release();
+    Assert.assertEquals(pool.getOutstanding(), 0);
+    Assert.assertEquals(pool.reportLeaks(), 0);
+  }
+
+  @Test
+  public void testReferenceCounting() {
+    MessagePool pool = new MessagePool(1024, 4, true);
+    Message m = pool.allocate(100);
+    Message clone = m.clone();
+    m.retain();
+    m.release();
+    m.release();
+    Assert.assertEquals(pool.getOutstanding(), 1);
+    clone.release();
+    Assert.assertEquals(pool.getOutstanding(), 0);
+    try {
+      m.release();
+      Assert.fail("Released a buffer twice");
+    } catch (IllegalStateException e) {
+    }
+    try {
+      m.retain();
+      Assert.fail("Retained a released buffer");
+    } catch (IllegalStateException e) {
+    }
+  }
+
+  @Test
+  public void testLeakDetection() {
+    MessagePool pool = new MessagePool(1024, 4, true);
+    Message m1 = pool.allocate(10);
+    Message m2 = pool.allocate(200);
+    m1.release();
+    Assert.assertEquals(pool.getOutstanding(), 1);
+    Assert.assertEquals(pool.reportLeaks(), 1);
+    m2.release();
+    Assert.assertEquals(pool.reportLeaks(), 0);
+  }
+
+  @Test
+  public void testUnpooledMessage() {
+    Message m = new Message("unpooled".getBytes());
+    Assert.assertFalse(m.isPooled());
+    m.retain();
+    m.release();
+    m.release();
+    Assert.assertEquals(new String(m.getData().array()), "unpooled");
+  }
+}
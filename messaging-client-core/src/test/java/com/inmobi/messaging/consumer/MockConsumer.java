@@ -2,6 +2,7 @@ package com.inmobi.messaging.consumer;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import com.inmobi.instrumentation.AbstractMessagingClientStatsExposer;
 import com.inmobi.messaging.ClientConfig;
@@ -25,6 +26,12 @@ public class MockConsumer extends AbstractMessageConsumer {
     return new Message(mockMsg.getBytes());
   }
 
+  @Override
+  protected Message getNext(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    return new Message(mockMsg.getBytes());
+  }
+
   @Override
   public boolean isMarkSupported() {
     return false;
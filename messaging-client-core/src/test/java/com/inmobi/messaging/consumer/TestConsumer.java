@@ -3,6 +3,8 @@ package com.inmobi.messaging.consumer;
 import java.io.IOException;
 import java.net.URL;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -135,6 +137,32 @@ public class TestConsumer {
     doTest(consumer, now, false, false);
   }
 
+  @Test
+  public void testTimedAndBatchNext() throws Exception {
+    AbstractMessageConsumer consumer = 
+      (AbstractMessageConsumer) MessageConsumerFactory.create(
+          new ClientConfig(), MockConsumer.class.getName(), "test",
+          "testconsumer");
+    Message msg = consumer.next(10, TimeUnit.MILLISECONDS);
+    Assert.assertEquals(new String(msg.getData().array()), MockConsumer.mockMsg);
+    List<Message> batch = consumer.nextBatch(5, 10, TimeUnit.MILLISECONDS);
+    Assert.assertEquals(batch.size(), 5);
+    for (Message m : batch) {
+      Assert.assertEquals(new String(m.getData().array()),
+          MockConsumer.mockMsg);
+    }
+    Throwable th = null;
+    try {
+      consumer.nextBatch(0, 10, TimeUnit.MILLISECONDS);
+    } catch (Throwable t) {
+      th = t;
+    }
+    Assert.assertTrue(th instanceof IllegalArgumentException);
+    consumer.close();
+    Assert.assertEquals(((BaseMessageConsumerStatsExposer)consumer.getMetrics())
+        .getNumMessagesConsumed(), 6);
+  }
+
   private void doTest(AbstractMessageConsumer consumer, Date startTime,
       boolean statsEnabled, boolean isMondemand) throws InterruptedException {
     Assert.assertTrue(consumer instanceof MockConsumer);
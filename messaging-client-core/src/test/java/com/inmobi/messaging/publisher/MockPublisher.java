@@ -1,6 +1,7 @@
 package com.inmobi.messaging.publisher;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.inmobi.instrumentation.TimingAccumulator.Outcome;
@@ -28,4 +29,12 @@ public class MockPublisher extends AbstractMessagePublisher {
     getStats(topic).accumulateOutcomeWithDelta(
         Outcome.SUCCESS, 0);
   }
+
+  @Override
+  protected void publish(Map<String, String> headers, List<Message> batch) {
+    String topic = headers.get(HEADER_TOPIC);
+    msgs.put(topic, batch.get(batch.size() - 1));
+    getStats(topic).accumulateOutcomeWithDelta(Outcome.SUCCESS, 0,
+        batch.size());
+  }
 }
@@ -3,6 +3,8 @@ package com.inmobi.messaging.publisher;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
 import org.testng.Assert;
@@ -125,6 +127,56 @@ public class TestPublisher {
         TopicStatsExposer.TOPIC_CONTEXT_NAME), topic);
   }
   
+  @Test
+  public void testBatchPublish() throws IOException {
+    ClientConfig conf = new ClientConfig();
+    AbstractMessagePublisher publisher =
+        (AbstractMessagePublisher) MessagePublisherFactory.create(
+            conf, MockPublisher.class.getName());
+    String topic = "testbatch";
+    Message[] batch = new Message[10];
+    for (int i = 0; i < batch.length; i++) {
+      batch[i] = new Message(ByteBuffer.wrap(new byte[] {(byte) i}));
+    }
+
+    // null batches and batches with null messages are rejected as a whole
+    Throwable th = null;
+    try {
+      publisher.publishAll(topic, (List<Message>) null);
+    } catch (Throwable t) {
+      th = t;
+    }
+    Assert.assertTrue(th instanceof IllegalArgumentException);
+    th = null;
+    try {
+      publisher.publishAll(topic, Arrays.asList(batch[0], null));
+    } catch (Throwable t) {
+      th = t;
+    }
+    Assert.assertTrue(th instanceof IllegalArgumentException);
+    Assert.assertNull(publisher.getStats(topic));
+
+    publisher.publishAll(topic, batch);
+    Assert.assertEquals(publisher.getStats(topic).getInvocationCount(),
+        10, "invocation count");
+    Assert.assertEquals(publisher.getStats(topic).getSuccessCount(),
+        10, "success count");
+    Assert.assertEquals(MockPublisher.getMsg(topic), batch[9]);
+
+    publisher.publishAll(topic, Arrays.asList(batch).subList(0, 5));
+    Assert.assertEquals(publisher.getStats(topic).getInvocationCount(),
+        15, "invocation count");
+    Assert.assertEquals(publisher.getStats(topic).getInFlight(), 0);
+    Assert.assertEquals(MockPublisher.getMsg(topic), batch[4]);
+
+    // empty batch is a no-op
+    publisher.publishAll(topic, new Message[0]);
+    Assert.assertEquals(publisher.getStats(topic).getInvocationCount(),
+        15, "invocation count");
+    MockPublisher.reset(topic);
+    publisher.close();
+  }
+
   @Test
   public void testMultiplePublisherThreads() throws IOException,
       InterruptedException {
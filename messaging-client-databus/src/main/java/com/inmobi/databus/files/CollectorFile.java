@@ -12,6 +12,10 @@ import java.util.Date;
 public class CollectorFile implements StreamFile {
   private String streamName;
   private String timestamp;
+  // digits of the timestamp as a number, ordered like the timestamp
+  private long minuteKey;
+  // start of the minute in millis
+  private long timestampMillis;
   private int id;
 
   private  static final NumberFormat idFormat = NumberFormat.getInstance();
@@ -31,8 +35,14 @@ public class CollectorFile implements StreamFile {
   };
 
   public CollectorFile(String streamName, Date timestamp, int id) {
+    this(streamName, MinuteFormat.getKey(timestamp), id);
+  }
+
+  private CollectorFile(String streamName, long minuteKey, int id) {
     this.streamName = streamName;
-    this.timestamp = fileFormat.get().format(timestamp);
+    this.timestamp = MinuteFormat.format(minuteKey, '-');
+    this.minuteKey = minuteKey;
+    this.timestampMillis = MinuteFormat.toMillis(minuteKey);
     this.id = id;
   }
   
@@ -43,6 +53,40 @@ public class CollectorFile implements StreamFile {
   }
 
   public static CollectorFile create(String fileName) {
+    // names written by databus are parsed by hand, others as before
+    int streamEnd = fileName.indexOf('-');
+    if (streamEnd > 0) {
+      int idStart = streamEnd + 1 + MinuteFormat.LENGTH + 1;
+      long minuteKey = MinuteFormat.parse(fileName, streamEnd + 1, '-');
+      if (minuteKey != MinuteFormat.INVALID && idStart < fileName.length()
+          && fileName.charAt(idStart - 1) == '_') {
+        int id = parseId(fileName, idStart);
+        if (id >= 0) {
+          return new CollectorFile(fileName.substring(0, streamEnd),
+              minuteKey, id);
+        }
+      }
+    }
+    return parse(fileName);
+  }
+
+  /**
+   * Parse the digits of the id up to the end of the name or the next '_'.
+   */
+  private static int parseId(String fileName, int start) {
+    long id = 0;
+    int i = start;
+    for (; i < fileName.length() && fileName.charAt(i) != '_'; i++) {
+      char c = fileName.charAt(i);
+      if (c < '0' || c > '9' || i - start >= 9) {
+        return -1;
+      }
+      id = id * 10 + (c - '0');
+    }
+    return (i == start) ? -1 : (int) id;
+  }
+
+  private static CollectorFile parse(String fileName) {
     String strs[] = fileName.split("-");
     if (strs.length < 2) {
       throw new IllegalArgumentException("Invalid file name:" + fileName);
@@ -114,15 +158,33 @@ public class CollectorFile implements StreamFile {
   @Override
   public int compareTo(Object o) {
     CollectorFile other = (CollectorFile)o;
-    return this.toString().compareTo(other.toString());
+    int sComp = streamName.compareTo(other.streamName);
+    if (sComp != 0) {
+      return sComp;
+    }
+    if (minuteKey != other.minuteKey) {
+      return minuteKey < other.minuteKey ? -1 : 1;
+    }
+    return id < other.id ? -1 : (id == other.id ? 0 : 1);
+  }
+
+  private static long getMinuteKey(String timestamp) {
+    long key = MinuteFormat.parse(timestamp, 0, '-');
+    if (key == MinuteFormat.INVALID) {
+      try {
+        key = MinuteFormat.getKey(fileFormat.get().parse(timestamp));
+      } catch (ParseException e) {
+        return MinuteFormat.INVALID;
+      }
+    }
+    return key;
   }
 
   public Date getTimestamp() {
-    try {
-      return fileFormat.get().parse(timestamp);
-    } catch (ParseException e) {
+    if (minuteKey == MinuteFormat.INVALID) {
       return null;
     }
+    return new Date(timestampMillis);
   }
 
   public String getStreamName() {
@@ -144,6 +206,10 @@ public class CollectorFile implements StreamFile {
   public void readFields(DataInput in) throws IOException {
     this.streamName = in.readUTF();
     this.timestamp = in.readUTF();
+    this.minuteKey = getMinuteKey(timestamp);
+    if (minuteKey != MinuteFormat.INVALID) {
+      this.timestampMillis = MinuteFormat.toMillis(minuteKey);
+    }
     this.id = in.readInt();
   }
 }
@@ -23,24 +23,38 @@ public class DatabusStreamFile implements StreamFile {
    */
   public DatabusStreamFile() {
   }
+  /**
+   * Create the stream file from a name laid out as
+   * <code>collector-collectorFile.extension</code>, where the collector file
+   * starts with the stream name.
+   */
   public static DatabusStreamFile create(String streamName, String fileName) {
-    String strs[] = fileName.split(streamName);
-    if (strs.length < 2) {
+    int streamStart = fileName.indexOf(streamName);
+    if (streamStart <= 0 || streamName.length() == 0
+        || streamStart + streamName.length() == fileName.length()) {
       throw new IllegalArgumentException("Invalid file name:" + fileName);
     }
-    if (strs[0].length() == 0) {
+    String collectorName = fileName.substring(0, streamStart - 1);
+
+    int extStart = fileName.indexOf('.', streamStart) + 1;
+    if (extStart == 0) {
       throw new IllegalArgumentException("Invalid file name:" + fileName);
     }
-    String collectorName = strs[0].substring(0, strs[0].length() - 1);
-
-    String cfSubString = fileName.substring(collectorName.length() + 1);
-    String str2[] = cfSubString.split("\\.");
-
-    if (str2.length < 2) {
+    int extEnd = fileName.indexOf('.', extStart);
+    if (extEnd < 0) {
+      extEnd = fileName.length();
+    }
+    // as with splitting on dots, there has to be something after them
+    boolean onlyDots = true;
+    for (int i = extStart; i < fileName.length() && onlyDots; i++) {
+      onlyDots = fileName.charAt(i) == '.';
+    }
+    if (onlyDots) {
       throw new IllegalArgumentException("Invalid file name:" + fileName);
     }
-    CollectorFile collectorFile =  CollectorFile.create(str2[0]);
-    String extension = str2[1];
+    CollectorFile collectorFile = CollectorFile.create(fileName.substring(
+        streamStart, extStart - 1));
+    String extension = fileName.substring(extStart, extEnd);
 
     return new DatabusStreamFile(collectorName, collectorFile, extension);
   }
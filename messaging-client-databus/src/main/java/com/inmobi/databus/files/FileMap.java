@@ -1,7 +1,9 @@
 package com.inmobi.databus.files;
 
 import java.io.IOException;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -14,7 +16,13 @@ public abstract class FileMap<T extends StreamFile> {
   private static final Log LOG = LogFactory.getLog(FileMap.class);
 
   protected TreeMap<T, FileStatus> files;
-  protected Iterator<T> fileNameIterator;
+  // stream files of the listed file statuses, so that they are parsed once
+  private final Map<FileStatus, T> streamFiles =
+      new IdentityHashMap<FileStatus, T>();
+  // file last returned by getNext(), null to start from the first file
+  private T cursor;
+  // whether the cursor is past the last file
+  private boolean cursorAtEnd;
   protected PathFilter pathFilter;
 
   public FileMap() {
@@ -33,12 +41,29 @@ public abstract class FileMap<T extends StreamFile> {
 
 
   private void createIterator() {
-    fileNameIterator = files.navigableKeySet().iterator();    
+    cursor = null;
+    cursorAtEnd = false;
+  }
+
+  /**
+   * Get the stream file of a listed file status, parsing it only the first
+   * time.
+   */
+  private T getListedStreamFile(FileStatus file) {
+    T fileKey = streamFiles.get(file);
+    if (fileKey == null) {
+      fileKey = getStreamFile(file);
+    }
+    return fileKey;
   }
 
   public void addPath(FileStatus path) {
     T fileKey = getStreamFile(path);
-    files.put(fileKey, path);
+    FileStatus replaced = files.put(fileKey, path);
+    if (replaced != null) {
+      streamFiles.remove(replaced);
+    }
+    streamFiles.put(path, fileKey);
     LOG.info("Added path: " + path.getPath() + "timestamp [" + path
     .getModificationTime() + "]");
   }
@@ -53,10 +78,27 @@ public abstract class FileMap<T extends StreamFile> {
   }
 
   public FileStatus getHigherValue(FileStatus file) {
-    T fileKey = getStreamFile(file);
+    T fileKey = getListedStreamFile(file);
     return getHigherValue(fileKey);
   }
 
+  /**
+   * Get up to the passed number of files following the passed file.
+   */
+  public List<FileStatus> getHigherValues(FileStatus file, int numFiles) {
+    List<FileStatus> higher = new ArrayList<FileStatus>(numFiles);
+    if (file != null) {
+      for (FileStatus value : files.tailMap(getListedStreamFile(file), false)
+          .values()) {
+        if (higher.size() == numFiles) {
+          break;
+        }
+        higher.add(value);
+      }
+    }
+    return higher;
+  }
+
   public FileStatus getHigherValue(String fileName) {
     T fileKey = getStreamFile(fileName);
     return getHigherValue(fileKey);
@@ -82,10 +124,34 @@ public abstract class FileMap<T extends StreamFile> {
 
   public void build() throws IOException {
     files = createFilesMap();
+    streamFiles.clear();
+    buildList();
+    createIterator();
+  }
+
+  /**
+   * Add the files listed by {@link #buildList()} to the files already in the
+   * map. Files before <code>first</code> are dropped, and files from
+   * <code>listedFrom</code> are replaced by the listed ones.
+   */
+  public void update(T first, T listedFrom) throws IOException {
+    if (files == null) {
+      build();
+      return;
+    }
+    removeAll(files.headMap(first));
+    removeAll(files.tailMap(listedFrom, true));
     buildList();
     createIterator();
   }
 
+  private void removeAll(Map<T, FileStatus> removed) {
+    for (FileStatus file : removed.values()) {
+      streamFiles.remove(file);
+    }
+    removed.clear();
+  }
+
   public boolean isEmpty() {
     return files.isEmpty();
   }
@@ -106,18 +172,25 @@ public abstract class FileMap<T extends StreamFile> {
     return files.containsKey(getStreamFile(fileName)); 
   }
 
+  /**
+   * Position the iterator at the passed file, so that {@link #getNext()}
+   * returns the file following it.
+   *
+   * @return false if the file is not in the map, in which case the iterator
+   * is at the end
+   */
   public boolean setIterator(FileStatus cfile) {
-    createIterator();
-    T file = getStreamFile(cfile);
     if (cfile != null) {
-      while (fileNameIterator.hasNext()) {
-        StreamFile nextfile = fileNameIterator.next();
-        if (nextfile.equals(file)) {
-          return true;
-        } 
+      T file = getListedStreamFile(cfile);
+      if (files.containsKey(file)) {
+        cursor = file;
+        cursorAtEnd = false;
+        return true;
       }
-    } 
-    LOG.info("Did not find file" + cfile.getPath());
+      LOG.info("Did not find file" + cfile.getPath());
+    }
+    cursor = null;
+    cursorAtEnd = true;
     return false;
   }
 
@@ -145,16 +218,25 @@ public abstract class FileMap<T extends StreamFile> {
   }
 
   public FileStatus getNext() {
-    if (fileNameIterator.hasNext()) {
-      StreamFile fileName = fileNameIterator.next();
-      LOG.debug("next file name:" + fileName);
-      return getValue(fileName);
+    Map.Entry<T, FileStatus> next = getNextEntry();
+    if (next != null) {
+      cursor = next.getKey();
+      LOG.debug("next file name:" + cursor);
+      return next.getValue();
     }
+    cursorAtEnd = true;
     return null;
   }
 
   public boolean hasNext() {
-    return fileNameIterator.hasNext();
+    return getNextEntry() != null;
+  }
+
+  private Map.Entry<T, FileStatus> getNextEntry() {
+    if (cursorAtEnd) {
+      return null;
+    }
+    return (cursor == null) ? files.firstEntry() : files.higherEntry(cursor);
   }
 
 }
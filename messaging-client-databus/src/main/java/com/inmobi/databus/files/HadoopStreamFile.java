@@ -12,6 +12,8 @@ public class HadoopStreamFile implements StreamFile {
 
   private String fileName;
   private Path parent;
+  // parent as a string, which orders like the parent in a stream directory
+  private String parentKey;
   //file creation time
   private Long timeStamp;
 
@@ -24,6 +26,7 @@ public class HadoopStreamFile implements StreamFile {
   public HadoopStreamFile(Path parent, String fileName, Long timeStamp) {
     this.fileName = fileName;
     this.parent = parent;
+    this.parentKey = parent.toString();
     this.timeStamp = timeStamp;
   }
 
@@ -82,7 +85,7 @@ public class HadoopStreamFile implements StreamFile {
   @Override
   public int compareTo(Object o) {
     HadoopStreamFile other = (HadoopStreamFile)o;
-    int pComp = parent.compareTo(other.parent);
+    int pComp = parentKey.compareTo(other.parentKey);
     if ( pComp== 0) {
       if (timeStamp != null && other.timeStamp != null) {
         int tComp = timeStamp.compareTo(other.timeStamp);
@@ -109,6 +112,7 @@ public class HadoopStreamFile implements StreamFile {
   public void readFields(DataInput in) throws IOException {
     String strPath = in.readUTF();
     this.parent = new Path(strPath);
+    this.parentKey = strPath;
     this.fileName = in.readUTF();
     this.timeStamp = in.readLong();
   }
@@ -0,0 +1,144 @@
+package com.inmobi.databus.files;
+
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Parses and formats the minute timestamps in stream file names and minute
+ * directories, laid out as <code>yyyy?MM?dd?HH?mm</code> with a fixed
+ * separator, without going through {@link java.text.SimpleDateFormat}.
+ *
+ * A minute is kept as a long holding the digits of its layout,
+ * <code>yyyyMMddHHmm</code>, which sorts like the formatted timestamp. Times
+ * are in the default time zone, as with the date formats used so far.
+ */
+public class MinuteFormat {
+
+  public static final int LENGTH = 16;
+  public static final long INVALID = -1;
+
+  private static final long ONE_MINUTE_IN_MILLIS = 60 * 1000;
+
+  private static final ThreadLocal<Calendar> calendar =
+      new ThreadLocal<Calendar>() {
+    @Override
+    protected Calendar initialValue() {
+      return Calendar.getInstance();
+    }
+  };
+
+  // hour key and start time in millis of the last hour converted, since
+  // consecutive conversions are mostly within the same hour
+  private static final ThreadLocal<long[]> lastHour =
+      new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[] {INVALID, 0};
+    }
+  };
+
+  private MinuteFormat() {
+  }
+
+  /**
+   * Parse the minute laid out at the passed index of the string.
+   *
+   * @return the minute key, {@link #INVALID} if the string does not have a
+   *  valid minute at the index
+   */
+  public static long parse(String str, int start, char separator) {
+    if (start < 0 || str.length() - start < LENGTH) {
+      return INVALID;
+    }
+    int year = parseDigits(str, start, 4);
+    int month = parseDigits(str, start + 5, 2);
+    int day = parseDigits(str, start + 8, 2);
+    int hour = parseDigits(str, start + 11, 2);
+    int minute = parseDigits(str, start + 14, 2);
+    if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+        || hour < 0 || hour > 23 || minute < 0 || minute > 59
+        || str.charAt(start + 4) != separator
+        || str.charAt(start + 7) != separator
+        || str.charAt(start + 10) != separator
+        || str.charAt(start + 13) != separator) {
+      return INVALID;
+    }
+    return getKey(year, month, day, hour, minute);
+  }
+
+  private static int parseDigits(String str, int start, int length) {
+    int value = 0;
+    for (int i = start; i < start + length; i++) {
+      char c = str.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  private static long getKey(int year, int month, int day, int hour,
+      int minute) {
+    return year * 100000000L + month * 1000000L + day * 10000L + hour * 100L
+        + minute;
+  }
+
+  /**
+   * Get the key of the minute of the passed date.
+   */
+  public static long getKey(Date date) {
+    Calendar cal = calendar.get();
+    cal.setTime(date);
+    return getKey(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1,
+        cal.get(Calendar.DAY_OF_MONTH), cal.get(Calendar.HOUR_OF_DAY),
+        cal.get(Calendar.MINUTE));
+  }
+
+  /**
+   * Format the minute with the passed separator.
+   */
+  public static String format(long key, char separator) {
+    char[] chars = new char[LENGTH];
+    int minute = (int) (key % 100);
+    int hour = (int) (key / 100 % 100);
+    int day = (int) (key / 10000 % 100);
+    int month = (int) (key / 1000000 % 100);
+    int year = (int) (key / 100000000);
+    formatDigits(chars, 0, 4, year);
+    chars[4] = separator;
+    formatDigits(chars, 5, 2, month);
+    chars[7] = separator;
+    formatDigits(chars, 8, 2, day);
+    chars[10] = separator;
+    formatDigits(chars, 11, 2, hour);
+    chars[13] = separator;
+    formatDigits(chars, 14, 2, minute);
+    return new String(chars);
+  }
+
+  private static void formatDigits(char[] chars, int start, int length,
+      int value) {
+    for (int i = start + length - 1; i >= start; i--) {
+      chars[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+  }
+
+  /**
+   * Get the start time in millis of the minute.
+   */
+  public static long toMillis(long key) {
+    long hourKey = key / 100;
+    long[] last = lastHour.get();
+    if (last[0] != hourKey) {
+      Calendar cal = calendar.get();
+      cal.clear();
+      cal.set((int) (hourKey / 1000000), (int) (hourKey / 10000 % 100) - 1,
+          (int) (hourKey / 100 % 100), (int) (hourKey % 100), 0, 0);
+      last[0] = hourKey;
+      last[1] = cal.getTimeInMillis();
+    }
+    return last[1] + (key % 100) * ONE_MINUTE_IN_MILLIS;
+  }
+}
@@ -24,6 +24,11 @@ public abstract class AbstractPartitionStreamReader implements
     return reader.getCurrentLineNum();
   }
 
+  @Override
+  public long getCurrentOffset() {
+    return reader.getCurrentOffset();
+  }
+
   @Override
   public void openStream() throws IOException {
     reader.openStream();
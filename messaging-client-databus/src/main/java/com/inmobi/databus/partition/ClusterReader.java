@@ -1,18 +1,18 @@
 package com.inmobi.databus.partition;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.Text;
 
 import com.inmobi.databus.readers.DatabusStreamWaitingReader;
+import com.inmobi.databus.readers.ListingCache;
 import com.inmobi.messaging.metrics.PartitionReaderStatsExposer;
 
 public class ClusterReader extends AbstractPartitionStreamReader {
@@ -22,7 +22,6 @@ public class ClusterReader extends AbstractPartitionStreamReader {
   private final PartitionCheckpoint partitionCheckpoint;
   private final Date startTime;
   private final Path streamDir;
-  private final boolean isDatabusData;
 
   ClusterReader(PartitionId partitionId,
       PartitionCheckpoint partitionCheckpoint, FileSystem fs,
@@ -33,10 +32,36 @@ public class ClusterReader extends AbstractPartitionStreamReader {
     this.startTime = startTime;
     this.streamDir = streamDir;
     this.partitionCheckpoint = partitionCheckpoint;
-    this.isDatabusData = isDatabusData;
 
-    reader = new DatabusStreamWaitingReader(partitionId, fs, streamDir,
-        inputFormatClass, conf, waitTimeForFileCreate, metrics, noNewFiles);
+    DatabusStreamWaitingReader waitingReader = new DatabusStreamWaitingReader(
+        partitionId, fs, streamDir, inputFormatClass, conf,
+        waitTimeForFileCreate, metrics, noNewFiles);
+    // messages of databus streams are the text of the lines
+    waitingReader.setReadValueBytes(isDatabusData);
+    reader = waitingReader;
+  }
+
+  @Override
+  public void setPrefetch(int numFiles, int numLines) {
+    ((DatabusStreamWaitingReader) reader).setPrefetch(numFiles, numLines);
+  }
+
+  @Override
+  public void setBackfill(long lagMillis, int numFiles, ExecutorService pool,
+      Semaphore readAheadLines) {
+    ((DatabusStreamWaitingReader) reader).setBackfill(lagMillis, numFiles, pool,
+        readAheadLines);
+  }
+
+  @Override
+  public void setPolling(long maxWaitTime, ListingCache listingCache) {
+    reader.setPollBackoff(maxWaitTime);
+    ((DatabusStreamWaitingReader) reader).setListingCache(listingCache);
+  }
+
+  @Override
+  public void setMapLocalFiles(boolean mapLocalFiles) {
+    ((DatabusStreamWaitingReader) reader).setMapLocalFiles(mapLocalFiles);
   }
 
   public void initializeCurrentFile() throws IOException, InterruptedException {
@@ -64,15 +89,4 @@ public class ClusterReader extends AbstractPartitionStreamReader {
     LOG.info("Intialized currentFile:" + reader.getCurrentFile() +
         " currentLineNum:" + reader.getCurrentLineNum());
   }
-
-  public byte[] readLine() throws IOException, InterruptedException {
-    byte[] line = super.readLine();
-    if (line != null && isDatabusData) {
-      Text text = new Text();
-      ByteArrayInputStream bais = new ByteArrayInputStream(line);
-      text.readFields(new DataInputStream(bais));
-      return text.getBytes();
-    } 
-    return line;
-  }
 }
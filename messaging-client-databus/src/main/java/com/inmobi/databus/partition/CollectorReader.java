@@ -1,19 +1,19 @@
 package com.inmobi.databus.partition;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.Text;
 
 import com.inmobi.databus.files.DatabusStreamFile;
 import com.inmobi.databus.readers.CollectorStreamReader;
+import com.inmobi.databus.readers.ListingCache;
 import com.inmobi.databus.readers.LocalStreamCollectorReader;
 import com.inmobi.messaging.metrics.CollectorReaderStatsExposer;
 
@@ -45,11 +45,54 @@ public class CollectorReader extends AbstractPartitionStreamReader {
     this.metrics = metrics;
     lReader = new LocalStreamCollectorReader(partitionId,  fs, streamName,
         streamsLocalDir, conf, waitTimeForFileCreate, metrics);
+    lReader.setReadValueBytes(true);
     cReader = new CollectorStreamReader(partitionId, fs, streamName,
         collectorDir, waitTimeForFlush, waitTimeForFileCreate, metrics,
         noNewFiles);
   }
 
+  /**
+   * Files of the local stream are opened ahead; collector files are still
+   * being written when read.
+   */
+  @Override
+  public void setPrefetch(int numFiles, int numLines) {
+    lReader.setPrefetch(numFiles, numLines);
+  }
+
+  @Override
+  public void setBackfill(long lagMillis, int numFiles, ExecutorService pool,
+      Semaphore readAheadLines) {
+    lReader.setBackfill(lagMillis, numFiles, pool, readAheadLines);
+  }
+
+  /**
+   * The local stream directory is shared by the collectors of the cluster,
+   * so its listings are shared; each collector has its own directory.
+   */
+  @Override
+  public void setPolling(long maxWaitTime, ListingCache listingCache) {
+    lReader.setPollBackoff(maxWaitTime);
+    lReader.setListingCache(listingCache);
+    cReader.setPollBackoff(maxWaitTime);
+  }
+
+  /**
+   * Only files of the local stream are mapped; collector files are still
+   * being written when read.
+   */
+  @Override
+  public void setMapLocalFiles(boolean mapLocalFiles) {
+    lReader.setMapLocalFiles(mapLocalFiles);
+  }
+
+  /**
+   * Keep collector files open while waiting for them to be flushed.
+   */
+  void setTail(boolean tail) {
+    cReader.setTail(tail);
+  }
+
   private void initializeCurrentFileFromTimeStamp(Date timestamp)
       throws IOException, InterruptedException {
     if (lReader.initializeCurrentFile(timestamp)) {
@@ -163,13 +206,6 @@ public class CollectorReader extends AbstractPartitionStreamReader {
           metrics.incrementSwitchesFromCollectorToLocal();
         }
       }
-    } else {
-      if (reader == lReader) {
-        Text text = new Text();
-        ByteArrayInputStream bais = new ByteArrayInputStream(line);
-        text.readFields(new DataInputStream(bais));
-        return text.getBytes();
-      }
     }
     return line;
   }
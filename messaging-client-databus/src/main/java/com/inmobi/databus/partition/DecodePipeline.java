@@ -0,0 +1,259 @@
+package com.inmobi.databus.partition;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.inmobi.databus.files.StreamFile;
+import com.inmobi.messaging.consumer.databus.QueueEntry;
+
+/**
+ * Turns the lines read by a partition reader into buffer entries on a shared
+ * pool of threads, adding the entries to the buffer in the order the lines
+ * were read.
+ *
+ * Lines are gathered in batches, and a batch is handed to the pool once it
+ * is full or when no batch of the partition is being decoded, so a slow
+ * stream never waits for a batch to fill up. Decoded batches are added to
+ * the buffer by the thread which decodes the oldest pending batch, in
+ * sequence. The reader blocks while the maximum number of batches are being
+ * decoded.
+ */
+class DecodePipeline {
+  private static final Log LOG = LogFactory.getLog(DecodePipeline.class);
+
+  private static final long PUT_WAIT_MILLIS = 100;
+
+  /**
+   * Creates the buffer entry of a line.
+   */
+  interface EntryFactory {
+    QueueEntry createEntry(byte[] line, StreamFile streamFile, long lineNum,
+        long offset, boolean lastInFile);
+
+    /**
+     * Called once the entry is in the buffer.
+     */
+    void entryAdded(QueueEntry entry);
+  }
+
+  private static class RawLine {
+    private final byte[] line;
+    private final StreamFile streamFile;
+    private final long lineNum;
+    private final long offset;
+    private final boolean lastInFile;
+
+    RawLine(byte[] line, StreamFile streamFile, long lineNum, long offset,
+        boolean lastInFile) {
+      this.line = line;
+      this.streamFile = streamFile;
+      this.lineNum = lineNum;
+      this.offset = offset;
+      this.lastInFile = lastInFile;
+    }
+  }
+
+  private final Executor pool;
+  private final BlockingQueue<QueueEntry> buffer;
+  private final EntryFactory entryFactory;
+  private final int batchSize;
+  private final int maxInFlight;
+
+  // guarded by this
+  private List<RawLine> pending;
+  private long nextSequence = 0;
+  private long nextToPublish = 0;
+  private int numInFlight = 0;
+  private boolean publishing = false;
+  private final Map<Long, List<QueueEntry>> decoded =
+      new HashMap<Long, List<QueueEntry>>();
+  // lines added and not in the buffer yet
+  private int numHeld = 0;
+  private volatile boolean closed = false;
+
+  DecodePipeline(Executor pool, BlockingQueue<QueueEntry> buffer,
+      EntryFactory entryFactory, int batchSize, int maxInFlight) {
+    if (batchSize <= 0 || maxInFlight <= 0) {
+      throw new IllegalArgumentException("Batch size and batches in flight"
+          + " should be positive");
+    }
+    this.pool = pool;
+    this.buffer = buffer;
+    this.entryFactory = entryFactory;
+    this.batchSize = batchSize;
+    this.maxInFlight = maxInFlight;
+    this.pending = new ArrayList<RawLine>(batchSize);
+  }
+
+  /**
+   * Add a line read at the passed position.
+   *
+   * @param lastInFile Whether the line is the last one of its file
+   * @return false if the pipeline is closed, in which case the line is not
+   *  added
+   */
+  synchronized boolean add(byte[] line, StreamFile streamFile, long lineNum,
+      long offset, boolean lastInFile) throws InterruptedException {
+    if (closed) {
+      return false;
+    }
+    pending.add(new RawLine(line, streamFile, lineNum, offset, lastInFile));
+    numHeld++;
+    if (pending.size() >= batchSize) {
+      while (numInFlight >= maxInFlight && !closed) {
+        wait();
+      }
+      submitPending();
+    } else if (numInFlight == 0) {
+      submitPending();
+    }
+    return true;
+  }
+
+  /**
+   * Wait for all the lines added to be in the buffer.
+   */
+  synchronized void flush() throws InterruptedException {
+    if (numInFlight == 0) {
+      submitPending();
+    }
+    while ((numInFlight > 0 || !pending.isEmpty()) && !closed) {
+      wait();
+    }
+  }
+
+  /**
+   * Stop adding entries to the buffer, dropping the ones not added yet. Waits
+   * for the thread adding entries to the buffer, if any, to stop, so that no
+   * entry is added once closed.
+   *
+   * @return the number of lines dropped
+   */
+  synchronized int close() {
+    closed = true;
+    pending.clear();
+    for (List<QueueEntry> entries : decoded.values()) {
+      release(entries, 0);
+    }
+    decoded.clear();
+    notifyAll();
+    boolean interrupted = false;
+    // the publisher gives up on a full buffer within PUT_WAIT_MILLIS
+    while (publishing) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    return numHeld;
+  }
+
+  private void submitPending() {
+    if (closed || pending.isEmpty()) {
+      return;
+    }
+    final List<RawLine> batch = pending;
+    final long sequence = nextSequence++;
+    pending = new ArrayList<RawLine>(batchSize);
+    numInFlight++;
+    pool.execute(new Runnable() {
+      @Override
+      public void run() {
+        List<QueueEntry> entries = new ArrayList<QueueEntry>(batch.size());
+        try {
+          for (RawLine raw : batch) {
+            entries.add(entryFactory.createEntry(raw.line, raw.streamFile,
+                raw.lineNum, raw.offset, raw.lastInFile));
+          }
+        } catch (RuntimeException e) {
+          // keep the sequence going, the failed lines are dropped
+          LOG.warn("Could not decode lines", e);
+          synchronized (DecodePipeline.this) {
+            numHeld -= batch.size() - entries.size();
+          }
+        }
+        publish(sequence, entries);
+      }
+    });
+  }
+
+  /**
+   * Add the decoded batches to the buffer in sequence, unless another thread
+   * is already doing so.
+   */
+  private void publish(long sequence, List<QueueEntry> entries) {
+    synchronized (this) {
+      if (closed) {
+        numInFlight--;
+        release(entries, 0);
+        return;
+      }
+      decoded.put(sequence, entries);
+      if (publishing) {
+        return;
+      }
+      publishing = true;
+    }
+    while (true) {
+      List<QueueEntry> next;
+      synchronized (this) {
+        next = closed ? null : decoded.remove(nextToPublish);
+        if (next == null) {
+          publishing = false;
+          // lines gathered while the batches were in flight
+          if (numInFlight == 0) {
+            submitPending();
+          }
+          notifyAll();
+          return;
+        }
+        nextToPublish++;
+      }
+      int numAdded = put(next);
+      synchronized (this) {
+        numInFlight--;
+        numHeld -= numAdded;
+        if (numAdded < next.size()) {
+          release(next, numAdded);
+        }
+        notifyAll();
+      }
+    }
+  }
+
+  private int put(List<QueueEntry> entries) {
+    int numAdded = 0;
+    try {
+      for (QueueEntry entry : entries) {
+        while (!buffer.offer(entry, PUT_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+          if (closed) {
+            return numAdded;
+          }
+        }
+        numAdded++;
+        entryFactory.entryAdded(entry);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return numAdded;
+  }
+
+  private static void release(List<QueueEntry> entries, int from) {
+    for (int i = from; i < entries.size(); i++) {
+      entries.get(i).release();
+    }
+  }
+}
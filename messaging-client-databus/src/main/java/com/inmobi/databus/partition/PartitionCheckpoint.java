@@ -8,19 +8,47 @@ import org.apache.hadoop.io.Writable;
 
 import com.inmobi.databus.files.StreamFile;
 
+/**
+ * Position in a partition: the stream file and the number of lines read from
+ * it.
+ *
+ * The byte offset of the next line is kept along, when the reader knows it,
+ * so that the file can be opened at the offset instead of skipping the lines
+ * read. It is only a hint for reaching the same position and is not part of
+ * equality.
+ */
 public class PartitionCheckpoint implements Writable {
+  public static final long UNKNOWN_OFFSET = -1;
+
   private StreamFile streamFile;
   private long lineNum;
+  private long offset = UNKNOWN_OFFSET;
 
   public PartitionCheckpoint(StreamFile streamFile, long lineNum) {
+    this(streamFile, lineNum, UNKNOWN_OFFSET);
+  }
+
+  public PartitionCheckpoint(StreamFile streamFile, long lineNum,
+      long offset) {
     this.streamFile = streamFile;
     this.lineNum = lineNum;
+    this.offset = offset;
   }
 
   public PartitionCheckpoint(DataInput in) throws IOException {
     readFields(in);
   }
 
+  /**
+   * Read a partition checkpoint, which has the offset serialized only if
+   * <code>withOffset</code> is true. Checkpoints written before offsets were
+   * added have none.
+   */
+  public PartitionCheckpoint(DataInput in, boolean withOffset)
+      throws IOException {
+    readFields(in, withOffset);
+  }
+
   public String getFileName() {
     return streamFile.toString();
   }
@@ -33,8 +61,21 @@ public class PartitionCheckpoint implements Writable {
     return lineNum;
   }
 
+  /**
+   * Get the byte offset of the line following the checkpoint,
+   * {@link #UNKNOWN_OFFSET} if it is not known.
+   */
+  public long getOffset() {
+    return offset;
+  }
+
   @Override
   public void readFields(DataInput in) throws IOException {
+    readFields(in, true);
+  }
+
+  private void readFields(DataInput in, boolean withOffset)
+      throws IOException {
     String streamFileClassName = in.readUTF();
     Class<?> clazz;
     try {
@@ -45,6 +86,7 @@ public class PartitionCheckpoint implements Writable {
     }
     streamFile.readFields(in);
     lineNum = in.readLong(); 
+    offset = withOffset ? in.readLong() : UNKNOWN_OFFSET;
   }
 
   @Override
@@ -52,6 +94,7 @@ public class PartitionCheckpoint implements Writable {
     out.writeUTF(streamFile.getClass().getCanonicalName());
     streamFile.write(out);
     out.writeLong(lineNum);
+    out.writeLong(offset);
   }
 
   public String toString() {
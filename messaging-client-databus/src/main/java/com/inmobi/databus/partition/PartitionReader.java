@@ -3,19 +3,27 @@ package com.inmobi.databus.partition;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 
-import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 
 import com.inmobi.databus.files.StreamFile;
+import com.inmobi.databus.readers.ListingCache;
 import com.inmobi.messaging.Message;
+import com.inmobi.messaging.MessagePool;
 import com.inmobi.messaging.consumer.databus.DataEncodingType;
 import com.inmobi.messaging.consumer.databus.QueueEntry;
+import com.inmobi.messaging.consumer.util.Base64Decoder;
 import com.inmobi.messaging.metrics.CollectorReaderStatsExposer;
 import com.inmobi.messaging.metrics.PartitionReaderStatsExposer;
 
@@ -32,6 +40,21 @@ public class PartitionReader {
   private boolean inited = false;
   private final DataEncodingType dataEncoding;
   private final PartitionReaderStatsExposer prMetrics;
+  private MessagePool messagePool;
+  private boolean deferDecoding = false;
+  private DecodePipeline decodePipeline;
+  private volatile ReadCredits readCredits;
+  private int partitionOrdinal = -1;
+  // whether the last entry of each file is marked, which takes holding back
+  // a line until the next one is read
+  private boolean markLastInFile = false;
+  // line held back until the next one tells whether it ends its file, kept
+  // when reading fails so that it is not lost, and the credit it took
+  private byte[] heldLine;
+  private StreamFile heldFile;
+  private long heldLineNum;
+  private long heldOffset;
+  private ReadCredits heldCredit;
 
   public PartitionReader(PartitionId partitionId,
       PartitionCheckpoint partitionCheckpoint, Configuration conf,
@@ -101,18 +124,46 @@ public class PartitionReader {
         " currentReader:" + reader);
   }
 
+  /**
+   * Create a reader of the passed files of a stream, which stops after the
+   * last one.
+   *
+   * @param files Files to read, in any order
+   * @param positions Positions of the files which were partly read before
+   */
+  public PartitionReader(PartitionId partitionId, FileSystem fs,
+      BlockingQueue<QueueEntry> buffer, Path streamDir,
+      Configuration conf, String inputFormatClass, boolean isDatabusData,
+      DataEncodingType dataEncoding, PartitionReaderStatsExposer prMetrics,
+      List<FileStatus> files,
+      Map<? extends StreamFile, PartitionCheckpoint> positions)
+          throws IOException {
+    this(partitionId, buffer, dataEncoding, prMetrics);
+    reader = new ReplayReader(partitionId, fs, streamDir, conf,
+        inputFormatClass, isDatabusData, prMetrics, files, positions);
+    markLastInFile = true;
+    LOG.info("Partition reader initialized with partitionId:" + partitionId +
+        " files:" + files.size() + " currentReader:" + reader);
+  }
+
   private PartitionReader(PartitionId partitionId,
       PartitionCheckpoint partitionCheckpoint,
       BlockingQueue<QueueEntry> buffer, Date startTime,
       DataEncodingType dataEncoding,
       PartitionReaderStatsExposer prMetrics)
           throws IOException {
+    this(partitionId, buffer, dataEncoding, prMetrics);
     if (startTime == null && partitionCheckpoint == null) {
       String msg = "StartTime and checkpoint both" +
           " cannot be null in PartitionReader";
       LOG.warn(msg);
       throw new IllegalArgumentException(msg);
     }
+  }
+
+  private PartitionReader(PartitionId partitionId,
+      BlockingQueue<QueueEntry> buffer, DataEncodingType dataEncoding,
+      PartitionReaderStatsExposer prMetrics) {
     this.partitionId = partitionId;
     this.buffer = buffer;
     this.dataEncoding = dataEncoding;
@@ -158,6 +209,132 @@ public class PartitionReader {
     thread.start();
   }
 
+  /**
+   * Decode base64 messages into buffers of the passed pool instead of freshly
+   * allocated arrays. Other messages wrap the line read, which is allocated
+   * for them already. Has to be set before the reader is started.
+   */
+  public void setMessagePool(MessagePool messagePool) {
+    this.messagePool = messagePool;
+  }
+
+  /**
+   * Leave base64 encoded messages to be decoded by the thread consuming them,
+   * so that the reader thread only reads. Has to be set before the reader is
+   * started.
+   */
+  public void setDeferDecoding(boolean deferDecoding) {
+    this.deferDecoding = deferDecoding;
+  }
+
+  /**
+   * Build the messages of the lines read on the passed pool of threads
+   * instead of the reader thread, in batches of up to the passed number of
+   * lines. Messages still reach the buffer in the order they are read. Has to
+   * be set before the reader is started.
+   *
+   * @param pool Threads building the messages, which can be shared by readers
+   * @param batchSize Maximum number of lines in a batch
+   * @param maxBatchesInFlight Number of batches built at once, after which
+   *  the reader waits
+   */
+  public void setDecodePool(Executor pool, int batchSize,
+      int maxBatchesInFlight) {
+    decodePipeline = new DecodePipeline(pool, buffer,
+        new DecodePipeline.EntryFactory() {
+      @Override
+      public QueueEntry createEntry(byte[] line, StreamFile streamFile,
+          long lineNum, long offset, boolean lastInFile) {
+        return PartitionReader.this.createEntry(line, streamFile, lineNum,
+            offset, lastInFile);
+      }
+
+      @Override
+      public void entryAdded(QueueEntry entry) {
+        prMetrics.incrementMessagesAddedToBuffer();
+      }
+    }, batchSize, maxBatchesInFlight);
+  }
+
+  /**
+   * Open the next files of the stream in the background while reading the
+   * current one. Has to be set before the reader is started.
+   *
+   * @param numFiles Number of files opened ahead, none if zero
+   * @param numLines Number of lines read ahead in each file opened ahead
+   */
+  public void setPrefetch(int numFiles, int numLines) {
+    reader.setPrefetch(numFiles, numLines);
+  }
+
+  /**
+   * Read several files of the stream at once while the reader is far behind,
+   * keeping the order of the messages. Has to be set before the reader is
+   * started.
+   *
+   * @param lagMillis Age of the current file past which files are backfilled,
+   *  no backfill if zero
+   * @param numFiles Number of files read ahead while backfilling
+   * @param pool Threads reading the files, which can be shared by readers
+   * @param readAheadLines Lines which can be read ahead of the reader, which
+   *  can be shared by readers, none read ahead if null
+   */
+  public void setBackfill(long lagMillis, int numFiles, ExecutorService pool,
+      Semaphore readAheadLines) {
+    reader.setBackfill(lagMillis, numFiles, pool, readAheadLines);
+  }
+
+  /**
+   * Double the wait between polls for new data while none is found, and list
+   * directories through the passed cache. Has to be set before the reader is
+   * started.
+   *
+   * @param maxWaitTime Longest wait between polls, no backoff if not above
+   *  the configured wait
+   * @param listingCache Listings shared with other readers, none if null
+   */
+  public void setPolling(long maxWaitTime, ListingCache listingCache) {
+    reader.setPolling(maxWaitTime, listingCache);
+  }
+
+  /**
+   * Read uncompressed text files on the local file system by mapping them in
+   * memory rather than through the input format. Has to be set before the
+   * reader is started.
+   */
+  public void setMapLocalFiles(boolean mapLocalFiles) {
+    reader.setMapLocalFiles(mapLocalFiles);
+  }
+
+  /**
+   * Keep the collector file being written open while waiting for it to be
+   * flushed, rather than reopening it after every wait. Applies to readers of
+   * collector streams on the local file system only. Has to be set before the
+   * reader is started.
+   */
+  public void setTailCollectorFiles(boolean tail) {
+    if (reader instanceof CollectorReader) {
+      ((CollectorReader) reader).setTail(tail);
+    }
+  }
+
+  /**
+   * Set the index of this partition among the readers of the consumer, which
+   * is passed along with every message read. Has to be set before the reader
+   * is started.
+   */
+  public void setPartitionOrdinal(int partitionOrdinal) {
+    this.partitionOrdinal = partitionOrdinal;
+  }
+
+  /**
+   * Add a message read to the buffer only after acquiring a credit from the
+   * passed credits. Can be set while the reader is running.
+   */
+  public void setReadCredits(ReadCredits readCredits) {
+    this.readCredits = readCredits;
+  }
+
   void init() throws IOException, InterruptedException {
     if (!inited) {
       reader.initializeCurrentFile();
@@ -168,6 +345,14 @@ public class PartitionReader {
   public void close() {
     stopped = true;
     LOG.info(Thread.currentThread().getName() + " stopped [" + stopped + "]");
+    if (decodePipeline != null) {
+      int numDropped = decodePipeline.close();
+      ReadCredits credits = readCredits;
+      if (credits != null && numDropped > 0) {
+        // the dropped messages are read again after a reset
+        credits.grant(numDropped);
+      }
+    }
     if (reader != null) {
       try {
         reader.close();
@@ -184,6 +369,11 @@ public class PartitionReader {
         return;
       }
     }
+    // the line held back is read again after a reset
+    if (heldCredit != null) {
+      heldCredit.grant(1);
+      heldCredit = null;
+    }
   }
 
   StreamFile getCurrentFile() {
@@ -196,6 +386,8 @@ public class PartitionReader {
 
   void execute() {
     assert (reader != null);
+    // credit taken for a line which is not in the buffer yet
+    ReadCredits lineCredit = null;
     try {
       reader.openStream();
       LOG.info("Reading file " + reader.getCurrentFile() + 
@@ -203,20 +395,40 @@ public class PartitionReader {
       while (!stopped) {
         byte[] line = reader.readLine();
         if (line != null) {
-          // add the data to queue
-          byte[] data;
-          if (dataEncoding.equals(DataEncodingType.BASE64)) {
-            data = Base64.decodeBase64(line);
-          } else {
-            data = line;
+          // the credit is taken once there is a message, so that readers
+          // waiting for data do not hold credits others could use
+          ReadCredits credits = readCredits;
+          if (credits != null) {
+            credits.acquire();
+            lineCredit = credits;
+          }
+          StreamFile file = reader.getCurrentFile();
+          if (!markLastInFile) {
+            // add the data to queue
+            if (!add(line, file, reader.getCurrentLineNum(),
+                reader.getCurrentOffset(), false)) {
+              return;
+            }
+            lineCredit = null;
+            continue;
+          }
+          if (heldLine != null && !addHeldLine(!heldFile.equals(file))) {
+            return;
           }
-          buffer.put(new QueueEntry(new Message(
-              ByteBuffer.wrap(data)), partitionId,
-              new PartitionCheckpoint(reader.getCurrentFile(),
-                  reader.getCurrentLineNum())));
-          prMetrics.incrementMessagesAddedToBuffer();
+          heldLine = line;
+          heldFile = file;
+          heldLineNum = reader.getCurrentLineNum();
+          heldOffset = reader.getCurrentOffset();
+          heldCredit = lineCredit;
+          lineCredit = null;
         } else {
+          if (heldLine != null && ((ReplayReader) reader).isFinished()) {
+            addHeldLine(true);
+          }
           LOG.info("No stream to read");
+          if (decodePipeline != null) {
+            decodePipeline.flush();
+          }
           return;
         }
       }
@@ -226,6 +438,9 @@ public class PartitionReader {
       LOG.warn("Error while reading stream", e);
       prMetrics.incrementHandledExceptions();
     } finally {
+      if (lineCredit != null) {
+        lineCredit.grant(1);
+      }
       try {
         reader.closeStream();
       } catch (Exception e) {
@@ -235,6 +450,55 @@ public class PartitionReader {
     }
   }
 
+  private boolean addHeldLine(boolean lastInFile)
+      throws InterruptedException {
+    if (!add(heldLine, heldFile, heldLineNum, heldOffset, lastInFile)) {
+      return false;
+    }
+    heldLine = null;
+    heldFile = null;
+    heldCredit = null;
+    return true;
+  }
+
+  /**
+   * @return false if the line was not added because the reader is closed,
+   *  in which case its credit is still held
+   */
+  private boolean add(byte[] line, StreamFile streamFile, long lineNum,
+      long offset, boolean lastInFile) throws InterruptedException {
+    if (decodePipeline != null) {
+      return decodePipeline.add(line, streamFile, lineNum, offset,
+          lastInFile);
+    }
+    buffer.put(createEntry(line, streamFile, lineNum, offset, lastInFile));
+    prMetrics.incrementMessagesAddedToBuffer();
+    return true;
+  }
+
+  private QueueEntry createEntry(byte[] line, StreamFile streamFile,
+      long lineNum, long offset, boolean lastInFile) {
+    QueueEntry entry;
+    if (dataEncoding.equals(DataEncodingType.BASE64) && deferDecoding) {
+      entry = new QueueEntry(line, messagePool, partitionId, partitionOrdinal,
+          streamFile, lineNum, offset);
+      entry.setLastInFile(lastInFile);
+      return entry;
+    }
+    Message msg;
+    if (dataEncoding.equals(DataEncodingType.BASE64)) {
+      msg = Base64Decoder.decode(line, messagePool);
+    } else {
+      // the line is the message already, copying it to a pooled buffer
+      // would only add work
+      msg = new Message(ByteBuffer.wrap(line));
+    }
+    entry = new QueueEntry(msg, partitionId, partitionOrdinal, streamFile,
+        lineNum, offset);
+    entry.setLastInFile(lastInFile);
+    return entry;
+  }
+
   public PartitionReaderStatsExposer getStatsExposer() {
     return prMetrics;
   }
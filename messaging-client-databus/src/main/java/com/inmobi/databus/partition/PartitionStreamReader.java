@@ -1,8 +1,11 @@
 package com.inmobi.databus.partition;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 
 import com.inmobi.databus.files.StreamFile;
+import com.inmobi.databus.readers.ListingCache;
 
 public interface PartitionStreamReader {
 
@@ -12,6 +15,47 @@ public interface PartitionStreamReader {
   
   long getCurrentLineNum();
 
+  long getCurrentOffset();
+
+  /**
+   * Open the next files of the stream in the background, if the reader reads
+   * files through an input format.
+   *
+   * @param numFiles Number of files opened ahead, none if zero
+   * @param numLines Number of lines read ahead in each file opened ahead
+   */
+  void setPrefetch(int numFiles, int numLines);
+
+  /**
+   * Read several files of the stream at once while it is far behind, if the
+   * reader reads files through an input format.
+   *
+   * @param lagMillis Age of the current file past which files are backfilled,
+   *  no backfill if zero
+   * @param numFiles Number of files read ahead while backfilling
+   * @param pool Threads reading the files, which can be shared by readers
+   * @param readAheadLines Lines which can be read ahead of the reader, which
+   *  can be shared by readers, none read ahead if null
+   */
+  void setBackfill(long lagMillis, int numFiles, ExecutorService pool,
+      Semaphore readAheadLines);
+
+  /**
+   * Double the wait between polls for new data while none is found, and list
+   * directories through the passed cache.
+   *
+   * @param maxWaitTime Longest wait between polls, no backoff if not above
+   *  the configured wait
+   * @param listingCache Listings shared with other readers, none if null
+   */
+  void setPolling(long maxWaitTime, ListingCache listingCache);
+
+  /**
+   * Read uncompressed text files on the local file system by mapping them in
+   * memory, if the reader reads files through an input format.
+   */
+  void setMapLocalFiles(boolean mapLocalFiles);
+
   void openStream() throws IOException;
   
   byte[] readLine() throws IOException, InterruptedException;
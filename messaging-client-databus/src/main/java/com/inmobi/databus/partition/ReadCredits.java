@@ -0,0 +1,50 @@
+package com.inmobi.databus.partition;
+
+/**
+ * Credits shared by the partition readers of a consumer, bounding how far
+ * they read ahead of the demand of the application.
+ *
+ * A reader acquires one credit for every message it has read, before adding
+ * it to the buffer, and blocks while there are none. The count can be
+ * negative when messages were read before the credits were put in place;
+ * those messages are served first.
+ */
+public class ReadCredits {
+
+  private long credits;
+
+  public ReadCredits(long initialCredits) {
+    this.credits = initialCredits;
+  }
+
+  /**
+   * Take a credit, waiting until one is granted.
+   */
+  public synchronized void acquire() throws InterruptedException {
+    while (credits <= 0) {
+      wait();
+    }
+    credits--;
+  }
+
+  /**
+   * Add credits, waking up the readers waiting for them.
+   *
+   * @param n The number of credits to add
+   */
+  public synchronized void grant(long n) {
+    if (n <= 0) {
+      return;
+    }
+    if (credits > Long.MAX_VALUE - n) {
+      credits = Long.MAX_VALUE;
+    } else {
+      credits += n;
+    }
+    notifyAll();
+  }
+
+  public synchronized long getAvailable() {
+    return credits;
+  }
+}
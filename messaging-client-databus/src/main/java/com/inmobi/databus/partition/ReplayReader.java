@@ -0,0 +1,81 @@
+package com.inmobi.databus.partition;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.inmobi.databus.files.StreamFile;
+import com.inmobi.databus.readers.DatabusStreamReplayReader;
+import com.inmobi.databus.readers.ListingCache;
+import com.inmobi.messaging.metrics.PartitionReaderStatsExposer;
+
+/**
+ * Reads its share of the files of a replayed stream, in stream order, and
+ * stops after the last one.
+ */
+public class ReplayReader extends AbstractPartitionStreamReader {
+
+  private static final Log LOG = LogFactory.getLog(ReplayReader.class);
+
+  ReplayReader(PartitionId partitionId, FileSystem fs, Path streamDir,
+      Configuration conf, String inputFormatClass, boolean isDatabusData,
+      PartitionReaderStatsExposer metrics, List<FileStatus> files,
+      Map<? extends StreamFile, PartitionCheckpoint> positions)
+          throws IOException {
+    DatabusStreamReplayReader replayReader = new DatabusStreamReplayReader(
+        partitionId, fs, streamDir, inputFormatClass, conf, metrics, files,
+        positions);
+    // messages of databus streams are the text of the lines
+    replayReader.setReadValueBytes(isDatabusData);
+    reader = replayReader;
+  }
+
+  @Override
+  public void setPrefetch(int numFiles, int numLines) {
+    ((DatabusStreamReplayReader) reader).setPrefetch(numFiles, numLines);
+  }
+
+  @Override
+  public void setBackfill(long lagMillis, int numFiles, ExecutorService pool,
+      Semaphore readAheadLines) {
+    ((DatabusStreamReplayReader) reader).setBackfill(lagMillis, numFiles, pool,
+        readAheadLines);
+  }
+
+  /**
+   * Replayed files are known upfront, so there is nothing to poll for.
+   */
+  @Override
+  public void setPolling(long maxWaitTime, ListingCache listingCache) {
+  }
+
+  @Override
+  public void setMapLocalFiles(boolean mapLocalFiles) {
+    ((DatabusStreamReplayReader) reader).setMapLocalFiles(mapLocalFiles);
+  }
+
+  /**
+   * Whether the reader went past the end of its last file.
+   */
+  boolean isFinished() {
+    return ((DatabusStreamReplayReader) reader).isFinished();
+  }
+
+  @Override
+  public void initializeCurrentFile() throws IOException {
+    LOG.info("Initializing replay reader's current file");
+    reader.build();
+    reader.initFromStart();
+    LOG.info("Intialized currentFile:" + reader.getCurrentFile() +
+        " currentLineNum:" + reader.getCurrentLineNum());
+  }
+}
@@ -1,8 +1,8 @@
 package com.inmobi.databus.readers;
 
-import java.io.BufferedReader;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.util.Collections;
 import java.util.Date;
 import java.util.TreeMap;
 
@@ -18,6 +18,7 @@ import com.inmobi.databus.Cluster;
 import com.inmobi.databus.files.CollectorFile;
 import com.inmobi.databus.files.DatabusStreamFile;
 import com.inmobi.databus.files.FileMap;
+import com.inmobi.databus.partition.PartitionCheckpoint;
 import com.inmobi.databus.partition.PartitionId;
 import com.inmobi.messaging.metrics.CollectorReaderStatsExposer;
 
@@ -25,13 +26,12 @@ public class CollectorStreamReader extends StreamReader<CollectorFile> {
 
   private static final Log LOG = LogFactory.getLog(CollectorStreamReader.class);
 
-  private long waitTimeForFlush;
-  protected long currentOffset = 0;
-  private boolean sameStream = false;
+  private final PollBackoff flushBackoff;
   protected FSDataInputStream inStream;
-  protected BufferedReader reader;
+  private final LineScanner scanner = new LineScanner();
   protected final String streamName;
   private boolean moveToNext = false;
+  private boolean tail = false;
   private CollectorReaderStatsExposer collectorMetrics;
 
   public CollectorStreamReader(PartitionId partitionId,
@@ -41,7 +41,7 @@ public class CollectorStreamReader extends StreamReader<CollectorFile> {
       boolean noNewFiles) throws IOException {
     super(partitionId, fs, streamDir, waitTimeForCreate, metrics, noNewFiles);
     this.streamName = streamName;
-    this.waitTimeForFlush = waitTimeForFlush;
+    this.flushBackoff = new PollBackoff(waitTimeForFlush);
     this.collectorMetrics = (CollectorReaderStatsExposer)(this.metrics);
     LOG.info("Collector reader initialized with partitionId:" + partitionId +
         " streamDir:" + streamDir + 
@@ -49,6 +49,30 @@ public class CollectorStreamReader extends StreamReader<CollectorFile> {
         " waitTimeForCreate:" + waitTimeForCreate);
   }
 
+  /**
+   * Double the waits for new files and for flushes of the current file, from
+   * their configured waits, while nothing new is found.
+   */
+  @Override
+  public void setPollBackoff(long maxWaitTime) {
+    super.setPollBackoff(maxWaitTime);
+    flushBackoff.setMaxWait(maxWaitTime);
+  }
+
+  /**
+   * Keep the current file open while waiting for it to be flushed, and read
+   * the flushed data from the open stream, on file systems whose streams see
+   * data written after they were opened.
+   *
+   * Only streams of the local file system do. An open HDFS stream never reads
+   * past the length the file had when it was opened, and the length known to
+   * the NameNode does not count the data synced to its last block, so the
+   * file is still reopened after every wait on HDFS.
+   */
+  public void setTail(boolean tail) {
+    this.tail = tail;
+  }
+
   protected FileMap<CollectorFile> createFileMap() throws IOException {
     return new FileMap<CollectorFile>() {
       
@@ -99,11 +123,6 @@ public class CollectorStreamReader extends StreamReader<CollectorFile> {
     };
   }
 
-  protected void initCurrentFile() {
-    super.initCurrentFile();
-    sameStream = false;
-  }
-
   protected void openCurrentFile(boolean next) throws IOException {
     closeCurrentFile();
     if (next) {
@@ -111,33 +130,35 @@ public class CollectorStreamReader extends StreamReader<CollectorFile> {
     } 
     LOG.info("Opening file:" + getCurrentFile() + " NumLinesTobeSkipped when" +
         " opening:" + currentLineNum);
-    if (fs.exists(getCurrentFile())) {
+    // opening the file tells whether it exists
+    try {
       inStream = fs.open(getCurrentFile());
-      reader = new BufferedReader(new InputStreamReader(inStream));
-      skipOldData();
-    } else {
+    } catch (FileNotFoundException e) {
       LOG.info("CurrentFile:" + getCurrentFile() + " does not exist");
+      return;
     }
+    metrics.incrementFileOpens();
+    skipOldData();
   }
 
   protected synchronized void closeCurrentFile() throws IOException {
-    if (reader != null) {
-      reader.close();
-      reader = null;
-    }
     if (inStream != null) {
       inStream.close();
       inStream = null;
     }
   }
 
+  /**
+   * Read the next line of the current file. The last line of the file is
+   * returned without its terminator only once the collector has moved to the
+   * next file, since until then it may still be being written.
+   */
   protected byte[] readRawLine() throws IOException {
-    String line = reader.readLine();
+    byte[] line = scanner.readLine(moveToNext);
     if (line != null) {
-      return line.getBytes();
-    } else {
-      return null;
+      currentLineOffset = scanner.getPosition();
     }
+    return line;
   }
 
   protected byte[] readNextLine()
@@ -145,26 +166,38 @@ public class CollectorStreamReader extends StreamReader<CollectorFile> {
     byte[] line = null;
     if (inStream != null) {
       line = super.readNextLine();
-      currentOffset = inStream.getPos();
     }
     return line;
   }
-  
+
+  @Override
+  public long getCurrentOffset() {
+    return currentLineOffset;
+  }
+
   protected void resetCurrentFileSettings() {
     super.resetCurrentFileSettings();
-    currentOffset = 0;
     moveToNext = false;
   }
 
+  /**
+   * Position the current file at the line following the lines already read,
+   * seeking to its offset when it is known.
+   */
   protected void skipOldData()
       throws IOException {
-    if (sameStream) {
-      LOG.info("Seeking to offset:" + currentOffset);
-      inStream.seek(currentOffset);
+    if (currentLineNum == 0) {
+      currentLineOffset = 0;
+    }
+    if (currentLineOffset != PartitionCheckpoint.UNKNOWN_OFFSET
+        && (currentLineOffset > 0 || currentLineNum == 0)) {
+      LOG.info("Seeking to offset:" + currentLineOffset);
+      inStream.seek(currentLineOffset);
+      scanner.reset(inStream, currentLineOffset);
     } else {
+      scanner.reset(inStream, 0);
       skipLines(currentLineNum);
-      sameStream = true;
-      currentOffset = inStream.getPos();
+      currentLineOffset = scanner.getPosition();
     }
   }
 
@@ -193,7 +226,10 @@ public class CollectorStreamReader extends StreamReader<CollectorFile> {
             return null;
           }
         } else {
-          waitForFlushAndReOpen();
+          if (!waitForFlushAndReOpen()) {
+            LOG.info("Current file was moved to Local Stream");
+            return null;
+          }
           LOG.info("Reading from the same file after reopen");
         }
       } else {
@@ -202,13 +238,22 @@ public class CollectorStreamReader extends StreamReader<CollectorFile> {
           LOG.info("Reading from next file: " + getCurrentFile());
         } else {
           LOG.info("Reading from same file before moving to next");
-          // open the same file
-          reOpen();
+          // read the end of the same file, including its last line
           moveToNext = true;
+          if (!refresh()) {
+            LOG.info("Current file was moved to Local Stream");
+            return null;
+          }
         }
       }
       line = readNextLine();
     }
+    if (line != null) {
+      long waited = flushBackoff.found();
+      if (waited >= 0) {
+        metrics.addDiscovery(waited);
+      }
+    }
     return line;
   }
 
@@ -216,14 +261,43 @@ public class CollectorStreamReader extends StreamReader<CollectorFile> {
     openCurrentFile(false);    
   }
 
-  private void waitForFlushAndReOpen() 
+  /**
+   * Make the data added to the current file since it was opened readable.
+   *
+   * @return false if the file was moved away while tailing it
+   */
+  private boolean refresh() throws IOException {
+    if (!tail || inStream == null || !isLocal()) {
+      reOpen();
+      return true;
+    }
+    // the open stream reads the new data, as long as the file is there
+    if (!fs.exists(getCurrentFile())) {
+      closeCurrentFile();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return false if the file was moved away while tailing it
+   */
+  private boolean waitForFlushAndReOpen()
       throws IOException, InterruptedException {
     if (!closed) {
       LOG.info("Waiting for flush");
-      Thread.sleep(waitTimeForFlush);
+      long waitTime = flushBackoff.nextWait();
+      if (isLocal()) {
+        // appends to the current file change its length
+        LocalFileWatcher.waitForChange(Collections.singletonList(
+            currentFile.getPath()), waitTime);
+      } else {
+        Thread.sleep(waitTime);
+      }
       collectorMetrics.incrementWaitTimeUnitsInSameFile();
-      reOpen();
+      return refresh();
     }
+    return true;
   }
 
   private void startFromNextHigherAndOpen(String fileName) 
@@ -253,6 +327,7 @@ public class CollectorStreamReader extends StreamReader<CollectorFile> {
       waitForFileCreate();
       build();
     }
+    newFileFound();
   }
 
   @Override
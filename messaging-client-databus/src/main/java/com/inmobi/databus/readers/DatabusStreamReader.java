@@ -1,14 +1,17 @@
 package com.inmobi.databus.readers;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -17,16 +20,18 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
-import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.hadoop.mapred.FileSplit;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordReader;
 import org.apache.hadoop.mapred.InputFormat;
 import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.TextInputFormat;
 import org.apache.hadoop.util.ReflectionUtils;
 
 import com.inmobi.databus.Cluster;
 import com.inmobi.databus.files.FileMap;
+import com.inmobi.databus.files.MinuteFormat;
 import com.inmobi.databus.files.StreamFile;
 import com.inmobi.databus.partition.PartitionCheckpoint;
 import com.inmobi.databus.partition.PartitionId;
@@ -37,14 +42,42 @@ public abstract class DatabusStreamReader<T extends StreamFile> extends
 
   private static final Log LOG = LogFactory.getLog(DatabusStreamReader.class);
 
-  private FileSplit currentFileSplit;
-  private RecordReader<Object, Object> recordReader;
+  private static final long ONE_MINUTE_IN_MILLIS = 60 * 1000;
+  private static final PathFilter MINUTE_DIR_FILTER = new PathFilter() {
+    @Override
+    public boolean accept(Path path) {
+      return path.getName().length() == 2;
+    }
+  };
+
+  private RecordFileReader fileReader;
   private InputFormat<Object, Object> input;
-  private Configuration conf;
+  // configuration of the record readers, shared by the files since building
+  // it parses the configuration resources
+  private final JobConf jobConf;
   protected Date buildTimestamp;
-  private Object msgKey;
-  private Object msgValue;
-  private ByteArrayOutputStream baos = new ByteArrayOutputStream();
+  // minute from which the current listing starts
+  protected Date listFrom;
+  // minute up to which the stream is listed and which later listings start
+  // from, null if the files have to be listed again from buildTimestamp
+  protected Date listedUpTo;
+  // file system calls of the current listing
+  private int numListingCalls;
+  // when the hour directory of the last getMinuteDirs call was listed
+  private long minuteDirsTime;
+  // whether lines are the bytes held by the values rather than the
+  // serialized values
+  private boolean readValueBytes = false;
+  private FilePrefetcher prefetcher;
+  private FilePrefetcher backfiller;
+  private long backfillLagMillis;
+  private ListingCache listingCache;
+  // prefetcher of the files ahead of the current one, if any
+  private FilePrefetcher activePrefetcher;
+  private final CompressionCodecFactory codecFactory;
+  // whether lines of the current file can be reached by their byte offset
+  private boolean seekable = false;
+  private boolean mapLocalFiles = false;
 
   protected DatabusStreamReader(PartitionId partitionId, FileSystem fs,
       Path streamDir, String inputFormatClass,
@@ -52,7 +85,7 @@ public abstract class DatabusStreamReader<T extends StreamFile> extends
       PartitionReaderStatsExposer metrics, boolean noNewFiles)
           throws IOException {
     super(partitionId, fs, streamDir, waitTimeForFileCreate, metrics, noNewFiles);
-    this.conf = conf;
+    this.jobConf = new JobConf(conf);
     try {
       input = (InputFormat<Object, Object>) ReflectionUtils.newInstance(
               conf.getClassByName(inputFormatClass), conf);
@@ -60,25 +93,251 @@ public abstract class DatabusStreamReader<T extends StreamFile> extends
       throw new IllegalArgumentException("Input format class" 
           + inputFormatClass + " not found", e);
     }
+    codecFactory = new CompressionCodecFactory(conf);
+  }
+
+  /**
+   * Read lines as the bytes held by the values, without the length the
+   * serialized values start with.
+   */
+  public void setReadValueBytes(boolean readValueBytes) {
+    this.readValueBytes = readValueBytes;
+  }
+
+  /**
+   * Open the next files of the stream in the background while the current
+   * file is read.
+   *
+   * @param numFiles Number of files opened ahead, none if zero
+   * @param numLines Number of lines read ahead in each file opened ahead
+   */
+  public void setPrefetch(int numFiles, int numLines) {
+    if (prefetcher != null) {
+      prefetcher.close();
+      prefetcher = null;
+    }
+    activePrefetcher = null;
+    if (numFiles > 0) {
+      prefetcher = new FilePrefetcher(this, partitionId.toString(), numFiles,
+          numLines);
+    }
+  }
+
+  /**
+   * Read several files of the stream at once while the stream is far behind,
+   * going back to reading one file at a time once it has caught up. Files are
+   * still handed to the reader in order, so lines and checkpoints are the same
+   * as when reading the files one by one.
+   *
+   * @param lagMillis Age of the current file past which files are backfilled,
+   *  no backfill if zero
+   * @param numFiles Number of files read ahead while backfilling
+   * @param pool Threads reading the files, which can be shared by readers
+   * @param readAheadLines Lines which can be read ahead of the reader, which
+   *  can be shared by readers, none read ahead if null
+   */
+  public void setBackfill(long lagMillis, int numFiles, ExecutorService pool,
+      Semaphore readAheadLines) {
+    if (backfiller != null) {
+      backfiller.close();
+      backfiller = null;
+    }
+    activePrefetcher = null;
+    if (lagMillis > 0 && numFiles > 0 && pool != null) {
+      backfillLagMillis = lagMillis;
+      backfiller = new FilePrefetcher(this, pool, numFiles, readAheadLines);
+    }
+  }
+
+  /**
+   * List directories through a cache shared with other readers, so that
+   * readers of the same stream directory share their listings.
+   *
+   * @param listingCache Shared listings, none if null
+   */
+  public void setListingCache(ListingCache listingCache) {
+    this.listingCache = listingCache;
+  }
+
+  /**
+   * Read uncompressed text files of a local stream by mapping them in memory
+   * rather than through the input format, if lines are the bytes held by the
+   * values. Disabled by default.
+   */
+  public void setMapLocalFiles(boolean mapLocalFiles) {
+    this.mapLocalFiles = mapLocalFiles;
   }
 
+  /**
+   * Build the listing of the stream from the passed time.
+   *
+   * Minutes listed by the previous build are not listed again if the passed
+   * time is within them; only the minutes from the last one listed are, and
+   * their files are merged with the files already listed.
+   */
   public void build(Date date) throws IOException {
+    if (buildTimestamp == null || date.before(buildTimestamp)
+        || listedUpTo == null
+        || date.getTime() >= listedUpTo.getTime() + ONE_MINUTE_IN_MILLIS) {
+      listedUpTo = null;
+    }
     this.buildTimestamp = date;
     build();
   }
 
+  @Override
+  public void build() throws IOException {
+    numListingCalls = 0;
+    if (listedUpTo == null) {
+      listFrom = buildTimestamp;
+      super.build();
+    } else {
+      listFrom = listedUpTo;
+      updateListing(getStreamFile(buildTimestamp), getStreamFile(listFrom));
+    }
+    metrics.addListing(numListingCalls);
+    LOG.debug("Listed " + streamDir + " from " + listFrom + " with "
+        + numListingCalls + " file system calls");
+  }
+
+  protected boolean exists(Path path) throws IOException {
+    numListingCalls++;
+    return fs.exists(path);
+  }
+
+  protected FileStatus[] listStatus(Path dir, PathFilter pathFilter)
+      throws IOException {
+    return listStatus(dir, pathFilter, 0).getFiles(pathFilter);
+  }
+
+  /**
+   * @param listedAfter Time in milliseconds before which a shared listing is
+   *  too old to be used
+   */
+  private ListingCache.Listing listStatus(Path dir, PathFilter pathFilter,
+      long listedAfter) throws IOException {
+    if (listingCache == null) {
+      return ListingCache.list(dir, new ListingCache.Lister() {
+        @Override
+        public FileStatus[] list(Path listedDir) throws IOException {
+          numListingCalls++;
+          try {
+            return fs.listStatus(listedDir);
+          } catch (FileNotFoundException e) {
+            return null;
+          }
+        }
+      });
+    }
+    int numCalls = numListingCalls;
+    ListingCache.Listing listing = listingCache.get(fs.makeQualified(dir),
+        new ListingCache.Lister() {
+      @Override
+      public FileStatus[] list(Path qualifiedDir) throws IOException {
+        numListingCalls++;
+        try {
+          return fs.listStatus(qualifiedDir);
+        } catch (FileNotFoundException e) {
+          return null;
+        }
+      }
+    }, listedAfter);
+    if (numListingCalls == numCalls) {
+      metrics.incrementCachedListings();
+    }
+    return listing;
+  }
+
+  /**
+   * Get the minute directories in the hour directory of the passed time,
+   * indexed by minute.
+   *
+   * @return null if the hour directory does not exist
+   */
+  protected boolean[] getMinuteDirs(Date time) throws IOException {
+    ListingCache.Listing listing = listStatus(getHourDirPath(streamDir, time),
+        MINUTE_DIR_FILTER, 0);
+    minuteDirsTime = listing.getTime();
+    FileStatus[] dirs = listing.getFiles(MINUTE_DIR_FILTER);
+    if (dirs == null) {
+      return null;
+    }
+    boolean[] minutes = new boolean[60];
+    for (FileStatus dir : dirs) {
+      try {
+        int minute = Integer.parseInt(dir.getPath().getName());
+        if (minute >= 0 && minute < 60) {
+          minutes[minute] = true;
+        }
+      } catch (NumberFormatException e) {
+        LOG.debug("Ignoring " + dir.getPath() + " in hour directory");
+      }
+    }
+    return minutes;
+  }
+
+  /**
+   * Get the start of the minute of the passed time.
+   */
+  protected static Date getMinute(Date time) {
+    Calendar minute = Calendar.getInstance();
+    minute.setTime(time);
+    minute.set(Calendar.SECOND, 0);
+    minute.set(Calendar.MILLISECOND, 0);
+    return minute.getTime();
+  }
+
   protected abstract void buildListing(FileMap<T> fmap, PathFilter pathFilter)
       throws IOException;
 
+  /**
+   * New files of the stream go to the last minute listed, to a later minute
+   * of its hour or to the next minute.
+   */
+  @Override
+  protected List<Path> getWatchedPaths() {
+    if (listedUpTo == null) {
+      return super.getWatchedPaths();
+    }
+    List<Path> paths = new ArrayList<Path>();
+    paths.add(getMinuteDirPath(streamDir, listedUpTo));
+    paths.add(getHourDirPath(streamDir, listedUpTo));
+    paths.add(getMinuteDirPath(streamDir,
+        new Date(listedUpTo.getTime() + ONE_MINUTE_IN_MILLIS)));
+    return paths;
+  }
+
+  /**
+   * Get the time the minute directories got by the last call to
+   * {@link #getMinuteDirs(Date)} were listed at, in milliseconds.
+   */
+  protected long getMinuteDirsTime() {
+    return minuteDirsTime;
+  }
+
   protected void doRecursiveListing(Path dir, PathFilter pathFilter,
       FileMap<T> fmap) throws IOException {
-    FileStatus[] fileStatuses = fs.listStatus(dir, pathFilter);
+    doRecursiveListing(dir, pathFilter, fmap, 0);
+  }
+
+  /**
+   * List the files of the directory into the passed map.
+   *
+   * @param listedAfter Time in milliseconds the listings have to be made
+   *  after. A minute directory is only complete once the next minute
+   *  exists, so its listing has to be newer than the one which showed that
+   *  minute, or files added meanwhile would be missed.
+   */
+  protected void doRecursiveListing(Path dir, PathFilter pathFilter,
+      FileMap<T> fmap, long listedAfter) throws IOException {
+    FileStatus[] fileStatuses = listStatus(dir, pathFilter, listedAfter)
+        .getFiles(pathFilter);
     if (fileStatuses == null || fileStatuses.length == 0) {
       LOG.debug("No files in directory:" + dir);
     } else {
       for (FileStatus file : fileStatuses) {
         if (file.isDir()) {
-          doRecursiveListing(file.getPath(), pathFilter, fmap);
+          doRecursiveListing(file.getPath(), pathFilter, fmap, listedAfter);
         } else {
           fmap.addPath(file);
         }
@@ -114,41 +373,141 @@ public abstract class DatabusStreamReader<T extends StreamFile> extends
     }
     LOG.info("Opening file:" + getCurrentFile() + " NumLinesTobeSkipped when" +
         " opening:" + currentLineNum);
+    if (activePrefetcher != null && currentLineNum == 0) {
+      fileReader = activePrefetcher.take(getCurrentFile());
+      if (fileReader != null) {
+        if (activePrefetcher == backfiller) {
+          metrics.incrementBackfilledFiles();
+        } else {
+          metrics.incrementPrefetchedFiles();
+        }
+      }
+    }
     try {
-      FileStatus status = fs.getFileStatus(getCurrentFile());
-      if (status != null) {
-        currentFileSplit = new FileSplit(getCurrentFile(), 0L,
-            status.getLen(), new String[0]);
-        recordReader = input.getRecordReader(currentFileSplit, new JobConf(conf),
-            Reporter.NULL);
-        msgKey = recordReader.createKey();
-        msgValue = recordReader.createValue();
-        assert(msgValue instanceof Writable);
-        skipLines(currentLineNum);
-      } else {
-        LOG.info("CurrentFile:" + getCurrentFile() + " does not exist");        
+      if (fileReader == null) {
+        long offset = (currentLineNum > 0 && currentLineOffset > 0)
+            ? currentLineOffset : 0L;
+        fileReader = openFile(currentFile, offset);
+        long linesToSkip = currentLineNum;
+        if (fileReader.getStart() > 0) {
+          LOG.info("Seeking to offset:" + currentLineOffset);
+          linesToSkip = 0;
+        }
+        skipLines(linesToSkip);
       }
     } catch (FileNotFoundException fnfe) {
       LOG.info("CurrentFile:" + getCurrentFile() + " does not exist");
     }
+    seekable = fileReader != null && fileReader.isSeekable();
+    FilePrefetcher nextPrefetcher = isBehind() ? backfiller : prefetcher;
+    if (nextPrefetcher != activePrefetcher) {
+      if (activePrefetcher != null) {
+        activePrefetcher.clear();
+      }
+      if (nextPrefetcher == backfiller) {
+        LOG.info("Backfilling from " + getCurrentFile());
+      } else if (activePrefetcher == backfiller) {
+        LOG.info("Done backfilling at " + getCurrentFile());
+      }
+      activePrefetcher = nextPrefetcher;
+    }
+    if (activePrefetcher != null) {
+      activePrefetcher.prefetch(getHigherValues(currentFile,
+          activePrefetcher.getNumFiles()));
+    }
+  }
+
+  /**
+   * Whether the current file was written longer ago than the backfill lag.
+   */
+  private boolean isBehind() {
+    return backfiller != null && currentFile != null
+        && System.currentTimeMillis() - currentFile.getModificationTime()
+        > backfillLagMillis;
+  }
+
+  /**
+   * Open the listed file at the line starting at the passed offset, if lines
+   * of the file can be reached by their offset, or at its start otherwise.
+   * The length of the file is the listed one, so opening it is the only file
+   * system call.
+   *
+   * @throws FileNotFoundException if the file does not exist anymore
+   */
+  RecordFileReader openFile(FileStatus status, long offset)
+      throws IOException {
+    Path file = status.getPath();
+    boolean seekableFile = isSeekable(file);
+    long start = (seekableFile && offset <= status.getLen()) ? offset : 0L;
+    if (seekableFile && readValueBytes && mapLocalFiles && isLocal()) {
+      MappedLineReader mappedLines = MappedLineReader.open(
+          new File(file.toUri().getPath()), start);
+      if (mappedLines != null) {
+        metrics.incrementFileOpens();
+        return new RecordFileReader(file, mappedLines, start);
+      }
+    }
+    FileSplit split = new FileSplit(file, start, status.getLen() - start,
+        new String[0]);
+    RecordReader<Object, Object> recordReader = input.getRecordReader(split,
+        jobConf, Reporter.NULL);
+    metrics.incrementFileOpens();
+    return new RecordFileReader(file, recordReader, start, seekableFile,
+        readValueBytes);
   }
 
   protected synchronized void closeCurrentFile() throws IOException {
-    if (recordReader != null) {
-      recordReader.close();
-      recordReader = null;
+    if (fileReader != null) {
+      fileReader.close();
+      fileReader = null;
     }
-    currentFileSplit = null;
+  }
+
+  @Override
+  public void closeStream() throws IOException {
+    super.closeStream();
+    if (prefetcher != null) {
+      prefetcher.clear();
+    }
+    if (backfiller != null) {
+      backfiller.clear();
+    }
+    activePrefetcher = null;
+  }
+
+  @Override
+  public void close() throws IOException {
+    super.close();
+    if (prefetcher != null) {
+      prefetcher.close();
+    }
+    if (backfiller != null) {
+      backfiller.close();
+    }
+    activePrefetcher = null;
+  }
+
+  /**
+   * Lines of uncompressed text files can be read from any line start, which
+   * the line record reader reports as its position.
+   */
+  private boolean isSeekable(Path file) {
+    return TextInputFormat.class.isInstance(input)
+        && codecFactory.getCodec(file) == null;
+  }
+
+  @Override
+  public long getCurrentOffset() {
+    return seekable ? currentLineOffset : PartitionCheckpoint.UNKNOWN_OFFSET;
   }
 
   protected byte[] readRawLine() throws IOException {
-    if (recordReader != null) {
-      boolean ret = recordReader.next(msgKey, msgValue);
-      if (ret) {
-        baos.reset();
-        ((Writable)msgValue).write(new DataOutputStream(baos));
-        return baos.toByteArray();
+    if (fileReader != null) {
+      byte[] line = fileReader.readLine();
+      if (line != null && seekable) {
+        currentLineOffset = fileReader.getPosition();
       }
+      return line;
     }
     return null;
   }
@@ -167,6 +526,11 @@ public abstract class DatabusStreamReader<T extends StreamFile> extends
   public static Date getDateFromStreamDir(Path streamDir, Path dir) {
     String pathStr = dir.toString();
     int startIndex = streamDir.toString().length() + 1;
+    long minuteKey = MinuteFormat.parse(pathStr, startIndex,
+        File.separatorChar);
+    if (minuteKey != MinuteFormat.INVALID) {
+      return new Date(MinuteFormat.toMillis(minuteKey));
+    }
     String dirString = pathStr.substring(startIndex,
         startIndex + minDirFormatStr.length());
     try {
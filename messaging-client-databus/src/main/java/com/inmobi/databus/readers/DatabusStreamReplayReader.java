@@ -0,0 +1,251 @@
+package com.inmobi.databus.readers;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+
+import com.inmobi.databus.files.FileMap;
+import com.inmobi.databus.files.HadoopStreamFile;
+import com.inmobi.databus.files.StreamFile;
+import com.inmobi.databus.partition.PartitionCheckpoint;
+import com.inmobi.databus.partition.PartitionId;
+import com.inmobi.messaging.metrics.PartitionReaderStatsExposer;
+
+/**
+ * Reads a fixed set of files of a stream, in stream order, and stops at the
+ * end of the last one.
+ *
+ * Files which were partly read before start at their checkpointed position;
+ * the others are read from their start.
+ */
+public class DatabusStreamReplayReader
+    extends DatabusStreamReader<HadoopStreamFile> {
+
+  private static final Log LOG = LogFactory.getLog(
+      DatabusStreamReplayReader.class);
+
+  private static final PathFilter FILE_FILTER = new PathFilter() {
+    @Override
+    public boolean accept(Path path) {
+      return !path.getName().startsWith("_");
+    }
+  };
+
+  private final List<FileStatus> files;
+  private final Map<? extends StreamFile, PartitionCheckpoint> positions;
+  private boolean finished = false;
+
+  /**
+   * @param files Files to read
+   * @param positions Positions of the files which were partly read
+   */
+  public DatabusStreamReplayReader(PartitionId partitionId, FileSystem fs,
+      Path streamDir, String inputFormatClass, Configuration conf,
+      PartitionReaderStatsExposer metrics, List<FileStatus> files,
+      Map<? extends StreamFile, PartitionCheckpoint> positions)
+          throws IOException {
+    super(partitionId, fs, streamDir, inputFormatClass, conf, 0, metrics,
+        true);
+    this.files = files;
+    this.positions = positions;
+  }
+
+  /**
+   * List the files of the minute directories of the stream from
+   * <code>from</code> up to <code>to</code>, excluded, in stream order.
+   */
+  public static List<FileStatus> listFiles(FileSystem fs, Path streamDir,
+      Date from, Date to) throws IOException {
+    TreeMap<HadoopStreamFile, FileStatus> listed =
+        new TreeMap<HadoopStreamFile, FileStatus>();
+    Calendar hour = Calendar.getInstance();
+    hour.setTime(getMinute(from));
+    hour.set(Calendar.MINUTE, 0);
+    Calendar minute = Calendar.getInstance();
+    while (hour.getTime().before(to)) {
+      FileStatus[] minuteDirs = listStatus(fs, getHourDirPath(streamDir,
+          hour.getTime()));
+      if (minuteDirs != null) {
+        for (FileStatus dir : minuteDirs) {
+          String name = dir.getPath().getName();
+          if (!dir.isDir() || name.length() != 2
+              || !Character.isDigit(name.charAt(0))
+              || !Character.isDigit(name.charAt(1))) {
+            continue;
+          }
+          minute.setTime(hour.getTime());
+          minute.set(Calendar.MINUTE, Integer.parseInt(name));
+          if (!minute.getTime().before(from) && minute.getTime().before(to)) {
+            addFiles(fs, dir.getPath(), listed);
+          }
+        }
+      }
+      hour.add(Calendar.HOUR_OF_DAY, 1);
+    }
+    return new ArrayList<FileStatus>(listed.values());
+  }
+
+  private static void addFiles(FileSystem fs, Path dir,
+      Map<HadoopStreamFile, FileStatus> listed) throws IOException {
+    FileStatus[] fileStatuses = listStatus(fs, dir);
+    if (fileStatuses == null) {
+      return;
+    }
+    for (FileStatus file : fileStatuses) {
+      if (file.isDir()) {
+        addFiles(fs, file.getPath(), listed);
+      } else if (FILE_FILTER.accept(file.getPath())) {
+        listed.put(HadoopStreamFile.create(file), file);
+      }
+    }
+  }
+
+  private static FileStatus[] listStatus(FileSystem fs, Path dir)
+      throws IOException {
+    try {
+      return fs.listStatus(dir);
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+  }
+
+  @Override
+  protected void buildListing(FileMap<HadoopStreamFile> fmap,
+      PathFilter pathFilter) throws IOException {
+    for (FileStatus file : files) {
+      fmap.addPath(file);
+    }
+  }
+
+  /**
+   * Position the reader at the first file, and mark it as finished if there
+   * are no files.
+   */
+  @Override
+  public boolean initFromStart() throws IOException {
+    if (!super.initFromStart()) {
+      finished = true;
+      return false;
+    }
+    setPosition();
+    return true;
+  }
+
+  @Override
+  protected void resetCurrentFileSettings() {
+    super.resetCurrentFileSettings();
+    setPosition();
+  }
+
+  private void setPosition() {
+    if (currentFile == null) {
+      return;
+    }
+    PartitionCheckpoint position = positions.get(getCurrentStreamFile());
+    if (position != null) {
+      currentLineNum = position.getLineNum();
+      currentLineOffset = position.getOffset();
+    }
+  }
+
+  public boolean isFinished() {
+    return finished;
+  }
+
+  @Override
+  public void openStream() throws IOException {
+    if (!finished) {
+      super.openStream();
+    }
+  }
+
+  @Override
+  protected HadoopStreamFile getStreamFile(Date timestamp) {
+    return new HadoopStreamFile(getMinuteDirPath(streamDir, timestamp),
+        null, null);
+  }
+
+  @Override
+  protected HadoopStreamFile getStreamFile(FileStatus status) {
+    return HadoopStreamFile.create(status);
+  }
+
+  /**
+   * @return null once the last file is read
+   */
+  @Override
+  public byte[] readLine() throws IOException {
+    if (finished) {
+      return null;
+    }
+    byte[] line = readNextLine();
+    while (line == null) {
+      LOG.info("Read " + getCurrentFile() + " with lines:" + currentLineNum);
+      if (closed) {
+        LOG.info("Stream closed");
+        break;
+      }
+      if (!nextFile()) {
+        LOG.info("Replayed all the files");
+        finished = true;
+        break;
+      }
+      line = readNextLine();
+    }
+    return line;
+  }
+
+  @Override
+  protected FileMap<HadoopStreamFile> createFileMap() throws IOException {
+    return new FileMap<HadoopStreamFile>() {
+      @Override
+      protected void buildList() throws IOException {
+        buildListing(this, pathFilter);
+      }
+
+      @Override
+      protected TreeMap<HadoopStreamFile, FileStatus> createFilesMap() {
+        return new TreeMap<HadoopStreamFile, FileStatus>();
+      }
+
+      /**
+       * File names of a stream are unique, so the name, or the last
+       * component of a path, is looked up among the replayed files.
+       */
+      @Override
+      protected HadoopStreamFile getStreamFile(String fileName) {
+        String name = new Path(fileName).getName();
+        for (FileStatus file : DatabusStreamReplayReader.this.files) {
+          if (file.getPath().getName().equals(name)) {
+            return HadoopStreamFile.create(file);
+          }
+        }
+        throw new IllegalArgumentException("File " + fileName
+            + " is not replayed by " + partitionId);
+      }
+
+      @Override
+      protected HadoopStreamFile getStreamFile(FileStatus file) {
+        return HadoopStreamFile.create(file);
+      }
+
+      @Override
+      protected PathFilter createPathFilter() {
+        return FILE_FILTER;
+      }
+    };
+  }
+}
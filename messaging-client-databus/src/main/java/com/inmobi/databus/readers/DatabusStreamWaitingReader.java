@@ -39,21 +39,36 @@ public class DatabusStreamWaitingReader
       throws IOException {
     Calendar current = Calendar.getInstance();
     Date now = current.getTime();
-    current.setTime(buildTimestamp);
+    current.setTime(listFrom);
+    // a minute is listed once the next minute exists, so listing goes on
+    // from the minute after the last one listed
+    Date lastListed = null;
     boolean breakListing = false;
     while (current.getTime().before(now)) {
-      Path hhDir =  getHourDirPath(streamDir, current.getTime());
       int hour = current.get(Calendar.HOUR_OF_DAY);
-      if (fs.exists(hhDir)) {
+      boolean[] minuteDirs = getMinuteDirs(current.getTime());
+      if (minuteDirs != null) {
         while (current.getTime().before(now) && 
             hour  == current.get(Calendar.HOUR_OF_DAY)) {
           Path dir = getMinuteDirPath(streamDir, current.getTime());
+          int minute = current.get(Calendar.MINUTE);
+          // Move the current minute to next minute
           current.add(Calendar.MINUTE, 1);
-          if (fs.exists(dir)) {
-            // Move the current minute to next minute
-            Path nextMinDir = getMinuteDirPath(streamDir, current.getTime());
-            if (fs.exists(nextMinDir)) {
-              doRecursiveListing(dir, pathFilter, fmap);
+          if (minuteDirs[minute]) {
+            boolean nextMinExists;
+            // the minute has to be listed after the next minute was seen
+            long nextMinSeen;
+            if (minute < 59) {
+              nextMinExists = minuteDirs[minute + 1];
+              nextMinSeen = getMinuteDirsTime();
+            } else {
+              nextMinSeen = System.currentTimeMillis();
+              nextMinExists = exists(getMinuteDirPath(streamDir,
+                  current.getTime()));
+            }
+            if (nextMinExists) {
+              doRecursiveListing(dir, pathFilter, fmap, nextMinSeen);
+              lastListed = getMinute(current.getTime());
             } else {
               LOG.info("Reached end of file listing. Not looking at the last" +
                   " minute directory:" + dir);
@@ -64,7 +79,8 @@ public class DatabusStreamWaitingReader
         } 
       } else {
         // go to next hour
-        LOG.info("Hour directory " + hhDir + " does not exist");
+        LOG.info("Hour directory " + getHourDirPath(streamDir,
+            current.getTime()) + " does not exist");
         current.add(Calendar.HOUR_OF_DAY, 1);
         current.set(Calendar.MINUTE, 0);
       }
@@ -72,6 +88,11 @@ public class DatabusStreamWaitingReader
         break;
       }
     }
+    if (lastListed != null) {
+      listedUpTo = lastListed;
+    } else if (listedUpTo == null) {
+      listedUpTo = getMinute(listFrom);
+    }
   }
 
   @Override
@@ -102,6 +123,7 @@ public class DatabusStreamWaitingReader
       waitForFileCreate();
       build();
     }
+    newFileFound();
   }
 
   @Override
@@ -0,0 +1,215 @@
+package com.inmobi.databus.readers;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Opens the files following the current file of a {@link DatabusStreamReader}
+ * in the background, so that moving to the next file does not wait for the
+ * file system.
+ *
+ * Files are opened in order by a single thread of the prefetcher, which goes
+ * away when idle, or by a pool shared by the readers of a consumer when
+ * backfilling a stream. Optionally their first lines are read ahead, up to a
+ * number of lines per file, or as long as a budget of lines shared by the
+ * readers lasts. A file is handed over to the reader through
+ * {@link #take(Path)}, in the order of the stream whichever thread opened it;
+ * files which are not taken are closed when they are no longer ahead of the
+ * reader or when the prefetcher is cleared.
+ */
+class FilePrefetcher {
+  private static final Log LOG = LogFactory.getLog(FilePrefetcher.class);
+
+  private static final long IDLE_SECONDS = 60;
+
+  private final DatabusStreamReader<?> reader;
+  private final int numFiles;
+  private final int numLines;
+  private final Semaphore readAheadLines;
+  private final ExecutorService executor;
+  // whether the executor belongs to the prefetcher, rather than being shared
+  private final boolean ownExecutor;
+  // files being opened or opened, in the order they were asked for
+  private final Map<Path, Future<RecordFileReader>> files =
+      new LinkedHashMap<Path, Future<RecordFileReader>>();
+
+  /**
+   * Open files on a thread of the prefetcher.
+   *
+   * @param numLines Number of lines read ahead in each file
+   */
+  FilePrefetcher(DatabusStreamReader<?> reader, String name, int numFiles,
+      int numLines) {
+    this.reader = reader;
+    this.numFiles = numFiles;
+    this.numLines = numLines;
+    this.readAheadLines = null;
+    final String threadName = name + "-prefetcher";
+    ThreadPoolExecutor threadExecutor = new ThreadPoolExecutor(1, 1,
+        IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, threadName);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    threadExecutor.allowCoreThreadTimeOut(true);
+    this.executor = threadExecutor;
+    this.ownExecutor = true;
+  }
+
+  /**
+   * Open files on a pool shared with other readers, which is not shut down
+   * with the prefetcher.
+   *
+   * @param readAheadLines Lines which can be read ahead, shared with other
+   *  readers, none read ahead if null
+   */
+  FilePrefetcher(DatabusStreamReader<?> reader, ExecutorService pool,
+      int numFiles, Semaphore readAheadLines) {
+    this.reader = reader;
+    this.numFiles = numFiles;
+    this.numLines = 0;
+    this.readAheadLines = readAheadLines;
+    this.executor = pool;
+    this.ownExecutor = false;
+  }
+
+  int getNumFiles() {
+    return numFiles;
+  }
+
+  /**
+   * Open the passed files, which follow the current file of the reader.
+   * Files opened earlier which are not among them are closed.
+   */
+  synchronized void prefetch(List<FileStatus> nextFiles) {
+    Set<Path> paths = new HashSet<Path>();
+    for (FileStatus file : nextFiles) {
+      paths.add(file.getPath());
+    }
+    Iterator<Map.Entry<Path, Future<RecordFileReader>>> it =
+        files.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Path, Future<RecordFileReader>> entry = it.next();
+      if (!paths.contains(entry.getKey())) {
+        discard(entry.getValue());
+        it.remove();
+      }
+    }
+    for (final FileStatus file : nextFiles) {
+      Path path = file.getPath();
+      if (!files.containsKey(path)) {
+        files.put(path, executor.submit(new Callable<RecordFileReader>() {
+          @Override
+          public RecordFileReader call() throws IOException {
+            RecordFileReader fileReader = reader.openFile(file, 0);
+            if (fileReader != null && readAheadLines != null) {
+              fileReader.readAhead(readAheadLines);
+            } else if (fileReader != null && numLines > 0) {
+              fileReader.readAhead(numLines);
+            }
+            return fileReader;
+          }
+        }));
+      }
+    }
+  }
+
+  /**
+   * Take the opened file, waiting for it to be opened if needed.
+   *
+   * @return null if the file was not asked for or could not be opened
+   */
+  RecordFileReader take(Path file) {
+    Future<RecordFileReader> future;
+    synchronized (this) {
+      future = files.remove(file);
+    }
+    if (future == null) {
+      return null;
+    }
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      LOG.info("Could not open " + file + " ahead", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      discard(future);
+    }
+    return null;
+  }
+
+  /**
+   * Close all the files opened, or being opened.
+   */
+  synchronized void clear() {
+    for (Future<RecordFileReader> future : files.values()) {
+      discard(future);
+    }
+    files.clear();
+  }
+
+  synchronized void close() {
+    clear();
+    if (ownExecutor) {
+      executor.shutdown();
+    }
+  }
+
+  private void discard(final Future<RecordFileReader> future) {
+    if (future.cancel(false)) {
+      return;
+    }
+    Runnable closer = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          RecordFileReader fileReader = future.get();
+          if (fileReader != null) {
+            fileReader.close();
+          }
+        } catch (ExecutionException e) {
+          // nothing was opened
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } catch (IOException e) {
+          LOG.warn("Could not close prefetched file", e);
+        }
+      }
+    };
+    if (future.isDone()) {
+      closer.run();
+    } else {
+      // the file is being opened, close it once it is
+      try {
+        executor.execute(closer);
+      } catch (RejectedExecutionException e) {
+        // the shared pool is shut down, so wait for the file here
+        closer.run();
+      }
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package com.inmobi.databus.readers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads lines as raw bytes from a stream, keeping the byte offset of the next
+ * line in the file.
+ *
+ * Lines end with '\n', '\r' or "\r\n", which are not part of the line. The
+ * bytes are never decoded, and the read buffer is kept across files; it grows
+ * to hold the longest line seen.
+ *
+ * The last line of a file may not be terminated yet if the file is still
+ * being written. Such a line is returned only if partial lines are accepted,
+ * otherwise the scanner stays at the start of the line, so the file can be
+ * reopened at {@link #getPosition()} once the line is complete.
+ */
+class LineScanner {
+
+  static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  private InputStream in;
+  private byte[] buffer;
+  // buffered bytes not consumed yet are buffer[start, end)
+  private int start;
+  private int end;
+  // offset in the file of buffer[start]
+  private long position;
+
+  LineScanner() {
+    this(DEFAULT_BUFFER_SIZE);
+  }
+
+  LineScanner(int bufferSize) {
+    buffer = new byte[bufferSize];
+  }
+
+  /**
+   * Start reading lines from the stream, positioned at the passed offset of
+   * its file.
+   */
+  void reset(InputStream in, long position) {
+    this.in = in;
+    this.position = position;
+    start = 0;
+    end = 0;
+  }
+
+  /**
+   * Get the offset in the file of the next line.
+   */
+  long getPosition() {
+    return position;
+  }
+
+  /**
+   * Read the next line.
+   *
+   * @param acceptPartial whether a last line without line terminator is
+   *  returned
+   * @return the line, null at the end of the stream
+   */
+  byte[] readLine(boolean acceptPartial) throws IOException {
+    // bytes after start known not to end the line
+    int scanned = 0;
+    while (true) {
+      int i = start + scanned;
+      while (i < end && buffer[i] != '\n' && buffer[i] != '\r') {
+        i++;
+      }
+      scanned = i - start;
+      if (i < end) {
+        if (buffer[i] == '\n') {
+          return consume(scanned, 1);
+        }
+        if (i + 1 < end) {
+          return consume(scanned, buffer[i + 1] == '\n' ? 2 : 1);
+        }
+        // '\r' is the last byte read, the next one tells if it is "\r\n"
+      }
+      if (fill() < 0) {
+        if (i < end) {
+          return acceptPartial ? consume(scanned, 1) : null;
+        }
+        if (scanned == 0 || !acceptPartial) {
+          return null;
+        }
+        return consume(scanned, 0);
+      }
+    }
+  }
+
+  private byte[] consume(int length, int terminatorLength) {
+    byte[] line = Arrays.copyOfRange(buffer, start, start + length);
+    start += length + terminatorLength;
+    position += length + terminatorLength;
+    return line;
+  }
+
+  /**
+   * Read more bytes after the buffered ones, moving them to the start of the
+   * buffer first.
+   *
+   * @return the number of bytes read, -1 at the end of the stream
+   */
+  private int fill() throws IOException {
+    if (start > 0) {
+      System.arraycopy(buffer, start, buffer, 0, end - start);
+      end -= start;
+      start = 0;
+    }
+    if (end == buffer.length) {
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+    int read = in.read(buffer, end, buffer.length - end);
+    if (read > 0) {
+      end += read;
+    }
+    return read;
+  }
+}
@@ -0,0 +1,145 @@
+package com.inmobi.databus.readers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+
+/**
+ * Listings of directories shared by the readers of a consumer, so that
+ * readers polling the same directories list each of them once per time to
+ * live.
+ *
+ * A directory is listed by the first reader missing it while the others
+ * asking for it wait for that listing, rather than listing it as well.
+ * Listings are timed when they start, and a reader can ask for a listing
+ * started after some time, for instance to make sure a minute directory was
+ * listed after the next minute was seen.
+ */
+public class ListingCache {
+
+  /**
+   * Lists a directory missing from the cache.
+   */
+  interface Lister {
+    /**
+     * @return the files of the directory, null if it does not exist
+     */
+    FileStatus[] list(Path dir) throws IOException;
+  }
+
+  // number of listings above which expired listings are dropped
+  private static final int PURGE_SIZE = 1000;
+
+  static class Listing {
+    // when the listing started
+    private final long time;
+    // null if the directory does not exist
+    private final FileStatus[] files;
+
+    private Listing(long time, FileStatus[] files) {
+      this.time = time;
+      this.files = files;
+    }
+
+    long getTime() {
+      return time;
+    }
+
+    /**
+     * @return the files accepted by the filter, null if the directory does
+     *  not exist
+     */
+    FileStatus[] getFiles(PathFilter pathFilter) {
+      if (files == null) {
+        return null;
+      }
+      List<FileStatus> accepted = new ArrayList<FileStatus>(files.length);
+      for (FileStatus file : files) {
+        if (pathFilter.accept(file.getPath())) {
+          accepted.add(file);
+        }
+      }
+      return accepted.toArray(new FileStatus[accepted.size()]);
+    }
+  }
+
+  // the lock of a directory is held while listing it
+  private static class Entry {
+    private volatile Listing listing;
+  }
+
+  private final long ttl;
+  private final Map<Path, Entry> entries = new HashMap<Path, Entry>();
+
+  /**
+   * @param ttl Time in milliseconds for which a listing is shared
+   */
+  public ListingCache(long ttl) {
+    this.ttl = ttl;
+  }
+
+  /**
+   * Get the listing of the directory made within the time to live, listing
+   * it with the passed lister if there is none. Waits for the listing of the
+   * directory being made by another reader, if any.
+   *
+   * @param listedAfter Time in milliseconds before which a listing is too
+   *  old, whatever the time to live
+   */
+  Listing get(Path dir, Lister lister, long listedAfter) throws IOException {
+    Entry entry = getEntry(dir);
+    synchronized (entry) {
+      Listing listing = entry.listing;
+      long now = System.currentTimeMillis();
+      if (listing == null || isExpired(listing, now)
+          || listing.time < listedAfter) {
+        FileStatus[] files = lister.list(dir);
+        listing = new Listing(now, files);
+        entry.listing = listing;
+      }
+      return listing;
+    }
+  }
+
+  /**
+   * List a directory without sharing the listing.
+   */
+  static Listing list(Path dir, Lister lister) throws IOException {
+    long now = System.currentTimeMillis();
+    return new Listing(now, lister.list(dir));
+  }
+
+  private synchronized Entry getEntry(Path dir) {
+    Entry entry = entries.get(dir);
+    if (entry == null) {
+      if (entries.size() >= PURGE_SIZE) {
+        purge(System.currentTimeMillis());
+      }
+      entry = new Entry();
+      entries.put(dir, entry);
+    }
+    return entry;
+  }
+
+  private void purge(long now) {
+    Iterator<Entry> it = entries.values().iterator();
+    while (it.hasNext()) {
+      Listing listing = it.next().listing;
+      // directories being listed for the first time are kept
+      if (listing != null && isExpired(listing, now)) {
+        it.remove();
+      }
+    }
+  }
+
+  private boolean isExpired(Listing listing, long now) {
+    return now - listing.time >= ttl;
+  }
+}
@@ -0,0 +1,48 @@
+package com.inmobi.databus.readers;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Waits for files and directories of the local file system to change.
+ *
+ * Changes are found by polling the modification time and length of the
+ * paths, which is much cheaper than listing the stream. A path which does
+ * not exist yet changes when it is created.
+ */
+class LocalFileWatcher {
+
+  static final long POLL_INTERVAL_MILLIS = 10;
+
+  /**
+   * Wait until one of the paths changes, or the timeout passes.
+   *
+   * @return true if a path changed, false if the timeout passed
+   */
+  static boolean waitForChange(List<Path> paths, long timeout)
+      throws InterruptedException {
+    File[] files = new File[paths.size()];
+    long[] modificationTimes = new long[files.length];
+    long[] lengths = new long[files.length];
+    for (int i = 0; i < files.length; i++) {
+      files[i] = new File(paths.get(i).toUri().getPath());
+      modificationTimes[i] = files[i].lastModified();
+      lengths[i] = files[i].length();
+    }
+    long deadline = System.currentTimeMillis() + timeout;
+    long remaining = timeout;
+    while (remaining > 0) {
+      Thread.sleep(Math.min(POLL_INTERVAL_MILLIS, remaining));
+      for (int i = 0; i < files.length; i++) {
+        if (files[i].lastModified() != modificationTimes[i]
+            || files[i].length() != lengths[i]) {
+          return true;
+        }
+      }
+      remaining = deadline - System.currentTimeMillis();
+    }
+    return false;
+  }
+}
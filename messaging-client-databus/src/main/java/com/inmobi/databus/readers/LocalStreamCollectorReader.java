@@ -46,25 +46,49 @@ public class LocalStreamCollectorReader extends
       throws IOException {
     Calendar current = Calendar.getInstance();
     Date now = current.getTime();
-    current.setTime(buildTimestamp);
+    current.setTime(listFrom);
+    // files can still be added to the last minute, so listing goes on from
+    // the last minute listed
+    Date lastListed = null;
+    // a minute is complete once a later one is seen, so it has to be listed
+    // after the listing which showed that minute
+    Path lastListedDir = null;
+    long lastListedAfter = 0;
     while (current.getTime().before(now)) {
-      Path hhDir =  getHourDirPath(streamDir, current.getTime());
       int hour = current.get(Calendar.HOUR_OF_DAY);
-      if (fs.exists(hhDir)) {
+      boolean[] minuteDirs = getMinuteDirs(current.getTime());
+      if (minuteDirs != null) {
+        long minuteDirsTime = getMinuteDirsTime();
         while (current.getTime().before(now) && 
             hour  == current.get(Calendar.HOUR_OF_DAY)) {
-          Path dir = getMinuteDirPath(streamDir, current.getTime());
+          int minute = current.get(Calendar.MINUTE);
+          if (minuteDirs[minute]) {
+            if (lastListedDir != null && lastListedAfter < minuteDirsTime) {
+              doRecursiveListing(lastListedDir, pathFilter, fmap,
+                  minuteDirsTime);
+            }
+            lastListed = getMinute(current.getTime());
+            lastListedDir = getMinuteDirPath(streamDir, current.getTime());
+            lastListedAfter = minuteDirsTime;
+            doRecursiveListing(lastListedDir, pathFilter, fmap,
+                minuteDirsTime);
+          }
           // Move the current minute to next minute
           current.add(Calendar.MINUTE, 1);
-          doRecursiveListing(dir, pathFilter, fmap);
         } 
       } else {
         // go to next hour
-        LOG.info("Hour directory " + hhDir + " does not exist");
+        LOG.info("Hour directory " + getHourDirPath(streamDir,
+            current.getTime()) + " does not exist");
         current.add(Calendar.HOUR_OF_DAY, 1);
         current.set(Calendar.MINUTE, 0);
       }
     }
+    if (lastListed != null) {
+      listedUpTo = lastListed;
+    } else if (listedUpTo == null) {
+      listedUpTo = getMinute(listFrom);
+    }
   }
 
   @Override
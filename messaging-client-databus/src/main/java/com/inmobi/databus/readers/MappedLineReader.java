@@ -0,0 +1,133 @@
+package com.inmobi.databus.readers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Reads the lines of a local file by scanning its memory mapped bytes, with
+ * the byte offset of the next line in the file.
+ *
+ * Lines end with '\n', '\r' or "\r\n", which are not part of the line, as
+ * for the lines of text input formats. The file is mapped as it is when
+ * opened, so it has to be complete. The mapping is released on close rather
+ * than when the buffer is garbage collected, so that mappings of files read
+ * earlier do not add up.
+ */
+class MappedLineReader {
+  private static final Log LOG = LogFactory.getLog(MappedLineReader.class);
+
+  private MappedByteBuffer buffer;
+  // offset of the next line
+  private int position;
+
+  private MappedLineReader(MappedByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  /**
+   * Map the file, positioned at the line starting at or after the passed
+   * offset.
+   *
+   * @return null if the file is too large to be mapped at once
+   */
+  static MappedLineReader open(File file, long start) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    MappedByteBuffer buffer;
+    try {
+      FileChannel channel = raf.getChannel();
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        return null;
+      }
+      // the mapping stays valid once the channel is closed
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    } finally {
+      raf.close();
+    }
+    MappedLineReader reader = new MappedLineReader(buffer);
+    if (start > 0 && start <= buffer.limit()) {
+      // skip the end of the line before the offset, which is only its
+      // terminator if the offset is at the start of a line
+      reader.position = (int) start - 1;
+      reader.readLine();
+    }
+    return reader;
+  }
+
+  synchronized long getPosition() {
+    return position;
+  }
+
+  /**
+   * Read the next line.
+   *
+   * @return the line, null at the end of the file or once closed
+   */
+  synchronized byte[] readLine() {
+    if (buffer == null) {
+      return null;
+    }
+    int limit = buffer.limit();
+    if (position >= limit) {
+      return null;
+    }
+    int i = position;
+    byte b = 0;
+    while (i < limit) {
+      b = buffer.get(i);
+      if (b == '\n' || b == '\r') {
+        break;
+      }
+      i++;
+    }
+    byte[] line = new byte[i - position];
+    buffer.position(position);
+    buffer.get(line);
+    if (i < limit) {
+      i++;
+      if (b == '\r' && i < limit && buffer.get(i) == '\n') {
+        i++;
+      }
+    }
+    position = i;
+    return line;
+  }
+
+  /**
+   * Unmap the file. Lines read before are copies, so they stay valid.
+   */
+  synchronized void close() {
+    if (buffer != null) {
+      unmap(buffer);
+      buffer = null;
+    }
+  }
+
+  /**
+   * Release the mapping through the cleaner of the buffer. If the JVM has no
+   * such cleaner, the mapping is released once the buffer is garbage
+   * collected.
+   */
+  private static void unmap(MappedByteBuffer buffer) {
+    try {
+      Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(buffer);
+      if (cleaner != null) {
+        Method cleanMethod = cleaner.getClass().getMethod("clean");
+        cleanMethod.setAccessible(true);
+        cleanMethod.invoke(cleaner);
+      }
+    } catch (Exception e) {
+      LOG.debug("Could not unmap the file, leaving it to the garbage"
+          + " collector", e);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.inmobi.databus.readers;
+
+/**
+ * Waits between polls for new data, doubling from the initial wait while
+ * nothing is found, up to a maximum.
+ */
+class PollBackoff {
+
+  private final long initialWait;
+  private long maxWait;
+  private long nextWait;
+  // start of the first wait since data was last found, -1 if none
+  private long idleSince = -1;
+
+  PollBackoff(long initialWait) {
+    this.initialWait = initialWait;
+    this.maxWait = initialWait;
+    this.nextWait = initialWait;
+  }
+
+  /**
+   * @param maxWait Longest wait, no backoff if not above the initial wait
+   */
+  void setMaxWait(long maxWait) {
+    this.maxWait = Math.max(maxWait, initialWait);
+    this.nextWait = initialWait;
+  }
+
+  /**
+   * @return the time to wait before the next poll
+   */
+  long nextWait() {
+    if (idleSince < 0) {
+      idleSince = System.currentTimeMillis();
+    }
+    long wait = nextWait;
+    nextWait = Math.min(2 * nextWait, maxWait);
+    return wait;
+  }
+
+  /**
+   * New data was found; the next wait is the initial wait again.
+   *
+   * @return the time since the first wait for the data, -1 if there was no
+   *  wait
+   */
+  long found() {
+    nextWait = initialWait;
+    if (idleSince < 0) {
+      return -1;
+    }
+    long idle = System.currentTimeMillis() - idleSince;
+    idleSince = -1;
+    return idle;
+  }
+}
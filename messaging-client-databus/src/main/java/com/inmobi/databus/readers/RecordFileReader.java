@@ -0,0 +1,218 @@
+package com.inmobi.databus.readers;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.Semaphore;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.RecordReader;
+
+/**
+ * Lines of a file opened through an input format, or of a local text file
+ * mapped in memory.
+ *
+ * A line is the value of a record, serialized or, if the value bytes are
+ * read, the bytes it holds. Lines of a mapped file are the bytes of its text
+ * lines, which are the bytes held by the values of a text input format.
+ * Lines can be read ahead, by another thread than
+ * the one reading them afterwards as long as the file is handed over safely.
+ */
+class RecordFileReader {
+
+  private final Path file;
+  // either the record reader or the mapped lines are set
+  private final RecordReader<Object, Object> recordReader;
+  private final MappedLineReader mappedLines;
+  private final Object key;
+  private final Object value;
+  private final long start;
+  private final boolean seekable;
+  private final boolean readValueBytes;
+  // offset following the last line read, if the file is seekable
+  private long position;
+  private final DataOutputBuffer valueBuffer = new DataOutputBuffer();
+  private DataInputBuffer valueInput;
+  private Text valueText;
+  // lines read ahead, and the offsets following them
+  private final Queue<byte[]> readAheadLines = new ArrayDeque<byte[]>();
+  private final Queue<Long> readAheadPositions = new ArrayDeque<Long>();
+  // permits held by the lines read ahead, if they were read against permits
+  private Semaphore readAheadPermits;
+
+  RecordFileReader(Path file, RecordReader<Object, Object> recordReader,
+      long start, boolean seekable, boolean readValueBytes) {
+    this.file = file;
+    this.recordReader = recordReader;
+    this.mappedLines = null;
+    this.key = recordReader.createKey();
+    this.value = recordReader.createValue();
+    assert(value instanceof Writable);
+    this.start = start;
+    this.seekable = seekable;
+    this.readValueBytes = readValueBytes;
+    this.position = start;
+  }
+
+  RecordFileReader(Path file, MappedLineReader mappedLines, long start) {
+    this.file = file;
+    this.recordReader = null;
+    this.mappedLines = mappedLines;
+    this.key = null;
+    this.value = null;
+    this.start = start;
+    this.seekable = true;
+    this.readValueBytes = true;
+    this.position = mappedLines.getPosition();
+  }
+
+  Path getPath() {
+    return file;
+  }
+
+  /**
+   * Get the offset the file was opened at.
+   */
+  long getStart() {
+    return start;
+  }
+
+  /**
+   * Whether lines can be reached by their offset, in which case
+   * {@link #getPosition()} is the offset of the next line.
+   */
+  boolean isSeekable() {
+    return seekable;
+  }
+
+  long getPosition() {
+    return position;
+  }
+
+  /**
+   * Read the next line.
+   *
+   * @return the line, null at the end of the file
+   */
+  byte[] readLine() throws IOException {
+    if (!readAheadLines.isEmpty()) {
+      position = readAheadPositions.remove();
+      if (readAheadPermits != null) {
+        readAheadPermits.release();
+      }
+      return readAheadLines.remove();
+    }
+    return readRecord();
+  }
+
+  /**
+   * Read up to the passed number of lines ahead of the ones read.
+   *
+   * @return the number of lines read ahead
+   */
+  int readAhead(int numLines) throws IOException {
+    long lastPosition = position;
+    int numRead = 0;
+    while (numRead < numLines) {
+      byte[] line = readRecord();
+      if (line == null) {
+        break;
+      }
+      readAheadLines.add(line);
+      readAheadPositions.add(position);
+      numRead++;
+    }
+    position = lastPosition;
+    return numRead;
+  }
+
+  /**
+   * Read lines ahead of the ones read as long as there are permits, taking
+   * one for every line. The permits are given back as the lines are read, or
+   * when the file is closed.
+   *
+   * @return the number of lines read ahead
+   */
+  int readAhead(Semaphore permits) throws IOException {
+    readAheadPermits = permits;
+    long lastPosition = position;
+    int numRead = 0;
+    while (permits.tryAcquire()) {
+      byte[] line = readRecord();
+      if (line == null) {
+        permits.release();
+        break;
+      }
+      readAheadLines.add(line);
+      readAheadPositions.add(position);
+      numRead++;
+    }
+    position = lastPosition;
+    return numRead;
+  }
+
+  private byte[] readRecord() throws IOException {
+    if (mappedLines != null) {
+      byte[] line = mappedLines.readLine();
+      if (line != null) {
+        position = mappedLines.getPosition();
+      }
+      return line;
+    }
+    if (recordReader.next(key, value)) {
+      if (seekable) {
+        position = recordReader.getPos();
+      }
+      return getLine(value);
+    }
+    return null;
+  }
+
+  /**
+   * Get the line held by the value, copying its bytes once.
+   */
+  private byte[] getLine(Object value) throws IOException {
+    if (readValueBytes) {
+      if (value instanceof Text) {
+        Text text = (Text) value;
+        return Arrays.copyOf(text.getBytes(), text.getLength());
+      }
+      if (value instanceof BytesWritable) {
+        BytesWritable bytes = (BytesWritable) value;
+        return Arrays.copyOf(bytes.getBytes(), bytes.getLength());
+      }
+    }
+    valueBuffer.reset();
+    ((Writable) value).write(valueBuffer);
+    if (readValueBytes) {
+      // other values are read as text from their serialized form
+      if (valueInput == null) {
+        valueInput = new DataInputBuffer();
+        valueText = new Text();
+      }
+      valueInput.reset(valueBuffer.getData(), valueBuffer.getLength());
+      valueText.readFields(valueInput);
+      return Arrays.copyOf(valueText.getBytes(), valueText.getLength());
+    }
+    return Arrays.copyOf(valueBuffer.getData(), valueBuffer.getLength());
+  }
+
+  void close() throws IOException {
+    if (readAheadPermits != null) {
+      readAheadPermits.release(readAheadLines.size());
+    }
+    readAheadLines.clear();
+    readAheadPositions.clear();
+    if (mappedLines != null) {
+      mappedLines.close();
+    } else {
+      recordReader.close();
+    }
+  }
+}
@@ -1,7 +1,9 @@
 package com.inmobi.databus.readers;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -24,13 +26,18 @@ public abstract class StreamReader<T extends StreamFile> {
   protected PartitionId partitionId;
   protected FileStatus currentFile;
   protected long currentLineNum = 0;
+  // byte offset of the line following currentLineNum lines, if known
+  protected long currentLineOffset = 0;
   protected FileSystem fs;
   protected volatile boolean closed = false;
   protected boolean noNewFiles = false; // this is purely for tests
-  private long waitTimeForCreate;
+  private final PollBackoff createBackoff;
   protected Path streamDir;
   protected final PartitionReaderStatsExposer metrics;
   private FileMap<T> fileMap;
+  // stream file of the current file, built once per file
+  private FileStatus streamFileStatus;
+  private T currentStreamFile;
 
   protected StreamReader(PartitionId partitionId, FileSystem fs, 
       Path streamDir, long waitTimeForCreate,
@@ -39,12 +46,23 @@ public abstract class StreamReader<T extends StreamFile> {
     this.partitionId = partitionId;
     this.fs = fs;
     this.streamDir = streamDir;
-    this.waitTimeForCreate = waitTimeForCreate;
+    this.createBackoff = new PollBackoff(waitTimeForCreate);
     this.metrics = metrics;
     this.noNewFiles = noNewFiles;
     this.fileMap = createFileMap();
   }
 
+  /**
+   * Double the wait for new files, from the configured wait, while none is
+   * found.
+   *
+   * @param maxWaitTime Longest wait, no backoff if not above the configured
+   *  wait
+   */
+  public void setPollBackoff(long maxWaitTime) {
+    createBackoff.setMaxWait(maxWaitTime);
+  }
+
   public void openStream() throws IOException {
     openCurrentFile(false);
   }
@@ -64,6 +82,14 @@ public abstract class StreamReader<T extends StreamFile> {
     fileMap.build();
   }
 
+  /**
+   * Add the files listed from <code>listedFrom</code> to the files already
+   * listed, dropping the files before <code>first</code>.
+   */
+  protected void updateListing(T first, T listedFrom) throws IOException {
+    fileMap.update(first, listedFrom);
+  }
+
   protected boolean setIterator() {
     return fileMap.setIterator(currentFile);
   }
@@ -102,6 +128,7 @@ public abstract class StreamReader<T extends StreamFile> {
     currentFile = fileMap.getValue(checkpoint.getStreamFile());
     if (currentFile != null) {
       currentLineNum = checkpoint.getLineNum();
+      currentLineOffset = checkpoint.getOffset();
       LOG.debug("CurrentFile:" + getCurrentFile() + " currentLineNum:" + 
           currentLineNum);
       setIterator();
@@ -134,6 +161,10 @@ public abstract class StreamReader<T extends StreamFile> {
     return fileMap.getHigherValue(file);
   }
 
+  protected List<FileStatus> getHigherValues(FileStatus file, int numFiles) {
+    return fileMap.getHigherValues(file, numFiles);
+  }
+
   protected boolean setIteratorToFile(FileStatus file)
       throws IOException {
     if (file != null) {
@@ -161,13 +192,25 @@ public abstract class StreamReader<T extends StreamFile> {
     if (currentFile == null) {
       return null;
     }
-    return getStreamFile(currentFile);
+    if (currentFile != streamFileStatus) {
+      currentStreamFile = getStreamFile(currentFile);
+      streamFileStatus = currentFile;
+    }
+    return currentStreamFile;
   }
 
   public long getCurrentLineNum() {
     return currentLineNum;
   }
 
+  /**
+   * Get the byte offset of the next line in the current file. Readers which
+   * can not seek to a line return {@link PartitionCheckpoint#UNKNOWN_OFFSET}.
+   */
+  public long getCurrentOffset() {
+    return PartitionCheckpoint.UNKNOWN_OFFSET;
+  }
+
   protected abstract T getStreamFile(Date timestamp);
 
   protected abstract T getStreamFile(FileStatus status);
@@ -221,6 +264,7 @@ public abstract class StreamReader<T extends StreamFile> {
 
   protected void resetCurrentFileSettings() {
     currentLineNum = 0;
+    currentLineOffset = 0;
   }
 
   protected boolean nextFile() throws IOException {
@@ -259,6 +303,8 @@ public abstract class StreamReader<T extends StreamFile> {
       currentFile = fileMap.getValue(streamFileName);
       setIterator();
       this.currentLineNum = currentLineNum;
+      this.currentLineOffset = (currentLineNum == 0) ? 0
+          : PartitionCheckpoint.UNKNOWN_OFFSET;
       LOG.info("Set current file:" + getCurrentFile() +
           "currentLineNum:" + currentLineNum);
       return true;
@@ -294,11 +340,45 @@ public abstract class StreamReader<T extends StreamFile> {
     }
   }
 
+  /**
+   * Wait for new files in the stream. On the local file system the wait ends
+   * as soon as one of the watched paths changes.
+   */
   protected void waitForFileCreate() throws InterruptedException {
-    Thread.sleep(waitTimeForCreate);
+    long waitTime = createBackoff.nextWait();
+    if (isLocal()) {
+      LocalFileWatcher.waitForChange(getWatchedPaths(), waitTime);
+    } else {
+      Thread.sleep(waitTime);
+    }
     metrics.incrementWaitTimeUnitsNewFile();
   }
 
+  /**
+   * A new file was found; the next wait for new files is the configured wait
+   * again.
+   */
+  protected void newFileFound() {
+    long waited = createBackoff.found();
+    if (waited >= 0 && !closed) {
+      metrics.addDiscovery(waited);
+    }
+  }
+
+  /**
+   * Whether the stream is on the local file system.
+   */
+  protected boolean isLocal() {
+    return "file".equals(fs.getUri().getScheme());
+  }
+
+  /**
+   * @return the paths which change when a new file is added to the stream
+   */
+  protected List<Path> getWatchedPaths() {
+    return Collections.singletonList(streamDir);
+  }
+
   private void waitForNextFileCreation() throws IOException,
       InterruptedException {
     while (!closed && !initFromStart()) {
@@ -306,6 +386,7 @@ public abstract class StreamReader<T extends StreamFile> {
       waitForFileCreate();
       build();
     }
+    newFileFound();
   }
 
   private void waitForNextFileCreation(Date timestamp) throws IOException,
@@ -315,6 +396,7 @@ public abstract class StreamReader<T extends StreamFile> {
       waitForFileCreate();
       build();
     }
+    newFileFound();
   }
 
   protected boolean isBeforeStream(T streamFile) {
@@ -2,26 +2,39 @@ package com.inmobi.messaging.consumer.databus;
 
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.security.UserGroupInformation;
 
 import com.inmobi.databus.CheckpointProvider;
+import com.inmobi.databus.files.StreamFile;
 import com.inmobi.databus.partition.PartitionCheckpoint;
 import com.inmobi.databus.partition.PartitionId;
 import com.inmobi.databus.partition.PartitionReader;
+import com.inmobi.databus.partition.ReadCredits;
+import com.inmobi.databus.readers.ListingCache;
 import com.inmobi.databus.utils.SecureLoginUtil;
 import com.inmobi.instrumentation.AbstractMessagingClientStatsExposer;
 import com.inmobi.messaging.ClientConfig;
 import com.inmobi.messaging.Message;
+import com.inmobi.messaging.MessagePool;
 import com.inmobi.messaging.consumer.AbstractMessageConsumer;
-import com.inmobi.messaging.consumer.BaseMessageConsumerStatsExposer;
+import com.inmobi.messaging.consumer.MessageHandler;
+import com.inmobi.messaging.metrics.DatabusConsumerStatsExposer;
 
 public abstract class AbstractMessagingDatabusConsumer 
     extends AbstractMessageConsumer 
@@ -29,18 +42,52 @@ public abstract class AbstractMessagingDatabusConsumer
   protected static final Log LOG = LogFactory.getLog(
       AbstractMessagingDatabusConsumer.class);
   protected static final long ONE_HOUR_IN_MILLIS = 1 * 60 * 60 * 1000;
+  private static final int MAX_DECODE_BATCHES_PER_THREAD = 2;
 
   protected BlockingQueue<QueueEntry> buffer;
+  // reused across batches, consumer calls are serialized
+  private final List<QueueEntry> drainedEntries = new ArrayList<QueueEntry>();
 
   protected final Map<PartitionId, PartitionReader> readers = 
       new HashMap<PartitionId, PartitionReader>();
 
   protected CheckpointProvider checkpointProvider;
   protected Checkpoint currentCheckpoint;
+  // position of every partition, indexed by partition ordinal; partition
+  // checkpoints are built from them only when the checkpoint is asked for
+  private PartitionId[] positionIds = new PartitionId[0];
+  private StreamFile[] positionFiles = new StreamFile[0];
+  private long[] positionLineNums = new long[0];
+  private long[] positionOffsets = new long[0];
+  private boolean[] positionUpdated = new boolean[0];
   protected long waitTimeForFileCreate;
   protected int bufferSize;
+  protected boolean partitionedBuffer;
   protected DataEncodingType dataEncodingType;
   protected int retentionInHours;
+  protected MessagePool messagePool;
+  protected boolean deferDecoding;
+  protected int decodeThreads;
+  protected int decodeBatchSize;
+  private ExecutorService decodePool;
+  protected int prefetchFiles;
+  protected int prefetchLines;
+  protected long backfillLag;
+  protected int backfillFiles;
+  protected int backfillThreads;
+  private ExecutorService backfillPool;
+  // lines read ahead of the readers while backfilling, at most a buffer
+  private Semaphore backfillLines;
+  protected long pollMaxWaitTime;
+  protected ListingCache listingCache;
+  protected boolean mapLocalFiles;
+  protected int handlerRetries;
+  protected MessageDispatcher dispatcher;
+  protected ReadCredits readCredits;
+  protected AsyncCheckpointer checkpointer;
+  // messages returned by the last call, committed from the next call on
+  private int numReturned = 0;
+  private boolean closed = false;
 
   @Override
   protected void init(ClientConfig config) throws IOException {
@@ -97,7 +144,9 @@ public abstract class AbstractMessagingDatabusConsumer
 
     //create buffer
     bufferSize = config.getInteger(queueSizeConfig, DEFAULT_QUEUE_SIZE);
-    buffer = new LinkedBlockingQueue<QueueEntry>(bufferSize);
+    partitionedBuffer = config.getBoolean(partitionedBufferConfig,
+        DEFAULT_PARTITIONED_BUFFER);
+    buffer = createBuffer();
 
     // initialize other common configuration
     waitTimeForFileCreate = config.getLong(waitTimeForFileCreateConfig,
@@ -105,38 +154,354 @@ public abstract class AbstractMessagingDatabusConsumer
     dataEncodingType = DataEncodingType.valueOf(
         config.getString(dataEncodingConfg, DEFAULT_DATA_ENCODING));
 
+    // base64 messages are decoded into pooled buffers only if asked for,
+    // since consumers have to release them
+    if (config.getBoolean(pooledBuffersConfig, DEFAULT_POOLED_BUFFERS)) {
+      messagePool = new MessagePool();
+    }
+    // base64 messages are decoded by the consuming threads if asked for
+    deferDecoding = config.getBoolean(deferDecodingConfig,
+        DEFAULT_DEFER_DECODING);
+    // messages of all the partitions are built by a shared pool if asked for
+    decodeThreads = config.getInteger(decodeThreadsConfig,
+        DEFAULT_DECODE_THREADS);
+    decodeBatchSize = config.getInteger(decodeBatchSizeConfig,
+        DEFAULT_DECODE_BATCH_SIZE);
+    prefetchFiles = config.getInteger(prefetchFilesConfig,
+        DEFAULT_PREFETCH_FILES);
+    prefetchLines = config.getInteger(prefetchLinesConfig,
+        DEFAULT_PREFETCH_LINES);
+    // streams far behind are read several files at a time
+    backfillLag = config.getLong(backfillLagConfig, DEFAULT_BACKFILL_LAG);
+    backfillFiles = config.getInteger(backfillFilesConfig,
+        DEFAULT_BACKFILL_FILES);
+    backfillThreads = config.getInteger(backfillThreadsConfig,
+        DEFAULT_BACKFILL_THREADS);
+    // idle streams are polled less and less often, and readers of the same
+    // directories share their listings, if asked for
+    pollMaxWaitTime = config.getLong(pollMaxWaitTimeConfig,
+        DEFAULT_POLL_MAX_WAIT_TIME);
+    long listingCacheTtl = config.getLong(listingCacheTtlConfig,
+        DEFAULT_LISTING_CACHE_TTL);
+    if (listingCacheTtl > 0) {
+      listingCache = new ListingCache(listingCacheTtl);
+    }
+    // files on the local file system are read from memory mappings, if
+    // asked for
+    mapLocalFiles = config.getBoolean(mapLocalFilesConfig,
+        DEFAULT_MAP_LOCAL_FILES);
+    handlerRetries = config.getInteger(handlerRetriesConfig,
+        DEFAULT_HANDLER_RETRIES);
+
     // get the retention period of the topic
     retentionInHours = config.getInteger(retentionConfig,
         DEFAULT_RETENTION_HOURS); 
 
+    // checkpoints are written in the background if auto commit is enabled
+    if (config.getBoolean(autoCommitConfig, DEFAULT_AUTO_COMMIT)) {
+      checkpointer = new AsyncCheckpointer(checkpointProvider,
+          getChkpointKey(),
+          config.getLong(autoCommitIntervalConfig,
+              DEFAULT_AUTO_COMMIT_INTERVAL),
+          config.getLong(autoCommitMessagesConfig,
+              DEFAULT_AUTO_COMMIT_MESSAGES),
+          (DatabusConsumerStatsExposer) getMetrics());
+      checkpointer.start(consumerName + "_" + topicName);
+    }
+
     LOG.debug("Using data encoding type as " + dataEncodingType);
   }
 
+  private BlockingQueue<QueueEntry> createBuffer() {
+    if (partitionedBuffer) {
+      return new PartitionedBuffer<QueueEntry>(bufferSize);
+    }
+    return new LinkedBlockingQueue<QueueEntry>(bufferSize);
+  }
+
+  /**
+   * Get the buffer the reader of the passed partition should write to.
+   */
+  protected BlockingQueue<QueueEntry> getBuffer(PartitionId id) {
+    if (partitionedBuffer) {
+      return ((PartitionedBuffer<QueueEntry>) buffer).addPartition();
+    }
+    return buffer;
+  }
+
   public Map<PartitionId, PartitionReader> getPartitionReaders() {
     return readers;
   }
 
-  public Checkpoint getCurrentCheckpoint() {
+  /**
+   * Get the pool backing the messages returned by this consumer, null if
+   * pooled buffers are not enabled.
+   */
+  public MessagePool getMessagePool() {
+    return messagePool;
+  }
+
+  /**
+   * Get the number of messages the registered handler is done with, whether
+   * it handled them successfully or not, 0 if no handler is registered. The
+   * checkpoint covers every message counted.
+   */
+  public synchronized long getNumMessagesHandled() {
+    return dispatcher == null ? 0 : dispatcher.getNumHandled();
+  }
+
+  public synchronized Checkpoint getCurrentCheckpoint() {
+    if (dispatcher != null) {
+      return dispatcher.getCompletedCheckpoint();
+    }
+    flushPositions();
     return currentCheckpoint;
   }
 
+  private void setPosition(QueueEntry entry) {
+    int ordinal = entry.getPartitionOrdinal();
+    if (ordinal >= 0) {
+      currentCheckpoint.fileFinished(entry);
+      positionFiles[ordinal] = entry.getStreamFile();
+      positionLineNums[ordinal] = entry.getLineNum();
+      positionOffsets[ordinal] = entry.getOffset();
+      positionUpdated[ordinal] = true;
+    } else {
+      currentCheckpoint.set(entry);
+    }
+  }
+
+  /**
+   * Submit a snapshot of the current checkpoint to the checkpointer if enough
+   * messages were consumed since the last one.
+   *
+   * Messages count as consumed once the application asks for more, so the
+   * messages being returned are never in the snapshot: their positions are
+   * set after it.
+   */
+  private void autoCommit(int numConsumed) {
+    if (checkpointer != null && checkpointer.onConsumed(numConsumed)) {
+      flushPositions();
+      checkpointer.submit(AsyncCheckpointer.snapshot(currentCheckpoint));
+    }
+  }
+
+  private void flushPositions() {
+    for (int i = 0; i < positionIds.length; i++) {
+      if (positionUpdated[i]) {
+        currentCheckpoint.set(positionIds[i], new PartitionCheckpoint(
+            positionFiles[i], positionLineNums[i], positionOffsets[i]));
+        positionUpdated[i] = false;
+      }
+    }
+  }
+
+  /**
+   * Push the messages of the stream to the passed handler instead of reading
+   * them through {@link #next()}.
+   * 
+   * Messages are handled by <code>concurrency</code> threads; messages of a
+   * partition are handled one at a time, in stream order. {@link #mark()}
+   * then checkpoints every partition up to the last message handled
+   * successfully.
+   * 
+   * A message the handler fails on is retried as many times as configured
+   * with {@link MessagingConsumerConfig#handlerRetriesConfig}. If it still
+   * fails, no more messages are pushed and {@link #mark()} throws, after
+   * checkpointing the messages handled before; {@link #reset()} starts over
+   * from the last checkpoint.
+   * 
+   * @param handler The {@link MessageHandler} to push the messages to
+   * @param concurrency The number of threads calling the handler
+   */
+  public synchronized void registerHandler(MessageHandler handler,
+      int concurrency) {
+    if (handler == null) {
+      throw new IllegalArgumentException("Handler cannot be null");
+    }
+    if (concurrency <= 0) {
+      throw new IllegalArgumentException("Concurrency should be positive");
+    }
+    if (dispatcher != null) {
+      throw new IllegalStateException("A handler is already registered");
+    }
+    flushPositions();
+    dispatcher = new MessageDispatcher(this, handler, concurrency, bufferSize,
+        handlerRetries, checkpointer);
+    dispatcher.start(currentCheckpoint);
+  }
+
+  /**
+   * Make the partition readers read only as many messages as credited
+   * through the returned {@link ReadCredits}. Messages already in the buffer
+   * are accounted as read ahead, so they are served before readers resume.
+   */
+  synchronized ReadCredits limitReadAhead() {
+    if (readCredits != null) {
+      throw new IllegalStateException("Read ahead is already limited");
+    }
+    readCredits = new ReadCredits(-buffer.size());
+    for (PartitionReader reader : readers.values()) {
+      reader.setReadCredits(readCredits);
+    }
+    return readCredits;
+  }
+
+  synchronized boolean isClosed() {
+    return closed;
+  }
+
+  QueueEntry pollEntry(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    return buffer.poll(timeout, unit);
+  }
+
+  private void checkNoHandler() {
+    if (dispatcher != null) {
+      throw new IllegalStateException("Messages are pushed to the registered"
+          + " handler, they cannot be read with next()");
+    }
+  }
+
+  /**
+   * Wait for the next entry of the buffer, committing the messages returned
+   * by earlier calls whenever the commit interval is due meanwhile.
+   *
+   * @param timeoutNanos Time to wait for, negative to wait until there is
+   *  an entry
+   * @return the entry, null if the timeout passed
+   */
+  private QueueEntry waitForEntry(long timeoutNanos)
+      throws InterruptedException {
+    // the messages returned by the last call are consumed
+    autoCommit(numReturned);
+    numReturned = 0;
+    long deadline = System.nanoTime() + timeoutNanos;
+    while (true) {
+      long waitNanos = (timeoutNanos < 0) ? Long.MAX_VALUE
+          : deadline - System.nanoTime();
+      if (checkpointer != null) {
+        waitNanos = Math.min(waitNanos, TimeUnit.MILLISECONDS.toNanos(
+            checkpointer.getMillisToSnapshot()));
+      }
+      QueueEntry entry;
+      if (waitNanos == Long.MAX_VALUE) {
+        entry = buffer.take();
+      } else {
+        entry = buffer.poll(Math.max(0, waitNanos), TimeUnit.NANOSECONDS);
+      }
+      if (entry != null) {
+        return entry;
+      }
+      // the interval can elapse while there are no messages
+      autoCommit(0);
+      if (timeoutNanos >= 0 && deadline - System.nanoTime() <= 0) {
+        return null;
+      }
+    }
+  }
+
   @Override
   protected Message getNext() throws InterruptedException {
-    QueueEntry entry;
-    entry = buffer.take();
-    currentCheckpoint.set(entry.getPartitionId(), entry.getPartitionChkpoint());
+    checkNoHandler();
+    QueueEntry entry = waitForEntry(-1);
+    setPosition(entry);
+    numReturned = 1;
+    return entry.getMessage();
+  }
+
+  @Override
+  protected Message getNext(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    checkNoHandler();
+    QueueEntry entry = waitForEntry(Math.max(0, unit.toNanos(timeout)));
+    if (entry == null) {
+      return null;
+    }
+    setPosition(entry);
+    numReturned = 1;
     return entry.getMessage();
   }
 
+  @Override
+  protected void getNextBatch(List<Message> batch, int maxMessages,
+      long timeout, TimeUnit unit) throws InterruptedException {
+    checkNoHandler();
+    QueueEntry first = waitForEntry(Math.max(0, unit.toNanos(timeout)));
+    if (first == null) {
+      return;
+    }
+    drainedEntries.add(first);
+    buffer.drainTo(drainedEntries, maxMessages - 1);
+    int numEntries = drainedEntries.size();
+    for (int i = 0; i < numEntries; i++) {
+      QueueEntry entry = drainedEntries.get(i);
+      batch.add(entry.getMessage());
+      setPosition(entry);
+    }
+    drainedEntries.clear();
+    numReturned = numEntries;
+  }
+
   protected synchronized void start() throws IOException {
+    closed = false;
     createPartitionReaders();
+    if (partitionedBuffer) {
+      ((PartitionedBuffer<QueueEntry>) buffer).allocate();
+    }
+    int numPartitions = readers.size();
+    positionIds = new PartitionId[numPartitions];
+    positionFiles = new StreamFile[numPartitions];
+    positionLineNums = new long[numPartitions];
+    positionOffsets = new long[numPartitions];
+    positionUpdated = new boolean[numPartitions];
+    if (decodeThreads > 0 && decodePool == null) {
+      decodePool = createPool("decoder", decodeThreads);
+    }
+    // the files of all the partitions are backfilled by a shared pool
+    if (backfillLag > 0 && backfillThreads > 0 && backfillPool == null) {
+      backfillPool = createPool("backfill", backfillThreads);
+      backfillLines = new Semaphore(bufferSize);
+    }
+    int ordinal = 0;
+    for (Map.Entry<PartitionId, PartitionReader> entry : readers.entrySet()) {
+      positionIds[ordinal] = entry.getKey();
+      entry.getValue().setPartitionOrdinal(ordinal);
+      ordinal++;
+    }
     for (PartitionReader reader : readers.values()) {
+      reader.setMessagePool(messagePool);
+      reader.setDeferDecoding(deferDecoding);
+      reader.setPrefetch(prefetchFiles, prefetchLines);
+      reader.setBackfill(backfillLag, backfillFiles, backfillPool,
+          backfillLines);
+      reader.setPolling(pollMaxWaitTime, listingCache);
+      reader.setMapLocalFiles(mapLocalFiles);
+      if (decodePool != null) {
+        reader.setDecodePool(decodePool, decodeBatchSize,
+            MAX_DECODE_BATCHES_PER_THREAD * decodeThreads);
+      }
+      reader.setReadCredits(readCredits);
       reader.start();
     }
   }
 
   protected abstract void createPartitionReaders() throws IOException;
 
+  private ExecutorService createPool(String role, int numThreads) {
+    final String name = consumerName + "_" + topicName + "-" + role + "-";
+    return Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+      private final AtomicInteger threadNum = new AtomicInteger(0);
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, name + threadNum.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
   protected Date getPartitionTimestamp(PartitionId id, PartitionCheckpoint pck,
       Date allowedStartTime) {
     Date partitionTimestamp = startTime;
@@ -165,32 +530,95 @@ public abstract class AbstractMessagingDatabusConsumer
   protected void doReset() throws IOException {
     // restart the service, consumer will start streaming from the last saved
     // checkpoint
-    close();
+    if (checkpointer != null) {
+      // positions after the last mark are not committed anymore
+      checkpointer.cancelPending();
+    }
+    numReturned = 0;
+    stopReading();
+    super.close();
     this.currentCheckpoint = new Checkpoint(
         checkpointProvider.read(getChkpointKey()));
     LOG.info("Resetting to checkpoint:" + currentCheckpoint);
     // reset to last marked position, ignore start time
     startTime = null;
-    buffer = new LinkedBlockingQueue<QueueEntry>(bufferSize);
+    buffer = createBuffer();
     start();
+    if (dispatcher != null) {
+      dispatcher.start(currentCheckpoint);
+    }
   }
 
   @Override
   protected void doMark() throws IOException {
-    checkpointProvider.checkpoint(getChkpointKey(),
-        currentCheckpoint.toBytes());
-    LOG.info("Committed checkpoint:" + currentCheckpoint);
+    Checkpoint checkpoint = getCurrentCheckpoint();
+    // the messages returned so far are covered
+    numReturned = 0;
+    if (checkpointer != null) {
+      // go through the checkpointer, so that an older snapshot cannot be
+      // written after this one
+      checkpointer.submit(AsyncCheckpointer.snapshot(checkpoint));
+      checkpointer.flush();
+    } else {
+      checkpointProvider.checkpoint(getChkpointKey(), checkpoint.toBytes());
+    }
+    LOG.info("Committed checkpoint:" + checkpoint);
+    if (dispatcher != null && dispatcher.getFailure() != null) {
+      throw new IOException("Handler failed, no more messages are pushed",
+          dispatcher.getFailure());
+    }
   }
 
   @Override
   public synchronized void close() {
+    if (checkpointer != null) {
+      // commit what is consumed so far before stopping
+      checkpointer.submit(AsyncCheckpointer.snapshot(getCurrentCheckpoint()));
+      try {
+        checkpointer.flush();
+      } catch (IOException e) {
+        LOG.warn("Could not commit checkpoint on close", e);
+      }
+      checkpointer.stop();
+    }
+    stopReading();
+    if (decodePool != null) {
+      decodePool.shutdown();
+      decodePool = null;
+    }
+    if (backfillPool != null) {
+      backfillPool.shutdown();
+      backfillPool = null;
+      backfillLines = null;
+    }
+    super.close();
+  }
+
+  private void stopReading() {
+    if (dispatcher != null) {
+      dispatcher.stop();
+    }
     for (PartitionReader reader : readers.values()) {
       reader.close();
       removeStatsExposer(reader.getStatsExposer());
     }
     readers.clear();
-    buffer.clear();
-    super.close();
+    int numCleared = clearBuffer();
+    if (readCredits != null) {
+      // the dropped messages are read again after a reset
+      readCredits.grant(numCleared);
+    }
+    closed = true;
+  }
+
+  private int clearBuffer() {
+    int numCleared = 0;
+    QueueEntry entry;
+    while ((entry = buffer.poll()) != null) {
+      entry.release();
+      numCleared++;
+    }
+    return numCleared;
   }
 
   @Override
@@ -200,6 +628,6 @@ public abstract class AbstractMessagingDatabusConsumer
 
   @Override
   protected AbstractMessagingClientStatsExposer getMetricsImpl() {
-    return new BaseMessageConsumerStatsExposer(topicName, consumerName);
+    return new DatabusConsumerStatsExposer(topicName, consumerName);
   }
 }
@@ -0,0 +1,255 @@
+package com.inmobi.messaging.consumer.databus;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.inmobi.databus.CheckpointProvider;
+import com.inmobi.messaging.metrics.DatabusConsumerStatsExposer;
+
+/**
+ * Persists checkpoints of a consumer from a background thread, so that
+ * consuming never waits on the checkpoint provider.
+ *
+ * The consumer reports consumed messages through {@link #onConsumed(int)},
+ * which tells when a snapshot is due, either after a number of messages or
+ * after an interval. A consumer waiting for messages wakes up once the
+ * interval is due, as told by {@link #getMillisToSnapshot()}. Snapshots are
+ * submitted to the writer thread; if one is still waiting when the next one
+ * comes, only the newest is written. A failed write is retried, unless a
+ * newer snapshot came meanwhile.
+ */
+class AsyncCheckpointer {
+  private static final Log LOG = LogFactory.getLog(AsyncCheckpointer.class);
+
+  private static final long RETRY_INTERVAL_MILLIS = 1000;
+  private static final long STOP_TIMEOUT_MILLIS = 10000;
+
+  private final CheckpointProvider checkpointProvider;
+  private final String checkpointKey;
+  private final long intervalMillis;
+  private final long intervalMessages;
+  private final DatabusConsumerStatsExposer metrics;
+
+  // guarded by this
+  private long numUnsubmitted = 0;
+  private long lastSubmitTime;
+  private Checkpoint pending;
+  private long pendingSeq = 0;
+  private long submittedSeq = 0;
+  private long persistedSeq = 0;
+  private long failedSeq = 0;
+  private Exception lastError;
+  private boolean writing = false;
+  private boolean stopped = false;
+  private Thread writerThread;
+
+  /**
+   * @param intervalMillis Time after which consumed messages are snapshotted
+   * @param intervalMessages Number of messages after which a snapshot is
+   *  taken; a non positive value snapshots on time only
+   */
+  AsyncCheckpointer(CheckpointProvider checkpointProvider,
+      String checkpointKey, long intervalMillis, long intervalMessages,
+      DatabusConsumerStatsExposer metrics) {
+    this.checkpointProvider = checkpointProvider;
+    this.checkpointKey = checkpointKey;
+    this.intervalMillis = intervalMillis;
+    this.intervalMessages = intervalMessages;
+    this.metrics = metrics;
+    this.lastSubmitTime = System.currentTimeMillis();
+  }
+
+  synchronized void start(String name) {
+    stopped = false;
+    writerThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        write();
+      }
+    }, name + "-checkpointer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Count consumed messages.
+   *
+   * @return true if a snapshot of the consumed position should be submitted
+   */
+  synchronized boolean onConsumed(int numMessages) {
+    if (numUnsubmitted == 0 && numMessages > 0) {
+      // oldest position not yet persisted, as far as lag is concerned
+      metrics.setOldestUnpersistedTime(System.currentTimeMillis());
+    }
+    numUnsubmitted += numMessages;
+    if (numUnsubmitted == 0) {
+      return false;
+    }
+    return (intervalMessages > 0 && numUnsubmitted >= intervalMessages)
+        || System.currentTimeMillis() - lastSubmitTime >= intervalMillis;
+  }
+
+  /**
+   * Get the time until a snapshot of the messages consumed so far is due,
+   * Long.MAX_VALUE if there are none.
+   */
+  synchronized long getMillisToSnapshot() {
+    if (numUnsubmitted == 0) {
+      return Long.MAX_VALUE;
+    }
+    return Math.max(0, intervalMillis
+        - (System.currentTimeMillis() - lastSubmitTime));
+  }
+
+  /**
+   * Submit a snapshot to be persisted. The snapshot must not be modified
+   * afterwards.
+   */
+  synchronized void submit(Checkpoint snapshot) {
+    if (pending != null) {
+      metrics.incrementCheckpointsCoalesced();
+    }
+    pending = snapshot;
+    pendingSeq = ++submittedSeq;
+    numUnsubmitted = 0;
+    lastSubmitTime = System.currentTimeMillis();
+    notifyAll();
+  }
+
+  /**
+   * Wait until the last submitted snapshot is persisted.
+   *
+   * @throws IOException if writing the snapshot failed
+   */
+  synchronized void flush() throws IOException {
+    long target = submittedSeq;
+    try {
+      while (persistedSeq < target) {
+        if (failedSeq >= target) {
+          throw new IOException("Could not write checkpoint", lastError);
+        }
+        if (stopped) {
+          throw new IOException("Checkpointer is stopped");
+        }
+        wait();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing checkpoint");
+    }
+  }
+
+  /**
+   * Drop the snapshot not written yet, and wait for the one being written.
+   * Messages counted so far are forgotten.
+   */
+  synchronized void cancelPending() {
+    pending = null;
+    numUnsubmitted = 0;
+    lastSubmitTime = System.currentTimeMillis();
+    while (writing) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    // a failed write could have put its snapshot back
+    pending = null;
+    metrics.setOldestUnpersistedTime(0);
+  }
+
+  /**
+   * Stop the writer thread once the snapshot being written, if any, is done.
+   * The snapshot not written yet is dropped.
+   */
+  void stop() {
+    Thread writer;
+    synchronized (this) {
+      stopped = true;
+      notifyAll();
+      writer = writerThread;
+      writerThread = null;
+    }
+    if (writer != null) {
+      // not interrupted, so that a write in progress is not torn
+      try {
+        writer.join(STOP_TIMEOUT_MILLIS);
+      } catch (InterruptedException e) {
+        LOG.warn("join on checkpointer thread interrupted", e);
+      }
+      if (writer.isAlive()) {
+        LOG.warn("Checkpointer thread did not finish in time");
+      }
+    }
+  }
+
+  private void write() {
+    while (true) {
+      Checkpoint snapshot;
+      long seq;
+      synchronized (this) {
+        while (pending == null && !stopped) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            LOG.info("Checkpointer interrupted. Exiting");
+            return;
+          }
+        }
+        if (stopped) {
+          return;
+        }
+        snapshot = pending;
+        seq = pendingSeq;
+        pending = null;
+        writing = true;
+      }
+      Exception error = null;
+      try {
+        checkpointProvider.checkpoint(checkpointKey, snapshot.toBytes());
+      } catch (Exception e) {
+        error = e;
+      }
+      synchronized (this) {
+        writing = false;
+        if (error == null) {
+          persistedSeq = seq;
+          metrics.incrementCheckpointsWritten();
+          if (pending == null && numUnsubmitted == 0) {
+            metrics.setOldestUnpersistedTime(0);
+          }
+          LOG.debug("Committed checkpoint:" + snapshot);
+        } else {
+          metrics.incrementCheckpointFailures();
+          failedSeq = seq;
+          lastError = error;
+          LOG.warn("Could not write checkpoint, retrying", error);
+          if (pending == null) {
+            pending = snapshot;
+            pendingSeq = seq;
+          }
+        }
+        notifyAll();
+        if (error != null && !stopped) {
+          try {
+            wait(RETRY_INTERVAL_MILLIS);
+          } catch (InterruptedException e) {
+            LOG.info("Checkpointer interrupted. Exiting");
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Copy a checkpoint which keeps being updated into a snapshot.
+   */
+  static Checkpoint snapshot(Checkpoint checkpoint) {
+    return new Checkpoint(checkpoint);
+  }
+}
@@ -20,12 +20,26 @@ import com.inmobi.databus.partition.PartitionId;
  * 
  * It holds checkpoint for all the partitions.
  *
+ * Partitions which read their files in any order relative to the other
+ * partitions, as replay readers do, need the files they finished on top of
+ * their current position, which the checkpoint keeps as the
+ * {@link ReplayProgress} of the consumer.
+ *
+ * The serialized form starts with the negated format version. Checkpoints
+ * written before the format was versioned start with the number of partitions
+ * instead, and are read as version 0.
  */
 public class Checkpoint implements Writable {
 
+  // version 1 adds the offset to partition checkpoints, version 2 the replay
+  // progress
+  static final int VERSION = 2;
+
   // map of partitionId to partition
   private Map<PartitionId, PartitionCheckpoint> partitionsChkPoint =
       new HashMap<PartitionId, PartitionCheckpoint>();
+  // null unless the consumer replays a range of the stream
+  private ReplayProgress replayProgress;
 
   public Checkpoint(byte[] bytes) throws IOException {
     readFields(new DataInputStream(new ByteArrayInputStream(bytes)));
@@ -42,30 +56,89 @@ public class Checkpoint implements Writable {
     this.partitionsChkPoint = partitionsChkPoint;
   }
 
+  /**
+   * Copy a checkpoint which keeps being updated. Partition checkpoints are
+   * immutable, so only the map and the replay progress are copied.
+   */
+  Checkpoint(Checkpoint checkpoint) {
+    this.partitionsChkPoint = new HashMap<PartitionId, PartitionCheckpoint>(
+        checkpoint.partitionsChkPoint);
+    if (checkpoint.replayProgress != null) {
+      this.replayProgress = new ReplayProgress(checkpoint.replayProgress);
+    }
+  }
+
   public Map<PartitionId, PartitionCheckpoint> getPartitionsCheckpoint() {
     return partitionsChkPoint;
   }
 
+  /**
+   * Get the progress of the replay, null if the consumer does not replay.
+   */
+  public ReplayProgress getReplayProgress() {
+    return replayProgress;
+  }
+
+  /**
+   * Set the progress of the replay, null once the consumer does not replay.
+   */
+  public void setReplayProgress(ReplayProgress replayProgress) {
+    this.replayProgress = replayProgress;
+  }
+
   void set(PartitionId partitionId, PartitionCheckpoint partCheckpoint) {
     partitionsChkPoint.put(partitionId, partCheckpoint);
   }
 
+  /**
+   * Set the position of the partition to the passed entry, and record its
+   * file as finished if the entry is the last one of the file.
+   */
+  void set(QueueEntry entry) {
+    set(entry.getPartitionId(), entry.getPartitionChkpoint());
+    fileFinished(entry);
+  }
+
+  /**
+   * Record the file of the entry as finished if the entry is its last one
+   * and the consumer replays.
+   */
+  void fileFinished(QueueEntry entry) {
+    if (replayProgress != null && entry.isLastInFile()) {
+      replayProgress.fileFinished(entry.getPartitionId().getCluster(),
+          entry.getStreamFile());
+    }
+  }
+
   @Override
   public void readFields(DataInput in) throws IOException {
+    int version = 0;
     int size = in.readInt();
+    if (size < 0) {
+      version = -size;
+      if (version > VERSION) {
+        throw new IOException("Unknown checkpoint version " + version);
+      }
+      size = in.readInt();
+    }
     for (int i = 0; i < size; i++) {
       PartitionId pid = new PartitionId(in);
       boolean valueNotNull = in.readBoolean();
       if (valueNotNull) {
-        partitionsChkPoint.put(pid, new PartitionCheckpoint(in));
+        partitionsChkPoint.put(pid, new PartitionCheckpoint(in, version >= 1));
       } else {
         partitionsChkPoint.put(pid, null);        
       }
     }
+    if (version >= 2 && in.readBoolean()) {
+      replayProgress = new ReplayProgress();
+      replayProgress.readFields(in);
+    }
   }
 
   @Override
   public void write(DataOutput out) throws IOException {
+    out.writeInt(-VERSION);
     out.writeInt(partitionsChkPoint.size());
     for (Map.Entry<PartitionId, PartitionCheckpoint> entry : partitionsChkPoint
         .entrySet()) {
@@ -77,6 +150,10 @@ public class Checkpoint implements Writable {
         entry.getValue().write(out);
       }
     }
+    out.writeBoolean(replayProgress != null);
+    if (replayProgress != null) {
+      replayProgress.write(out);
+    }
   }
 
   @Override
@@ -85,6 +162,8 @@ public class Checkpoint implements Writable {
     int result = 1;
     result = prime * result
         + ((partitionsChkPoint == null) ? 0 : partitionsChkPoint.hashCode());
+    result = prime * result
+        + ((replayProgress == null) ? 0 : replayProgress.hashCode());
     return result;
   }
 
@@ -102,6 +181,11 @@ public class Checkpoint implements Writable {
         return false;
     } else if (!partitionsChkPoint.equals(other.partitionsChkPoint))
       return false;
+    if (replayProgress == null) {
+      if (other.replayProgress != null)
+        return false;
+    } else if (!replayProgress.equals(other.replayProgress))
+      return false;
     return true;
   }
 
@@ -118,6 +202,9 @@ public class Checkpoint implements Writable {
       }
       buf.append(", ");
     }
+    if (replayProgress != null) {
+      buf.append(replayProgress.toString());
+    }
     return buf.toString();
   }
 }
@@ -54,7 +54,11 @@ import com.inmobi.messaging.metrics.PartitionReaderStatsExposer;
  * producer, consumer will wait for flush to happen on the file. The wait time
  * for flush is configurable via 
  * {@value DatabusConsumerConfig#waitTimeForFlushConfig}, and default
- * value is {@value DatabusConsumerConfig#DEFAULT_WAIT_TIME_FOR_FLUSH}
+ * value is {@value DatabusConsumerConfig#DEFAULT_WAIT_TIME_FOR_FLUSH}.
+ * The file is kept open while waiting, rather than reopened after every wait,
+ * if {@value DatabusConsumerConfig#tailCollectorFilesConfig} is true and the
+ * stream is on the local file system; HDFS streams do not see data synced
+ * after they were opened.
  *
  * Initializes partition readers for each active collector on the stream.
  * TODO: Dynamically detect if new collectors are added and start readers for
@@ -65,6 +69,7 @@ public class DatabusConsumer extends AbstractMessagingDatabusConsumer
   private static final Log LOG = LogFactory.getLog(DatabusConsumer.class);
 
   private long waitTimeForFlush;
+  private boolean tailCollectorFiles;
   private Path[] rootDirs;
   private StreamType streamType;
   private Configuration conf = new Configuration();
@@ -74,6 +79,8 @@ public class DatabusConsumer extends AbstractMessagingDatabusConsumer
     super.initializeConfig(config);
     waitTimeForFlush = config.getLong(waitTimeForFlushConfig,
         DEFAULT_WAIT_TIME_FOR_FLUSH);
+    tailCollectorFiles = config.getBoolean(tailCollectorFilesConfig,
+        DEFAULT_TAIL_COLLECTOR_FILES);
     dataEncodingType = DataEncodingType.valueOf(
         config.getString(dataEncodingConfg, DataEncodingType.BASE64.name()));
     String rootDirsStr = config.getString(databusRootDirsConfig);
@@ -119,6 +126,8 @@ public class DatabusConsumer extends AbstractMessagingDatabusConsumer
   }
 
   protected void createPartitionReaders() throws IOException {
+    // databus streams are not replayed, finished files are of no use
+    currentCheckpoint.setReplayProgress(null);
     Map<PartitionId, PartitionCheckpoint> partitionsChkPoints = 
         currentCheckpoint.getPartitionsCheckpoint();
     // calculate the allowed start time
@@ -146,13 +155,15 @@ public class DatabusConsumer extends AbstractMessagingDatabusConsumer
               CollectorReaderStatsExposer(topicName, consumerName,
                   id.toString());
           addStatsExposer(collectorMetrics);
-          readers.put(id, new PartitionReader(id,
+          PartitionReader reader = new PartitionReader(id,
               partitionsChkPoints.get(id), conf, fs,
               new Path(streamDir, collector), 
               DatabusUtil.getStreamDir(StreamType.LOCAL, rootDirs[i], topicName),
-              buffer, topicName, partitionTimestamp,
+              getBuffer(id), topicName, partitionTimestamp,
               waitTimeForFlush, waitTimeForFileCreate, dataEncodingType,
-              collectorMetrics));
+              collectorMetrics);
+          reader.setTailCollectorFiles(tailCollectorFiles);
+          readers.put(id, reader);
         }
       } else {
         LOG.info("Creating partition reader for cluster");
@@ -168,7 +179,7 @@ public class DatabusConsumer extends AbstractMessagingDatabusConsumer
                 id.toString());
         addStatsExposer(clusterMetrics);
         readers.put(id, new PartitionReader(id,
-            partitionsChkPoints.get(id), fs, buffer, streamDir, conf,
+            partitionsChkPoints.get(id), fs, getBuffer(id), streamDir, conf,
             TextInputFormat.class.getCanonicalName(), partitionTimestamp,
             waitTimeForFileCreate, true, dataEncodingType, clusterMetrics));              
       }
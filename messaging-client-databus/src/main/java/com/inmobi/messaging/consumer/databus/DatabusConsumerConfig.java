@@ -13,4 +13,8 @@ public interface DatabusConsumerConfig extends MessagingConsumerConfig {
   public static final String waitTimeForFlushConfig = 
   "databus.consumer.waittime.forcollectorflush";
   public static final long DEFAULT_WAIT_TIME_FOR_FLUSH = 5000; // 5 second
+
+  public static final String tailCollectorFilesConfig =
+      "databus.consumer.tail.collectorfiles";
+  public static final boolean DEFAULT_TAIL_COLLECTOR_FILES = false;
 }
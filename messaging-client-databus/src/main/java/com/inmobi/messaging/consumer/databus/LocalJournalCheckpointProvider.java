@@ -0,0 +1,252 @@
+package com.inmobi.messaging.consumer.databus;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.inmobi.databus.CheckpointProvider;
+
+/**
+ * {@link CheckpointProvider} keeping the checkpoints of every key in an
+ * append-only journal on the local file system.
+ *
+ * The journal of a key is a memory mapped file, <code>key.journal</code> in
+ * the checkpoint directory; a checkpoint is appended to it as a record
+ * protected by a CRC, without creating or renaming any file. When the mapped
+ * segment is full, the journal is compacted: a new journal holding only the
+ * latest checkpoint is written to a temporary file and renamed over the old
+ * one. Reading a journal returns its last valid record, so a record torn by a
+ * crash is skipped in favour of the one before it.
+ *
+ * Records are written to the page cache only, which survives a crash of the
+ * process but not of the host, unless the provider is created to sync every
+ * record. A key must be checkpointed by one consumer at a time.
+ */
+public class LocalJournalCheckpointProvider implements CheckpointProvider {
+  private static final Log LOG = LogFactory.getLog(
+      LocalJournalCheckpointProvider.class);
+
+  public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+  static final String JOURNAL_SUFFIX = ".journal";
+  private static final String TMP_SUFFIX = ".tmp";
+  // "CKJ1"
+  private static final int MAGIC = 0x434B4A31;
+  private static final int HEADER_SIZE = 4;
+  // length before and CRC after the checkpoint bytes
+  private static final int RECORD_OVERHEAD = 8;
+
+  private final File baseDir;
+  private final int segmentSize;
+  private final boolean syncRecords;
+  private final Map<String, Journal> journals = new HashMap<String, Journal>();
+
+  public LocalJournalCheckpointProvider(String dir) {
+    this(dir, DEFAULT_SEGMENT_SIZE, false);
+  }
+
+  /**
+   * @param dir Directory of the journals
+   * @param segmentSize Size of a journal before it is compacted
+   * @param syncRecords Whether every record is synced to disk before
+   *  {@link #checkpoint(String, byte[])} returns
+   */
+  public LocalJournalCheckpointProvider(String dir, int segmentSize,
+      boolean syncRecords) {
+    if (segmentSize <= HEADER_SIZE + RECORD_OVERHEAD) {
+      throw new IllegalArgumentException("Segment size is too small: "
+          + segmentSize);
+    }
+    this.baseDir = new File(dir);
+    this.segmentSize = segmentSize;
+    this.syncRecords = syncRecords;
+    if (!baseDir.isDirectory() && !baseDir.mkdirs()) {
+      throw new IllegalArgumentException("Could not create checkpoint"
+          + " directory " + baseDir);
+    }
+  }
+
+  @Override
+  public synchronized void checkpoint(String key, byte[] checkpoint) {
+    try {
+      getJournal(key).append(checkpoint);
+    } catch (IOException e) {
+      // opened again on the next call
+      journals.remove(key);
+      throw new RuntimeException("Could not write checkpoint for " + key, e);
+    }
+  }
+
+  @Override
+  public synchronized byte[] read(String key) {
+    try {
+      byte[] latest = getJournal(key).latest;
+      return latest == null ? null : latest.clone();
+    } catch (IOException e) {
+      throw new RuntimeException("Could not read checkpoint for " + key, e);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    for (Journal journal : journals.values()) {
+      try {
+        journal.close();
+      } catch (IOException e) {
+        LOG.warn("Could not close journal " + journal.file, e);
+      }
+    }
+    journals.clear();
+  }
+
+  private Journal getJournal(String key) throws IOException {
+    Journal journal = journals.get(key);
+    if (journal == null) {
+      journal = new Journal(new File(baseDir, key + JOURNAL_SUFFIX));
+      journals.put(key, journal);
+    }
+    return journal;
+  }
+
+  private static int crc(CRC32 crc, int length, byte[] bytes) {
+    crc.reset();
+    crc.update(length >>> 24);
+    crc.update(length >>> 16);
+    crc.update(length >>> 8);
+    crc.update(length);
+    crc.update(bytes, 0, bytes.length);
+    return (int) crc.getValue();
+  }
+
+  private class Journal {
+    private final File file;
+    private final CRC32 crc = new CRC32();
+    private RandomAccessFile raf;
+    private MappedByteBuffer buffer;
+    private byte[] latest;
+
+    Journal(File file) throws IOException {
+      this.file = file;
+      map(Math.max(segmentSize, file.length()));
+      int magic = buffer.getInt(0);
+      if (magic == MAGIC) {
+        recover();
+      } else if (magic != 0) {
+        close();
+        throw new IOException(file + " is not a checkpoint journal");
+      } else {
+        // new journal, or one whose header was never written
+        buffer.putInt(0, MAGIC);
+        buffer.position(HEADER_SIZE);
+      }
+    }
+
+    private void map(long size) throws IOException {
+      raf = new RandomAccessFile(file, "rw");
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * Find the last valid record and position the buffer after it, clearing
+     * what is left of a torn record.
+     */
+    private void recover() {
+      int pos = HEADER_SIZE;
+      int numRecords = 0;
+      while (pos + RECORD_OVERHEAD <= buffer.capacity()) {
+        int length = buffer.getInt(pos);
+        if (length < 0 || length > buffer.capacity() - pos - RECORD_OVERHEAD) {
+          break;
+        }
+        byte[] record = new byte[length];
+        buffer.position(pos + 4);
+        buffer.get(record);
+        if (buffer.getInt() != crc(crc, length, record)) {
+          break;
+        }
+        latest = record;
+        pos += RECORD_OVERHEAD + length;
+        numRecords++;
+      }
+      boolean torn = false;
+      for (int i = pos; i < buffer.capacity(); i++) {
+        if (buffer.get(i) != 0) {
+          buffer.put(i, (byte) 0);
+          torn = true;
+        }
+      }
+      if (torn) {
+        LOG.warn("Dropped a torn record at " + pos + " in " + file);
+      }
+      buffer.position(pos);
+      LOG.debug("Recovered " + numRecords + " records from " + file);
+    }
+
+    void append(byte[] checkpoint) throws IOException {
+      int recordSize = RECORD_OVERHEAD + checkpoint.length;
+      int checksum = crc(crc, checkpoint.length, checkpoint);
+      if (recordSize > buffer.remaining()) {
+        compact(checkpoint, checksum);
+      } else {
+        buffer.putInt(checkpoint.length);
+        buffer.put(checkpoint);
+        buffer.putInt(checksum);
+        if (syncRecords) {
+          buffer.force();
+        }
+      }
+      latest = checkpoint.clone();
+    }
+
+    /**
+     * Replace the journal by one holding only the passed checkpoint.
+     */
+    private void compact(byte[] checkpoint, int checksum) throws IOException {
+      long size = Math.max(segmentSize,
+          2L * (HEADER_SIZE + RECORD_OVERHEAD + checkpoint.length));
+      File tmp = new File(file.getPath() + TMP_SUFFIX);
+      RandomAccessFile tmpFile = new RandomAccessFile(tmp, "rw");
+      try {
+        tmpFile.setLength(0);
+        tmpFile.setLength(size);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + RECORD_OVERHEAD
+            + checkpoint.length);
+        record.putInt(MAGIC);
+        record.putInt(checkpoint.length);
+        record.put(checkpoint);
+        record.putInt(checksum);
+        record.flip();
+        FileChannel channel = tmpFile.getChannel();
+        while (record.hasRemaining()) {
+          channel.write(record);
+        }
+        channel.force(true);
+      } finally {
+        tmpFile.close();
+      }
+      close();
+      if (!tmp.renameTo(file)) {
+        // renaming over an existing file fails on some platforms
+        if (!file.delete() || !tmp.renameTo(file)) {
+          throw new IOException("Could not rename " + tmp + " to " + file);
+        }
+      }
+      map(size);
+      buffer.position(HEADER_SIZE + RECORD_OVERHEAD + checkpoint.length);
+      LOG.info("Compacted checkpoint journal " + file);
+    }
+
+    void close() throws IOException {
+      buffer.force();
+      raf.close();
+    }
+  }
+}
@@ -0,0 +1,277 @@
+package com.inmobi.messaging.consumer.databus;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.inmobi.databus.partition.PartitionId;
+import com.inmobi.messaging.Message;
+import com.inmobi.messaging.consumer.MessageHandler;
+
+/**
+ * Pushes the messages of a databus consumer to a {@link MessageHandler} from a
+ * pool of worker threads.
+ *
+ * Every partition has a lane, which is run by at most one worker at a time,
+ * so messages of a partition are handled one after the other in stream order
+ * while different partitions are handled in parallel. The completed
+ * checkpoint of a partition advances with every message handled
+ * successfully. A failed message is retried a few times; if it keeps failing,
+ * dispatching stops and the failure is kept for the consumer to report.
+ */
+class MessageDispatcher {
+  private static final Log LOG = LogFactory.getLog(MessageDispatcher.class);
+
+  private static final long POLL_INTERVAL_MILLIS = 100;
+  // messages handled per turn of a lane, before other lanes get the worker
+  private static final int MAX_MESSAGES_PER_TURN = 100;
+  private static final long RETRY_INTERVAL_MILLIS = 100;
+
+  private final AbstractMessagingDatabusConsumer consumer;
+  private final MessageHandler handler;
+  private final int concurrency;
+  private final int maxInFlight;
+  private final int maxRetries;
+  private final AsyncCheckpointer checkpointer;
+  private final AtomicLong numFailures = new AtomicLong(0);
+  private final AtomicLong numHandled = new AtomicLong(0);
+
+  // accessed only from the dispatcher thread
+  private final Map<PartitionId, Lane> lanes = new HashMap<PartitionId, Lane>();
+  private Checkpoint completedCheckpoint;
+  private Semaphore inFlight;
+  private ExecutorService workers;
+  private Thread dispatcherThread;
+  private volatile boolean stopped;
+  private volatile Exception failure;
+
+  MessageDispatcher(AbstractMessagingDatabusConsumer consumer,
+      MessageHandler handler, int concurrency, int maxInFlight, int maxRetries,
+      AsyncCheckpointer checkpointer) {
+    this.consumer = consumer;
+    this.handler = handler;
+    this.concurrency = concurrency;
+    this.maxInFlight = maxInFlight;
+    this.maxRetries = maxRetries;
+    this.checkpointer = checkpointer;
+  }
+
+  /**
+   * Start dispatching, with the completed checkpoint initialized to the passed
+   * one.
+   */
+  synchronized void start(Checkpoint checkpoint) {
+    completedCheckpoint = new Checkpoint(checkpoint);
+    lanes.clear();
+    inFlight = new Semaphore(maxInFlight);
+    stopped = false;
+    failure = null;
+    final String name = consumer.getConsumerName() + "_"
+        + consumer.getTopicName();
+    workers = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+      private final AtomicInteger threadNum = new AtomicInteger(0);
+
+      @Override
+      public Thread newThread(Runnable r) {
+        return new Thread(r, name + "-handler-" + threadNum.incrementAndGet());
+      }
+    });
+    dispatcherThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        dispatch();
+      }
+    }, name + "-dispatcher");
+    dispatcherThread.start();
+    LOG.info("Started dispatching to " + concurrency + " handler threads");
+  }
+
+  /**
+   * Stop dispatching. Messages which are not handled yet are dropped.
+   */
+  void stop() {
+    stopped = true;
+    if (dispatcherThread != null) {
+      dispatcherThread.interrupt();
+      try {
+        dispatcherThread.join();
+      } catch (InterruptedException e) {
+        LOG.warn("join on dispatcher thread interrupted", e);
+      }
+    }
+    if (workers != null) {
+      workers.shutdownNow();
+      try {
+        if (!workers.awaitTermination(POLL_INTERVAL_MILLIS * 10,
+            TimeUnit.MILLISECONDS)) {
+          LOG.warn("Handler threads did not finish in time");
+        }
+      } catch (InterruptedException e) {
+        LOG.warn("Waiting for handler threads interrupted", e);
+      }
+    }
+    for (Lane lane : lanes.values()) {
+      lane.drop();
+    }
+  }
+
+  /**
+   * Get a copy of the checkpoint up to which messages are handled.
+   */
+  synchronized Checkpoint getCompletedCheckpoint() {
+    return new Checkpoint(completedCheckpoint);
+  }
+
+  long getNumFailures() {
+    return numFailures.get();
+  }
+
+  /**
+   * Get the exception of the message which failed all its retries, null if
+   * none did. No more messages are dispatched after such a failure.
+   */
+  Exception getFailure() {
+    return failure;
+  }
+
+  /**
+   * Get the number of messages the handler is done with, successfully or
+   * not. The completed checkpoint already covers the successful ones.
+   */
+  long getNumHandled() {
+    return numHandled.get();
+  }
+
+  private synchronized void setCompleted(QueueEntry entry) {
+    completedCheckpoint.set(entry);
+    if (checkpointer != null && checkpointer.onConsumed(1)) {
+      checkpointer.submit(AsyncCheckpointer.snapshot(completedCheckpoint));
+    }
+  }
+
+  private void dispatch() {
+    try {
+      while (!stopped) {
+        // take the permit first, so that a polled entry is never left out
+        if (!inFlight.tryAcquire(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+          continue;
+        }
+        QueueEntry entry = consumer.pollEntry(POLL_INTERVAL_MILLIS,
+            TimeUnit.MILLISECONDS);
+        if (entry == null) {
+          inFlight.release();
+          continue;
+        }
+        Lane lane = lanes.get(entry.getPartitionId());
+        if (lane == null) {
+          lane = new Lane(entry.getPartitionId());
+          lanes.put(entry.getPartitionId(), lane);
+        }
+        lane.add(entry);
+      }
+    } catch (InterruptedException e) {
+      LOG.info("Dispatcher interrupted. Exiting");
+    } catch (RejectedExecutionException e) {
+      LOG.info("Handler threads are shut down. Exiting");
+    }
+  }
+
+  private class Lane implements Runnable {
+    private final PartitionId partitionId;
+    private final ConcurrentLinkedQueue<QueueEntry> entries =
+        new ConcurrentLinkedQueue<QueueEntry>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    Lane(PartitionId partitionId) {
+      this.partitionId = partitionId;
+    }
+
+    void add(QueueEntry entry) {
+      entries.add(entry);
+      if (scheduled.compareAndSet(false, true)) {
+        workers.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      QueueEntry entry;
+      int numHandled = 0;
+      while (numHandled < MAX_MESSAGES_PER_TURN && !stopped
+          && (entry = entries.poll()) != null) {
+        handle(entry);
+        numHandled++;
+      }
+      scheduled.set(false);
+      // an entry added after the last poll found the lane still scheduled
+      if (!stopped && !entries.isEmpty()
+          && scheduled.compareAndSet(false, true)) {
+        workers.execute(this);
+      }
+    }
+
+    private void handle(QueueEntry entry) {
+      Message msg = entry.getMessage();
+      try {
+        for (int attempt = 0; !stopped; attempt++) {
+          try {
+            handler.handle(msg);
+            setCompleted(entry);
+            return;
+          } catch (Exception e) {
+            numFailures.incrementAndGet();
+            if (attempt >= maxRetries) {
+              fail(e);
+              return;
+            }
+            LOG.warn("Handler failed for partition " + partitionId
+                + ", retrying", e);
+          }
+          try {
+            Thread.sleep(RETRY_INTERVAL_MILLIS);
+          } catch (InterruptedException e) {
+            // dispatching is being stopped
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+      } finally {
+        msg.release();
+        numHandled.incrementAndGet();
+        inFlight.release();
+      }
+    }
+
+    private void fail(Exception e) {
+      synchronized (MessageDispatcher.this) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+      stopped = true;
+      LOG.error("Handler failed for partition " + partitionId + " after "
+          + maxRetries + " retries, stopped dispatching. Its checkpoint stays"
+          + " at " + getCompletedCheckpoint().getPartitionsCheckpoint()
+          .get(partitionId), e);
+    }
+
+    void drop() {
+      QueueEntry entry;
+      while ((entry = entries.poll()) != null) {
+        entry.release();
+      }
+    }
+  }
+}
@@ -0,0 +1,181 @@
+package com.inmobi.messaging.consumer.databus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.inmobi.databus.partition.ReadCredits;
+import com.inmobi.messaging.Message;
+
+/**
+ * Reactive Streams {@link Publisher} of the messages of a databus consumer.
+ *
+ * Once subscribed, the partition readers of the consumer read only as many
+ * messages as the subscriber has requested, instead of filling the consumer
+ * buffer regardless of the downstream rate. Messages are delivered from a
+ * single thread through {@link AbstractMessagingDatabusConsumer#next(long,
+ * TimeUnit)}, so the current checkpoint of the consumer follows the delivered
+ * messages and {@link AbstractMessagingDatabusConsumer#mark()} can be called
+ * as usual. The consumer must not be read otherwise while subscribed.
+ *
+ * Only one subscriber is supported. The subscriber is completed when the
+ * consumer is closed, and gets an error if reading from the consumer fails.
+ */
+public class MessageStreamPublisher implements Publisher<Message> {
+  private static final Log LOG = LogFactory.getLog(
+      MessageStreamPublisher.class);
+
+  private static final long POLL_INTERVAL_MILLIS = 100;
+
+  private final AbstractMessagingDatabusConsumer consumer;
+  private final AtomicBoolean subscribed = new AtomicBoolean(false);
+
+  public MessageStreamPublisher(AbstractMessagingDatabusConsumer consumer) {
+    this.consumer = consumer;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super Message> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("Subscriber cannot be null");
+    }
+    if (!subscribed.compareAndSet(false, true)) {
+      rejectSubscriber(subscriber, new IllegalStateException(
+          "Publisher supports only one subscriber"));
+      return;
+    }
+    ReadCredits credits;
+    try {
+      credits = consumer.limitReadAhead();
+    } catch (IllegalStateException e) {
+      rejectSubscriber(subscriber, e);
+      return;
+    }
+    MessageSubscription subscription = new MessageSubscription(subscriber,
+        credits);
+    subscriber.onSubscribe(subscription);
+    subscription.start();
+  }
+
+  private static void rejectSubscriber(Subscriber<? super Message> subscriber,
+      Throwable cause) {
+    subscriber.onSubscribe(new Subscription() {
+      @Override
+      public void request(long n) {
+      }
+
+      @Override
+      public void cancel() {
+      }
+    });
+    subscriber.onError(cause);
+  }
+
+  private class MessageSubscription implements Subscription, Runnable {
+    private final Subscriber<? super Message> subscriber;
+    private final ReadCredits credits;
+    // guarded by this
+    private long demand = 0;
+    private Throwable pendingError;
+    private volatile boolean cancelled = false;
+
+    MessageSubscription(Subscriber<? super Message> subscriber,
+        ReadCredits credits) {
+      this.subscriber = subscriber;
+      this.credits = credits;
+    }
+
+    void start() {
+      Thread deliverer = new Thread(this, consumer.getConsumerName() + "_"
+          + consumer.getTopicName() + "-publisher");
+      deliverer.setDaemon(true);
+      deliverer.start();
+    }
+
+    @Override
+    public void request(long n) {
+      synchronized (this) {
+        if (n <= 0) {
+          if (pendingError == null) {
+            pendingError = new IllegalArgumentException(
+                "Requested number of messages should be positive, was " + n);
+          }
+        } else if (demand > Long.MAX_VALUE - n) {
+          demand = Long.MAX_VALUE;
+        } else {
+          demand += n;
+        }
+        notifyAll();
+      }
+      credits.grant(n);
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (!cancelled) {
+          Throwable error;
+          synchronized (this) {
+            while (demand == 0 && pendingError == null && !cancelled) {
+              wait();
+            }
+            error = pendingError;
+          }
+          if (error != null) {
+            cancelled = true;
+            subscriber.onError(error);
+            return;
+          }
+          if (cancelled) {
+            return;
+          }
+          Message msg = consumer.next(POLL_INTERVAL_MILLIS,
+              TimeUnit.MILLISECONDS);
+          if (msg == null) {
+            if (consumer.isClosed()) {
+              cancelled = true;
+              subscriber.onComplete();
+              return;
+            }
+            continue;
+          }
+          synchronized (this) {
+            if (demand != Long.MAX_VALUE) {
+              demand--;
+            }
+          }
+          // the message has moved the checkpoint, so it is delivered even if
+          // the subscription got cancelled meanwhile
+          try {
+            subscriber.onNext(msg);
+          } catch (Throwable t) {
+            LOG.warn("Subscriber failed on next message, cancelling the"
+                + " subscription", t);
+            cancelled = true;
+          }
+        }
+      } catch (InterruptedException e) {
+        LOG.info("Publisher interrupted. Exiting");
+        cancelled = true;
+        subscriber.onError(e);
+      } catch (RuntimeException e) {
+        LOG.warn("Error while reading from consumer", e);
+        cancelled = true;
+        subscriber.onError(e);
+      }
+    }
+  }
+}
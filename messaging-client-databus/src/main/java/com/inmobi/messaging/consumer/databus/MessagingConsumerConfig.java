@@ -43,4 +43,72 @@ public interface MessagingConsumerConfig {
 
   public static final String hadoopConfigFileKey =
       "messaging.consumer.hadoop.conf";
+
+  public static final String pooledBuffersConfig =
+      "messaging.consumer.pooled.buffers";
+  public static final boolean DEFAULT_POOLED_BUFFERS = false;
+
+  public static final String deferDecodingConfig =
+      "messaging.consumer.defer.decoding";
+  public static final boolean DEFAULT_DEFER_DECODING = false;
+
+  public static final String decodeThreadsConfig =
+      "messaging.consumer.decode.threads";
+  public static final int DEFAULT_DECODE_THREADS = 0;
+
+  public static final String decodeBatchSizeConfig =
+      "messaging.consumer.decode.batch.size";
+  public static final int DEFAULT_DECODE_BATCH_SIZE = 100;
+
+  public static final String prefetchFilesConfig =
+      "messaging.consumer.prefetch.files";
+  public static final int DEFAULT_PREFETCH_FILES = 0;
+
+  public static final String prefetchLinesConfig =
+      "messaging.consumer.prefetch.lines";
+  public static final int DEFAULT_PREFETCH_LINES = 0;
+
+  public static final String backfillLagConfig =
+      "messaging.consumer.backfill.lag.ms";
+  public static final long DEFAULT_BACKFILL_LAG = 0;
+
+  public static final String backfillFilesConfig =
+      "messaging.consumer.backfill.files";
+  public static final int DEFAULT_BACKFILL_FILES = 8;
+
+  public static final String backfillThreadsConfig =
+      "messaging.consumer.backfill.threads";
+  public static final int DEFAULT_BACKFILL_THREADS = 4;
+
+  public static final String pollMaxWaitTimeConfig =
+      "messaging.consumer.poll.max.waittime.ms";
+  public static final long DEFAULT_POLL_MAX_WAIT_TIME = 0;
+
+  public static final String listingCacheTtlConfig =
+      "messaging.consumer.listing.cache.ttl.ms";
+  public static final long DEFAULT_LISTING_CACHE_TTL = 0;
+
+  public static final String mapLocalFilesConfig =
+      "messaging.consumer.map.local.files";
+  public static final boolean DEFAULT_MAP_LOCAL_FILES = false;
+
+  public static final String partitionedBufferConfig =
+      "messaging.consumer.partitioned.buffer";
+  public static final boolean DEFAULT_PARTITIONED_BUFFER = false;
+
+  public static final String autoCommitConfig =
+      "messaging.consumer.autocommit";
+  public static final boolean DEFAULT_AUTO_COMMIT = false;
+
+  public static final String autoCommitIntervalConfig =
+      "messaging.consumer.autocommit.interval.ms";
+  public static final long DEFAULT_AUTO_COMMIT_INTERVAL = 60000; //1 minute
+
+  public static final String autoCommitMessagesConfig =
+      "messaging.consumer.autocommit.messages";
+  public static final long DEFAULT_AUTO_COMMIT_MESSAGES = 10000;
+
+  public static final String handlerRetriesConfig =
+      "messaging.consumer.handler.retries";
+  public static final int DEFAULT_HANDLER_RETRIES = 3;
 }
@@ -0,0 +1,268 @@
+package com.inmobi.messaging.consumer.databus;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Consumer buffer made of one {@link SpscRingBuffer} per partition reader,
+ * read as a single queue.
+ *
+ * Partition readers write to their own ring, obtained through
+ * {@link #addPartition()}, so they never contend with each other and a fast
+ * partition cannot take the buffer space of the others. Reads merge the
+ * rings round-robin, one message per ring in turn. Once all the partitions
+ * are added, {@link #allocate()} splits the capacity evenly across the rings;
+ * every ring gets at least one slot, so the buffer holds more messages than
+ * its capacity when there are more partitions than that.
+ *
+ * Messages can only be added through the rings, and iteration is not
+ * supported. Reads have to come from one thread at a time.
+ */
+class PartitionedBuffer<E> extends AbstractQueue<E>
+    implements BlockingQueue<E> {
+  private static final Log LOG = LogFactory.getLog(PartitionedBuffer.class);
+
+  private final int capacity;
+  private final List<SpscRingBuffer<E>> ringList =
+      new ArrayList<SpscRingBuffer<E>>();
+  private volatile SpscRingBuffer<E>[] rings;
+  // ring to read first on the next read
+  private int next = 0;
+  private volatile Thread waitingConsumer;
+
+  PartitionedBuffer(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Add the ring of a partition reader. All the partitions have to be added
+   * before the buffer is allocated.
+   */
+  synchronized BlockingQueue<E> addPartition() {
+    if (rings != null) {
+      throw new IllegalStateException("Buffer is already allocated");
+    }
+    SpscRingBuffer<E> ring = new SpscRingBuffer<E>(this);
+    ringList.add(ring);
+    return ring;
+  }
+
+  @SuppressWarnings("unchecked")
+  synchronized void allocate() {
+    if (rings != null) {
+      throw new IllegalStateException("Buffer is already allocated");
+    }
+    if (ringList.size() > capacity) {
+      LOG.warn("Buffer of " + capacity + " messages is shared by "
+          + ringList.size() + " partitions, it holds one message per"
+          + " partition");
+    }
+    if (!ringList.isEmpty()) {
+      int ringCapacity = Math.max(1, capacity / ringList.size());
+      for (SpscRingBuffer<E> ring : ringList) {
+        ring.allocate(ringCapacity);
+      }
+    }
+    rings = ringList.toArray(new SpscRingBuffer[ringList.size()]);
+  }
+
+  int getNumPartitions() {
+    return ringList.size();
+  }
+
+  void signalConsumer() {
+    Thread consumer = waitingConsumer;
+    if (consumer != null) {
+      LockSupport.unpark(consumer);
+    }
+  }
+
+  /**
+   * Wait for a message of the passed ring, or of any ring if null.
+   */
+  E waitFor(SpscRingBuffer<E> ring, long nanos) throws InterruptedException {
+    boolean timed = nanos != Long.MAX_VALUE;
+    long deadline = timed ? System.nanoTime() + nanos : 0;
+    while (true) {
+      E e = (ring == null) ? poll() : ring.poll();
+      if (e != null) {
+        return e;
+      }
+      long remaining = timed ? deadline - System.nanoTime() : Long.MAX_VALUE;
+      if (remaining <= 0) {
+        return null;
+      }
+      waitingConsumer = Thread.currentThread();
+      try {
+        // recheck after publishing the waiter, a producer could have added a
+        // message before seeing it
+        if ((ring == null) ? isEmpty() : ring.isEmpty()) {
+          if (timed) {
+            LockSupport.parkNanos(this, remaining);
+          } else {
+            LockSupport.park(this);
+          }
+        }
+      } finally {
+        waitingConsumer = null;
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+  }
+
+  @Override
+  public E poll() {
+    SpscRingBuffer<E>[] r = rings;
+    if (r == null) {
+      return null;
+    }
+    int n = r.length;
+    for (int i = 0; i < n; i++) {
+      int index = next + i;
+      if (index >= n) {
+        index -= n;
+      }
+      E e = r[index].poll();
+      if (e != null) {
+        next = (index + 1 == n) ? 0 : index + 1;
+        return e;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public E peek() {
+    SpscRingBuffer<E>[] r = rings;
+    if (r == null) {
+      return null;
+    }
+    int n = r.length;
+    for (int i = 0; i < n; i++) {
+      E e = r[(next + i) % n].peek();
+      if (e != null) {
+        return e;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public E take() throws InterruptedException {
+    return waitFor(null, Long.MAX_VALUE);
+  }
+
+  @Override
+  public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    return waitFor(null, unit.toNanos(timeout));
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Drain the rings in turn, taking a share of the remaining batch from each
+   * ring so that messages of a partition stay together.
+   */
+  @Override
+  public int drainTo(Collection<? super E> c, int maxElements) {
+    SpscRingBuffer<E>[] r = rings;
+    if (r == null) {
+      return 0;
+    }
+    int n = r.length;
+    int drained = 0;
+    boolean found = true;
+    while (drained < maxElements && found) {
+      found = false;
+      int share = Math.max(1, (maxElements - drained) / n);
+      for (int i = 0; i < n && drained < maxElements; i++) {
+        int index = next;
+        next = (index + 1 == n) ? 0 : index + 1;
+        int numDrained = r[index].drainTo(c,
+            Math.min(share, maxElements - drained));
+        if (numDrained > 0) {
+          drained += numDrained;
+          found = true;
+        }
+      }
+    }
+    return drained;
+  }
+
+  @Override
+  public int size() {
+    SpscRingBuffer<E>[] r = rings;
+    if (r == null) {
+      return 0;
+    }
+    int size = 0;
+    for (SpscRingBuffer<E> ring : r) {
+      size += ring.size();
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    SpscRingBuffer<E>[] r = rings;
+    if (r == null) {
+      return true;
+    }
+    for (SpscRingBuffer<E> ring : r) {
+      if (!ring.isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int remainingCapacity() {
+    SpscRingBuffer<E>[] r = rings;
+    if (r == null) {
+      return capacity;
+    }
+    int remaining = 0;
+    for (SpscRingBuffer<E> ring : r) {
+      remaining += ring.remainingCapacity();
+    }
+    return remaining;
+  }
+
+  @Override
+  public boolean offer(E e) {
+    throw new UnsupportedOperationException("Messages are added through the"
+        + " partition rings");
+  }
+
+  @Override
+  public void put(E e) {
+    throw new UnsupportedOperationException("Messages are added through the"
+        + " partition rings");
+  }
+
+  @Override
+  public boolean offer(E e, long timeout, TimeUnit unit) {
+    throw new UnsupportedOperationException("Messages are added through the"
+        + " partition rings");
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    throw new UnsupportedOperationException("Buffer is not iterable");
+  }
+}
@@ -1,31 +1,126 @@
 package com.inmobi.messaging.consumer.databus;
 
+import com.inmobi.databus.files.StreamFile;
 import com.inmobi.databus.partition.PartitionCheckpoint;
 import com.inmobi.databus.partition.PartitionId;
 import com.inmobi.messaging.Message;
+import com.inmobi.messaging.MessagePool;
+import com.inmobi.messaging.consumer.util.Base64Decoder;
 
+/**
+ * A message in the consumer buffer along with the position it was read at.
+ *
+ * The position is kept as the stream file, line number and offset; the
+ * {@link PartitionCheckpoint} is only built when asked for.
+ *
+ * An entry can also hold the base64 encoded message as read, which is then
+ * decoded by the first thread asking for the message.
+ */
 public class QueueEntry {
 
-  private final Message message;
+  private Message message;
+  private byte[] encodedData;
+  private MessagePool messagePool;
   private final PartitionId partitionId;
-  private final PartitionCheckpoint partitionChkpoint;
+  private final int partitionOrdinal;
+  private final StreamFile streamFile;
+  private final long lineNum;
+  private final long offset;
+  private boolean lastInFile = false;
 
   public QueueEntry(Message msg, PartitionId partitionId,
       PartitionCheckpoint partitionChkpoint) {
+    this(msg, partitionId, -1, partitionChkpoint.getStreamFile(),
+        partitionChkpoint.getLineNum(), partitionChkpoint.getOffset());
+  }
+
+  public QueueEntry(Message msg, PartitionId partitionId, int partitionOrdinal,
+      StreamFile streamFile, long lineNum, long offset) {
     this.message = msg;
     this.partitionId = partitionId;
-    this.partitionChkpoint = partitionChkpoint;
+    this.partitionOrdinal = partitionOrdinal;
+    this.streamFile = streamFile;
+    this.lineNum = lineNum;
+    this.offset = offset;
+  }
+
+  /**
+   * Create an entry of a base64 encoded message, decoded into a buffer of the
+   * passed pool, if any, when first asked for.
+   */
+  public QueueEntry(byte[] encodedData, MessagePool messagePool,
+      PartitionId partitionId, int partitionOrdinal, StreamFile streamFile,
+      long lineNum, long offset) {
+    this((Message) null, partitionId, partitionOrdinal, streamFile, lineNum,
+        offset);
+    this.encodedData = encodedData;
+    this.messagePool = messagePool;
   }
 
   public PartitionId getPartitionId() {
     return partitionId;
   }
 
+  /**
+   * Get the index of the partition among the readers of the consumer, -1 if
+   * the reader was not assigned one.
+   */
+  public int getPartitionOrdinal() {
+    return partitionOrdinal;
+  }
+
+  public StreamFile getStreamFile() {
+    return streamFile;
+  }
+
+  public long getLineNum() {
+    return lineNum;
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * Whether the entry is the last one of its file. Only replay readers mark
+   * the last entries of their files.
+   */
+  public boolean isLastInFile() {
+    return lastInFile;
+  }
+
+  /**
+   * Mark the entry as the last one of its file, before it is added to the
+   * buffer.
+   */
+  public void setLastInFile(boolean lastInFile) {
+    this.lastInFile = lastInFile;
+  }
+
   public PartitionCheckpoint getPartitionChkpoint() {
-    return partitionChkpoint;
+    return new PartitionCheckpoint(streamFile, lineNum, offset);
   }
 
-  public Message getMessage() {
+  public synchronized Message getMessage() {
+    if (encodedData != null) {
+      message = Base64Decoder.decode(encodedData, messagePool);
+      encodedData = null;
+      messagePool = null;
+    }
     return message;
   }
+
+  /**
+   * Release the message of an entry which is dropped. A message which was
+   * never asked for is dropped without being decoded, since it holds no
+   * pooled buffer yet.
+   */
+  public synchronized void release() {
+    if (encodedData != null) {
+      encodedData = null;
+      messagePool = null;
+    } else if (message != null) {
+      message.release();
+    }
+  }
 }
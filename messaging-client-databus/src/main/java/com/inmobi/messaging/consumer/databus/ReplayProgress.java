@@ -0,0 +1,277 @@
+package com.inmobi.messaging.consumer.databus;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.io.Writable;
+
+import com.inmobi.databus.files.StreamFile;
+
+/**
+ * Progress of a consumer replaying the files of a fixed time range with
+ * several readers.
+ *
+ * Readers finish their files in any order relative to each other, and a file
+ * can go to another reader when the consumer restarts, so the files done
+ * with are recorded as they finish. For each cluster, every file of the
+ * listing up to a watermark is finished, and only the files finished after
+ * it are kept. The watermark moves once the files of the listing are
+ * finished in order, so the kept files are the ones finished ahead of the
+ * slowest reader.
+ *
+ * The watermark only moves while the files of the cluster are set; a file
+ * showing up in the range later is taken as finished if it is before the
+ * watermark.
+ */
+public class ReplayProgress implements Writable {
+
+  private static class ClusterProgress {
+    // every file of the listing up to this one is finished, null if none
+    private StreamFile finishedUpTo;
+    // files finished after finishedUpTo
+    private final Set<StreamFile> finishedFiles = new HashSet<StreamFile>();
+    // files of the range in stream order, and the index of the first one
+    // after finishedUpTo; not serialized
+    private List<? extends StreamFile> files;
+    private int next;
+
+    ClusterProgress() {
+    }
+
+    ClusterProgress(ClusterProgress progress) {
+      finishedUpTo = progress.finishedUpTo;
+      finishedFiles.addAll(progress.finishedFiles);
+      files = progress.files;
+      next = progress.next;
+    }
+
+    boolean isFinished(StreamFile file) {
+      return (finishedUpTo != null && file.compareTo(finishedUpTo) <= 0)
+          || finishedFiles.contains(file);
+    }
+
+    void compact() {
+      if (files == null) {
+        return;
+      }
+      while (next < files.size() && finishedFiles.remove(files.get(next))) {
+        finishedUpTo = files.get(next);
+        next++;
+      }
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * ((finishedUpTo == null) ? 0 : finishedUpTo.hashCode())
+          + finishedFiles.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      ClusterProgress other = (ClusterProgress) obj;
+      if (finishedUpTo == null) {
+        if (other.finishedUpTo != null)
+          return false;
+      } else if (!finishedUpTo.equals(other.finishedUpTo))
+        return false;
+      return finishedFiles.equals(other.finishedFiles);
+    }
+  }
+
+  private long startTime;
+  private long endTime;
+  private final Map<String, ClusterProgress> clusters =
+      new HashMap<String, ClusterProgress>();
+
+  /**
+   * Used only during serialization
+   */
+  ReplayProgress() {
+  }
+
+  /**
+   * @param startTime Start of the replayed range, in milliseconds
+   * @param endTime End of the replayed range, excluded, in milliseconds
+   */
+  public ReplayProgress(long startTime, long endTime) {
+    this.startTime = startTime;
+    this.endTime = endTime;
+  }
+
+  /**
+   * Copy a progress which keeps being updated. The listings are shared.
+   */
+  ReplayProgress(ReplayProgress progress) {
+    this.startTime = progress.startTime;
+    this.endTime = progress.endTime;
+    for (Map.Entry<String, ClusterProgress> entry
+        : progress.clusters.entrySet()) {
+      clusters.put(entry.getKey(), new ClusterProgress(entry.getValue()));
+    }
+  }
+
+  public long getStartTime() {
+    return startTime;
+  }
+
+  public long getEndTime() {
+    return endTime;
+  }
+
+  private ClusterProgress getCluster(String cluster) {
+    ClusterProgress progress = clusters.get(cluster);
+    if (progress == null) {
+      progress = new ClusterProgress();
+      clusters.put(cluster, progress);
+    }
+    return progress;
+  }
+
+  /**
+   * Set the files of the range of a cluster, in stream order, so that the
+   * watermark of the cluster can move as they finish. The list is not
+   * copied.
+   */
+  public void setFiles(String cluster, List<? extends StreamFile> files) {
+    ClusterProgress progress = getCluster(cluster);
+    progress.files = files;
+    progress.next = 0;
+    if (progress.finishedUpTo != null) {
+      while (progress.next < files.size()
+          && files.get(progress.next).compareTo(progress.finishedUpTo) <= 0) {
+        progress.next++;
+      }
+    }
+    progress.compact();
+  }
+
+  public boolean isFinished(String cluster, StreamFile file) {
+    ClusterProgress progress = clusters.get(cluster);
+    return progress != null && progress.isFinished(file);
+  }
+
+  /**
+   * Record that all the messages of the file were consumed.
+   */
+  public void fileFinished(String cluster, StreamFile file) {
+    ClusterProgress progress = getCluster(cluster);
+    if (!progress.isFinished(file)) {
+      progress.finishedFiles.add(file);
+      progress.compact();
+    }
+  }
+
+  /**
+   * Get the number of finished files kept besides the watermarks.
+   */
+  int getNumFinishedFiles() {
+    int numFiles = 0;
+    for (ClusterProgress progress : clusters.values()) {
+      numFiles += progress.finishedFiles.size();
+    }
+    return numFiles;
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    startTime = in.readLong();
+    endTime = in.readLong();
+    int numClusters = in.readInt();
+    for (int i = 0; i < numClusters; i++) {
+      ClusterProgress progress = getCluster(in.readUTF());
+      int numFiles = in.readInt();
+      if (in.readBoolean()) {
+        progress.finishedUpTo = readStreamFile(in, in.readUTF());
+      }
+      if (numFiles > 0) {
+        // the files of a cluster are all of the same type
+        String streamFileClassName = in.readUTF();
+        for (int f = 0; f < numFiles; f++) {
+          progress.finishedFiles.add(readStreamFile(in, streamFileClassName));
+        }
+      }
+    }
+  }
+
+  private static StreamFile readStreamFile(DataInput in,
+      String streamFileClassName) throws IOException {
+    StreamFile streamFile;
+    try {
+      streamFile = (StreamFile) Class.forName(streamFileClassName)
+          .newInstance();
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Invalid checkpoint", e);
+    }
+    streamFile.readFields(in);
+    return streamFile;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeLong(startTime);
+    out.writeLong(endTime);
+    out.writeInt(clusters.size());
+    for (Map.Entry<String, ClusterProgress> entry : clusters.entrySet()) {
+      ClusterProgress progress = entry.getValue();
+      out.writeUTF(entry.getKey());
+      out.writeInt(progress.finishedFiles.size());
+      out.writeBoolean(progress.finishedUpTo != null);
+      if (progress.finishedUpTo != null) {
+        out.writeUTF(progress.finishedUpTo.getClass().getCanonicalName());
+        progress.finishedUpTo.write(out);
+      }
+      Class<?> fileClass = null;
+      for (StreamFile file : progress.finishedFiles) {
+        if (fileClass == null) {
+          fileClass = file.getClass();
+          out.writeUTF(fileClass.getCanonicalName());
+        } else if (file.getClass() != fileClass) {
+          throw new IOException("Finished files of cluster " + entry.getKey()
+              + " are not all " + fileClass.getName());
+        }
+        file.write(out);
+      }
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + (int) (startTime ^ (startTime >>> 32));
+    result = prime * result + (int) (endTime ^ (endTime >>> 32));
+    result = prime * result + clusters.hashCode();
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    ReplayProgress other = (ReplayProgress) obj;
+    return startTime == other.startTime && endTime == other.endTime
+        && clusters.equals(other.clusters);
+  }
+
+  public String toString() {
+    StringBuffer buf = new StringBuffer();
+    buf.append("replay from ").append(startTime).append(" to ")
+    .append(endTime);
+    for (Map.Entry<String, ClusterProgress> entry : clusters.entrySet()) {
+      buf.append(", ").append(entry.getKey()).append(" finished up to:")
+      .append(entry.getValue().finishedUpTo).append(" and files:")
+      .append(entry.getValue().finishedFiles.size());
+    }
+    return buf.toString();
+  }
+}
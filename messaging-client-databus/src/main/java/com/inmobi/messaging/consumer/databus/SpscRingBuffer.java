@@ -0,0 +1,189 @@
+package com.inmobi.messaging.consumer.databus;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded ring buffer for exactly one producer thread and one consumer at a
+ * time, used as the buffer of a single partition reader.
+ *
+ * The slots are allocated once, when the capacity is known, through
+ * {@link #allocate(int)}. Producer and consumer only touch their own index
+ * and a cached copy of the other one, so there is no lock on the path of a
+ * message; a blocked producer is parked until the consumer frees a slot.
+ * Wakeups of a blocked consumer go to the {@link PartitionedBuffer} owning
+ * the ring.
+ *
+ * Iteration is not supported.
+ */
+class SpscRingBuffer<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+  private final PartitionedBuffer<E> owner;
+  private Object[] slots;
+  private int capacity;
+
+  // index of the next slot to read, written by the consumer only
+  private final AtomicLong head = new AtomicLong(0);
+  // index of the next slot to write, written by the producer only
+  private final AtomicLong tail = new AtomicLong(0);
+  // producer's copy of head, refreshed when the ring looks full
+  private long cachedHead = 0;
+  // consumer's copy of tail, refreshed when the ring looks empty
+  private long cachedTail = 0;
+  private volatile Thread waitingProducer;
+
+  SpscRingBuffer(PartitionedBuffer<E> owner) {
+    this.owner = owner;
+  }
+
+  void allocate(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity should be positive");
+    }
+    this.capacity = capacity;
+    this.slots = new Object[capacity];
+  }
+
+  @Override
+  public boolean offer(E e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    long t = tail.get();
+    if (t - cachedHead >= capacity) {
+      cachedHead = head.get();
+      if (t - cachedHead >= capacity) {
+        return false;
+      }
+    }
+    slots[(int) (t % capacity)] = e;
+    tail.set(t + 1);
+    owner.signalConsumer();
+    return true;
+  }
+
+  @Override
+  public void put(E e) throws InterruptedException {
+    while (!offer(e)) {
+      waitingProducer = Thread.currentThread();
+      try {
+        // recheck after publishing the waiter, the consumer could have freed
+        // a slot before seeing it
+        if (tail.get() - head.get() >= capacity) {
+          LockSupport.park(this);
+        }
+      } finally {
+        waitingProducer = null;
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+  }
+
+  @Override
+  public boolean offer(E e, long timeout, TimeUnit unit)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!offer(e)) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return false;
+      }
+      waitingProducer = Thread.currentThread();
+      try {
+        if (tail.get() - head.get() >= capacity) {
+          LockSupport.parkNanos(this, remaining);
+        }
+      } finally {
+        waitingProducer = null;
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E poll() {
+    long h = head.get();
+    if (h >= cachedTail) {
+      cachedTail = tail.get();
+      if (h >= cachedTail) {
+        return null;
+      }
+    }
+    int index = (int) (h % capacity);
+    E e = (E) slots[index];
+    slots[index] = null;
+    head.set(h + 1);
+    Thread producer = waitingProducer;
+    if (producer != null) {
+      LockSupport.unpark(producer);
+    }
+    return e;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E peek() {
+    long h = head.get();
+    if (h >= tail.get()) {
+      return null;
+    }
+    return (E) slots[(int) (h % capacity)];
+  }
+
+  @Override
+  public E take() throws InterruptedException {
+    return owner.waitFor(this, Long.MAX_VALUE);
+  }
+
+  @Override
+  public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    return owner.waitFor(this, unit.toNanos(timeout));
+  }
+
+  @Override
+  public int size() {
+    return (int) (tail.get() - head.get());
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return tail.get() == head.get();
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return capacity - size();
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c, int maxElements) {
+    int n = 0;
+    E e;
+    while (n < maxElements && (e = poll()) != null) {
+      c.add(e);
+      n++;
+    }
+    return n;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    throw new UnsupportedOperationException("Ring buffer is not iterable");
+  }
+}
@@ -1,18 +1,26 @@
 package com.inmobi.messaging.consumer.hadoop;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 
+import com.inmobi.databus.files.HadoopStreamFile;
+import com.inmobi.databus.files.StreamFile;
 import com.inmobi.databus.partition.PartitionCheckpoint;
 import com.inmobi.databus.partition.PartitionId;
 import com.inmobi.databus.partition.PartitionReader;
+import com.inmobi.databus.readers.DatabusStreamReplayReader;
 import com.inmobi.messaging.ClientConfig;
 import com.inmobi.messaging.consumer.databus.AbstractMessagingDatabusConsumer;
+import com.inmobi.messaging.consumer.databus.ReplayProgress;
 import com.inmobi.messaging.metrics.PartitionReaderStatsExposer;
 
 public class HadoopConsumer extends AbstractMessagingDatabusConsumer 
@@ -23,6 +31,12 @@ public class HadoopConsumer extends AbstractMessagingDatabusConsumer
   private FileSystem[] fileSystems;
   private Configuration conf;
   private String inputFormatClassName;
+  private int replayReaders;
+  private Date replayStartTime;
+  private Date replayEndTime;
+
+  // collector of the partitions of replay readers, followed by their index
+  static final String REPLAY_PARTITION_PREFIX = "replay";
 
   protected void initializeConfig(ClientConfig config) throws IOException {
     String hadoopConfFileName = config.getString(hadoopConfigFileKey);
@@ -54,9 +68,33 @@ public class HadoopConsumer extends AbstractMessagingDatabusConsumer
 
     inputFormatClassName = config.getString(inputFormatClassNameConfig,
         DEFAULT_INPUT_FORMAT_CLASSNAME);
+
+    replayReaders = config.getInteger(replayReadersConfig,
+        DEFAULT_REPLAY_READERS);
+    if (replayReaders > 0) {
+      // the range is fixed for the life of the consumer, a reset does not
+      // keep the start time; a replay in progress goes on with the range of
+      // its checkpoint
+      Long endMillis = config.getLong(replayEndTimeConfig);
+      replayEndTime = new Date(endMillis != null ? endMillis
+          : System.currentTimeMillis());
+      replayStartTime = startTime != null ? startTime : new Date(
+          System.currentTimeMillis() - retentionInHours * ONE_HOUR_IN_MILLIS);
+      if (!replayStartTime.before(replayEndTime)) {
+        throw new IllegalArgumentException("Replay start time "
+            + replayStartTime + " is not before the end time "
+            + replayEndTime);
+      }
+    }
   }
 
   protected void createPartitionReaders() throws IOException {
+    if (replayReaders > 0) {
+      createReplayReaders();
+      return;
+    }
+    // finished files are of no use once the consumer does not replay
+    currentCheckpoint.setReplayProgress(null);
     for (int i= 0; i < clusterNames.length; i++) {
       String clusterName = clusterNames[i];
       LOG.debug("Creating partition reader for cluster:" + clusterName);
@@ -79,14 +117,94 @@ public class HadoopConsumer extends AbstractMessagingDatabusConsumer
           PartitionReaderStatsExposer(topicName, consumerName, id.toString());
       addStatsExposer(clusterMetrics);
       PartitionReader reader = new PartitionReader(id,
-          partitionsChkPoints.get(id), fileSystems[i], buffer, rootDirs[i],
-          conf, inputFormatClassName, partitionTimestamp,
+          partitionsChkPoints.get(id), fileSystems[i], getBuffer(id),
+          rootDirs[i], conf, inputFormatClassName, partitionTimestamp,
           waitTimeForFileCreate, false, dataEncodingType, clusterMetrics);    
       LOG.debug("Created partition " + id);
       readers.put(id, reader);
     }
   }
 
+  /**
+   * Split the files of every root dir in the replay range across the replay
+   * readers.
+   *
+   * The range and the files finished so far are kept in the checkpoint, so
+   * a consumer resuming the replay lists the same range again. Files are
+   * dealt out by their index in the listing, so that readers mostly get the
+   * same files again, and each reader goes on from its position in the
+   * checkpoint. Finished files are skipped; files which were partly read
+   * start at their position whichever reader gets them.
+   */
+  private void createReplayReaders() throws IOException {
+    ReplayProgress progress = currentCheckpoint.getReplayProgress();
+    if (progress == null) {
+      progress = new ReplayProgress(replayStartTime.getTime(),
+          replayEndTime.getTime());
+      currentCheckpoint.setReplayProgress(progress);
+    }
+    Date rangeStart = new Date(progress.getStartTime());
+    Date rangeEnd = new Date(progress.getEndTime());
+    Map<PartitionId, PartitionCheckpoint> partitionsChkPoints =
+        currentCheckpoint.getPartitionsCheckpoint();
+    for (int i = 0; i < clusterNames.length; i++) {
+      String clusterName = clusterNames[i];
+      List<FileStatus> files = DatabusStreamReplayReader.listFiles(
+          fileSystems[i], rootDirs[i], rangeStart, rangeEnd);
+      LOG.info("Replaying " + files.size() + " files of " + rootDirs[i]
+          + " from " + rangeStart + " to " + rangeEnd + " with "
+          + replayReaders + " readers");
+      List<StreamFile> streamFiles = new ArrayList<StreamFile>(files.size());
+      for (FileStatus file : files) {
+        streamFiles.add(HadoopStreamFile.create(file));
+      }
+      progress.setFiles(clusterName, streamFiles);
+      for (int f = 0; f < files.size(); f++) {
+        // files without data never have a last message to finish them
+        if (files.get(f).getLen() == 0) {
+          progress.fileFinished(clusterName, streamFiles.get(f));
+        }
+      }
+
+      Map<StreamFile, PartitionCheckpoint> positions =
+          new HashMap<StreamFile, PartitionCheckpoint>();
+      for (Map.Entry<PartitionId, PartitionCheckpoint> entry
+          : partitionsChkPoints.entrySet()) {
+        PartitionId id = entry.getKey();
+        PartitionCheckpoint pck = entry.getValue();
+        if (pck != null && clusterName.equals(id.getCluster())
+            && id.getCollector() != null
+            && id.getCollector().startsWith(REPLAY_PARTITION_PREFIX)
+            && !progress.isFinished(clusterName, pck.getStreamFile())) {
+          positions.put(pck.getStreamFile(), pck);
+        }
+      }
+
+      List<List<FileStatus>> shares = new ArrayList<List<FileStatus>>();
+      for (int r = 0; r < replayReaders; r++) {
+        shares.add(new ArrayList<FileStatus>());
+      }
+      for (int f = 0; f < files.size(); f++) {
+        if (!progress.isFinished(clusterName, streamFiles.get(f))) {
+          shares.get(f % replayReaders).add(files.get(f));
+        }
+      }
+
+      for (int r = 0; r < replayReaders; r++) {
+        PartitionId id = new PartitionId(clusterName,
+            REPLAY_PARTITION_PREFIX + r);
+        PartitionReaderStatsExposer clusterMetrics = new
+            PartitionReaderStatsExposer(topicName, consumerName, id.toString());
+        addStatsExposer(clusterMetrics);
+        PartitionReader reader = new PartitionReader(id, fileSystems[i],
+            getBuffer(id), rootDirs[i], conf, inputFormatClassName, false,
+            dataEncodingType, clusterMetrics, shares.get(r), positions);
+        LOG.debug("Created replay partition " + id);
+        readers.put(id, reader);
+      }
+    }
+  }
+
   Configuration getHadoopConf() {
     return conf;
   }
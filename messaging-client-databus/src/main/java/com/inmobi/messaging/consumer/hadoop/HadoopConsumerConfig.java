@@ -6,5 +6,21 @@ public interface HadoopConsumerConfig extends MessagingConsumerConfig {
 
   public static final String rootDirsConfig =
       "hadoop.consumer.rootdirs";
+
+  /**
+   * Number of readers the files of each root dir are split across, in which
+   * case messages are not in stream order and reading stops at the replay
+   * end time. Zero reads the stream in order.
+   */
+  public static final String replayReadersConfig =
+      "hadoop.consumer.replay.readers";
+  public static final int DEFAULT_REPLAY_READERS = 0;
+
+  /**
+   * Time, in milliseconds since the epoch, of the first minute directory not
+   * replayed. Defaults to the time the consumer is initialized.
+   */
+  public static final String replayEndTimeConfig =
+      "hadoop.consumer.replay.endtime";
   
 }
@@ -0,0 +1,137 @@
+package com.inmobi.messaging.consumer.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.inmobi.messaging.Message;
+import com.inmobi.messaging.MessagePool;
+
+/**
+ * Base64 decoder writing into a caller supplied array, decoding as
+ * {@link org.apache.commons.codec.binary.Base64#decodeBase64(byte[])} does.
+ *
+ * Both the standard and the URL safe alphabets are accepted, characters out
+ * of the alphabet are skipped and decoding stops at the first padding
+ * character. A trailing group of two or three characters decodes to one or
+ * two bytes.
+ */
+public final class Base64Decoder {
+
+  private static final byte INVALID = -1;
+  private static final byte PAD = -2;
+  // value of every byte, INVALID if it is not part of the alphabets
+  private static final byte[] DECODE_TABLE = new byte[256];
+
+  static {
+    Arrays.fill(DECODE_TABLE, INVALID);
+    for (int i = 0; i < 26; i++) {
+      DECODE_TABLE['A' + i] = (byte) i;
+      DECODE_TABLE['a' + i] = (byte) (26 + i);
+    }
+    for (int i = 0; i < 10; i++) {
+      DECODE_TABLE['0' + i] = (byte) (52 + i);
+    }
+    DECODE_TABLE['+'] = 62;
+    DECODE_TABLE['-'] = 62;
+    DECODE_TABLE['/'] = 63;
+    DECODE_TABLE['_'] = 63;
+    DECODE_TABLE['='] = PAD;
+  }
+
+  private Base64Decoder() {
+  }
+
+  /**
+   * Get the number of bytes the encoded data decodes to if it holds only
+   * characters of the alphabet followed by padding, which is at least the
+   * number of bytes it decodes to otherwise.
+   */
+  public static int getMaxDecodedLength(byte[] src, int offset, int length) {
+    int numChars = length;
+    while (numChars > 0 && src[offset + numChars - 1] == '=') {
+      numChars--;
+    }
+    return (int) (numChars * 3L / 4);
+  }
+
+  /**
+   * Decode the encoded data into the destination array, which must have room
+   * for {@link #getMaxDecodedLength(byte[], int, int)} bytes.
+   *
+   * @return the number of bytes decoded
+   */
+  public static int decode(byte[] src, int offset, int length, byte[] dst,
+      int dstOffset) {
+    int end = offset + length;
+    int s = offset;
+    int d = dstOffset;
+    // groups of four characters of the alphabet, the bulk of the data
+    while (s + 4 <= end) {
+      int c0 = DECODE_TABLE[src[s] & 0xff];
+      int c1 = DECODE_TABLE[src[s + 1] & 0xff];
+      int c2 = DECODE_TABLE[src[s + 2] & 0xff];
+      int c3 = DECODE_TABLE[src[s + 3] & 0xff];
+      if ((c0 | c1 | c2 | c3) < 0) {
+        break;
+      }
+      int bits = (c0 << 18) | (c1 << 12) | (c2 << 6) | c3;
+      dst[d] = (byte) (bits >> 16);
+      dst[d + 1] = (byte) (bits >> 8);
+      dst[d + 2] = (byte) bits;
+      s += 4;
+      d += 3;
+    }
+    // padding, skipped characters and the last group
+    int bits = 0;
+    int numBits = 0;
+    for (; s < end; s++) {
+      int c = DECODE_TABLE[src[s] & 0xff];
+      if (c >= 0) {
+        bits = (bits << 6) | c;
+        numBits += 6;
+        if (numBits == 24) {
+          dst[d] = (byte) (bits >> 16);
+          dst[d + 1] = (byte) (bits >> 8);
+          dst[d + 2] = (byte) bits;
+          d += 3;
+          bits = 0;
+          numBits = 0;
+        }
+      } else if (c == PAD) {
+        break;
+      }
+    }
+    if (numBits == 12) {
+      dst[d++] = (byte) (bits >> 4);
+    } else if (numBits == 18) {
+      dst[d++] = (byte) (bits >> 10);
+      dst[d++] = (byte) (bits >> 2);
+    }
+    return d - dstOffset;
+  }
+
+  /**
+   * Decode the encoded data into a new array.
+   */
+  public static byte[] decode(byte[] src) {
+    byte[] dst = new byte[getMaxDecodedLength(src, 0, src.length)];
+    int length = decode(src, 0, src.length, dst, 0);
+    return length == dst.length ? dst : Arrays.copyOf(dst, length);
+  }
+
+  /**
+   * Decode the encoded data into a new message, taking its buffer from the
+   * pool if one is passed.
+   */
+  public static Message decode(byte[] src, MessagePool pool) {
+    if (pool == null) {
+      return new Message(ByteBuffer.wrap(decode(src)));
+    }
+    Message msg = pool.allocate(getMaxDecodedLength(src, 0, src.length));
+    ByteBuffer data = msg.getData();
+    int length = decode(src, 0, src.length, data.array(),
+        data.arrayOffset() + data.position());
+    data.limit(data.position() + length);
+    return msg;
+  }
+}
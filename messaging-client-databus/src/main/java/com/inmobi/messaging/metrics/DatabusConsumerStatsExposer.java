@@ -0,0 +1,73 @@
+package com.inmobi.messaging.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.inmobi.messaging.consumer.BaseMessageConsumerStatsExposer;
+
+public class DatabusConsumerStatsExposer extends
+    BaseMessageConsumerStatsExposer {
+  public final static String CHECKPOINTS_WRITTEN = "checkpointsWritten";
+  public final static String CHECKPOINT_FAILURES = "checkpointFailures";
+  public final static String CHECKPOINTS_COALESCED = "checkpointsCoalesced";
+  public final static String CHECKPOINT_LAG_MILLIS = "checkpointLagMillis";
+
+  private final AtomicLong numCheckpointsWritten = new AtomicLong(0);
+  private final AtomicLong numCheckpointFailures = new AtomicLong(0);
+  private final AtomicLong numCheckpointsCoalesced = new AtomicLong(0);
+  // time of the oldest position not yet persisted, zero if there is none
+  private final AtomicLong oldestUnpersistedTime = new AtomicLong(0);
+
+  public DatabusConsumerStatsExposer(String topicName, String consumerName) {
+    super(topicName, consumerName);
+  }
+
+  public void incrementCheckpointsWritten() {
+    numCheckpointsWritten.incrementAndGet();
+  }
+
+  public void incrementCheckpointFailures() {
+    numCheckpointFailures.incrementAndGet();
+  }
+
+  public void incrementCheckpointsCoalesced() {
+    numCheckpointsCoalesced.incrementAndGet();
+  }
+
+  public void setOldestUnpersistedTime(long timeMillis) {
+    oldestUnpersistedTime.set(timeMillis);
+  }
+
+  public long getCheckpointsWritten() {
+    return numCheckpointsWritten.get();
+  }
+
+  public long getCheckpointFailures() {
+    return numCheckpointFailures.get();
+  }
+
+  public long getCheckpointsCoalesced() {
+    return numCheckpointsCoalesced.get();
+  }
+
+  /**
+   * Get how long the oldest consumed position which is not persisted yet has
+   * been waiting, zero if all are persisted.
+   */
+  public long getCheckpointLagMillis() {
+    long oldest = oldestUnpersistedTime.get();
+    if (oldest == 0) {
+      return 0;
+    }
+    return Math.max(0, System.currentTimeMillis() - oldest);
+  }
+
+  @Override
+  protected void addToStatsMap(Map<String, Number> statsMap) {
+    super.addToStatsMap(statsMap);
+    statsMap.put(CHECKPOINTS_WRITTEN, getCheckpointsWritten());
+    statsMap.put(CHECKPOINT_FAILURES, getCheckpointFailures());
+    statsMap.put(CHECKPOINTS_COALESCED, getCheckpointsCoalesced());
+    statsMap.put(CHECKPOINT_LAG_MILLIS, getCheckpointLagMillis());
+  }
+}
@@ -15,12 +15,31 @@ public class PartitionReaderStatsExposer extends
   public final static String PARTITION_CONTEXT = "PartitionId";
   public final static String CUMULATIVE_NANOS_FETCH_MESSAGE = 
       "cumulativeNanosForFecthMessage";
+  public final static String LISTINGS = "listings";
+  public final static String LISTING_FS_CALLS = "listingFsCalls";
+  public final static String LAST_LISTING_FS_CALLS = "lastListingFsCalls";
+  public final static String PREFETCHED_FILES = "prefetchedFiles";
+  public final static String BACKFILLED_FILES = "backfilledFiles";
+  public final static String DISCOVERIES = "discoveries";
+  public final static String CUMULATIVE_MILLIS_TO_DISCOVERY =
+      "cumulativeMillisToDiscovery";
+  public final static String CACHED_LISTINGS = "cachedListings";
+  public final static String FILE_OPENS = "fileOpens";
 
   private final AtomicLong numMessagesReadFromSource = new AtomicLong(0);
   private final AtomicLong numMessagesAddedToBuffer = new AtomicLong(0);
   private final AtomicLong numHandledExceptions = new AtomicLong(0);
   private final AtomicLong numWaitTimeUnitsNewFile = new AtomicLong(0);
   private final AtomicLong cumulativeNanosForFecthMessage = new AtomicLong(0);
+  private final AtomicLong numListings = new AtomicLong(0);
+  private final AtomicLong numListingFsCalls = new AtomicLong(0);
+  private final AtomicLong numLastListingFsCalls = new AtomicLong(0);
+  private final AtomicLong numPrefetchedFiles = new AtomicLong(0);
+  private final AtomicLong numBackfilledFiles = new AtomicLong(0);
+  private final AtomicLong numDiscoveries = new AtomicLong(0);
+  private final AtomicLong cumulativeMillisToDiscovery = new AtomicLong(0);
+  private final AtomicLong numCachedListings = new AtomicLong(0);
+  private final AtomicLong numFileOpens = new AtomicLong(0);
   private final String pid;
 
   public PartitionReaderStatsExposer(String topicName, String consumerName,
@@ -49,6 +68,53 @@ public class PartitionReaderStatsExposer extends
     cumulativeNanosForFecthMessage.addAndGet(nanos);
   }
 
+  /**
+   * Count a listing of the stream, made with the passed number of file system
+   * calls.
+   */
+  public void addListing(long numFsCalls) {
+    numListings.incrementAndGet();
+    numListingFsCalls.addAndGet(numFsCalls);
+    numLastListingFsCalls.set(numFsCalls);
+  }
+
+  /**
+   * Count a file which was opened ahead of being read.
+   */
+  public void incrementPrefetchedFiles() {
+    numPrefetchedFiles.incrementAndGet();
+  }
+
+  /**
+   * Count a file which was read along with other files while backfilling.
+   */
+  public void incrementBackfilledFiles() {
+    numBackfilledFiles.incrementAndGet();
+  }
+
+  /**
+   * Count new data found after polling for it, which took the passed time
+   * from the first poll.
+   */
+  public void addDiscovery(long millis) {
+    numDiscoveries.incrementAndGet();
+    cumulativeMillisToDiscovery.addAndGet(millis);
+  }
+
+  /**
+   * Count a directory listing taken from the listings shared by the readers.
+   */
+  public void incrementCachedListings() {
+    numCachedListings.incrementAndGet();
+  }
+
+  /**
+   * Count an open of a stream file.
+   */
+  public void incrementFileOpens() {
+    numFileOpens.incrementAndGet();
+  }
+
   @Override
   protected void addToStatsMap(Map<String, Number> map) {
     map.put(MESSAGES_READ_FROM_SOURCE, getMessagesReadFromSource());
@@ -56,6 +122,15 @@ public class PartitionReaderStatsExposer extends
     map.put(HANDLED_EXCEPTIONS, getHandledExceptions());
     map.put(WAIT_TIME_UNITS_NEW_FILE, getWaitTimeUnitsNewFile());
     map.put(CUMULATIVE_NANOS_FETCH_MESSAGE, getCumulativeNanosForFetchMessage());
+    map.put(LISTINGS, getListings());
+    map.put(LISTING_FS_CALLS, getListingFsCalls());
+    map.put(LAST_LISTING_FS_CALLS, getLastListingFsCalls());
+    map.put(PREFETCHED_FILES, getPrefetchedFiles());
+    map.put(BACKFILLED_FILES, getBackfilledFiles());
+    map.put(DISCOVERIES, getDiscoveries());
+    map.put(CUMULATIVE_MILLIS_TO_DISCOVERY, getCumulativeMillisToDiscovery());
+    map.put(CACHED_LISTINGS, getCachedListings());
+    map.put(FILE_OPENS, getFileOpens());
   }
 
   @Override
@@ -83,4 +158,40 @@ public class PartitionReaderStatsExposer extends
   public long getCumulativeNanosForFetchMessage() {
     return cumulativeNanosForFecthMessage.get();
   }
+
+  public long getListings() {
+    return numListings.get();
+  }
+
+  public long getListingFsCalls() {
+    return numListingFsCalls.get();
+  }
+
+  public long getLastListingFsCalls() {
+    return numLastListingFsCalls.get();
+  }
+
+  public long getPrefetchedFiles() {
+    return numPrefetchedFiles.get();
+  }
+
+  public long getBackfilledFiles() {
+    return numBackfilledFiles.get();
+  }
+
+  public long getDiscoveries() {
+    return numDiscoveries.get();
+  }
+
+  public long getCumulativeMillisToDiscovery() {
+    return cumulativeMillisToDiscovery.get();
+  }
+
+  public long getCachedListings() {
+    return numCachedListings.get();
+  }
+
+  public long getFileOpens() {
+    return numFileOpens.get();
+  }
 }
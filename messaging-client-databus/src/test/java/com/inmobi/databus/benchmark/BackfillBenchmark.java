@@ -0,0 +1,144 @@
+package com.inmobi.databus.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.TextInputFormat;
+
+import com.inmobi.databus.partition.PartitionId;
+import com.inmobi.databus.readers.DatabusStreamReader;
+import com.inmobi.databus.readers.DatabusStreamWaitingReader;
+import com.inmobi.messaging.consumer.databus.MessagingConsumerConfig;
+import com.inmobi.messaging.metrics.PartitionReaderStatsExposer;
+
+/**
+ * Measures how many lines per second a {@link DatabusStreamWaitingReader}
+ * reads from a stream far behind, one file at a time and backfilling with 2,
+ * 4 and 8 threads.
+ *
+ * The stream is generated on the local file system, one gzipped file per
+ * minute directory.
+ * Usage: BackfillBenchmark [numMinutes] [linesPerFile]
+ */
+public class BackfillBenchmark {
+
+  private static final int[] NUM_THREADS = {0, 2, 4, 8};
+  private static final int WARMUP_RUNS = 2;
+  private static final int MEASURED_RUNS = 3;
+  private static final int LINE_LENGTH = 200;
+  private static final Path STREAM_DIR = new Path(
+      "file:///tmp/databus-benchmark/backfill");
+
+  public static void main(String[] args) throws Exception {
+    int numMinutes = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+    int linesPerFile = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+    Configuration conf = new Configuration();
+    FileSystem fs = STREAM_DIR.getFileSystem(conf);
+    Date start = createStream(fs, STREAM_DIR, numMinutes, linesPerFile);
+    try {
+      System.out.println("threads\tlines/s");
+      for (int numThreads : NUM_THREADS) {
+        System.out.println(numThreads + "\t" + (long) measure(fs, conf, start,
+            numThreads));
+      }
+    } finally {
+      fs.delete(STREAM_DIR, true);
+    }
+  }
+
+  /**
+   * Write a stream of one gzipped file per minute, ending a minute ago.
+   *
+   * @return the time of the first minute
+   */
+  static Date createStream(FileSystem fs, Path streamDir, int numMinutes,
+      int linesPerFile) throws IOException {
+    return createStream(fs, streamDir, numMinutes, linesPerFile, true);
+  }
+
+  /**
+   * Write a stream of one file per minute, ending a minute ago.
+   *
+   * @return the time of the first minute
+   */
+  static Date createStream(FileSystem fs, Path streamDir, int numMinutes,
+      int linesPerFile, boolean compressed) throws IOException {
+    fs.delete(streamDir, true);
+    Random random = new Random(42);
+    byte[] line = new byte[LINE_LENGTH + 1];
+    Calendar cal = Calendar.getInstance();
+    cal.set(Calendar.SECOND, 0);
+    cal.set(Calendar.MILLISECOND, 0);
+    cal.add(Calendar.MINUTE, -(numMinutes + 1));
+    Date start = cal.getTime();
+    for (int minute = 0; minute < numMinutes; minute++) {
+      Path dir = DatabusStreamReader.getMinuteDirPath(streamDir,
+          cal.getTime());
+      OutputStream out = compressed
+          ? new GZIPOutputStream(fs.create(new Path(dir, "file" + minute
+              + ".gz")))
+          : fs.create(new Path(dir, "file" + minute));
+      try {
+        for (int i = 0; i < linesPerFile; i++) {
+          for (int j = 0; j < LINE_LENGTH; j++) {
+            line[j] = (byte) ('a' + random.nextInt(26));
+          }
+          line[LINE_LENGTH] = '\n';
+          out.write(line);
+        }
+      } finally {
+        out.close();
+      }
+      cal.add(Calendar.MINUTE, 1);
+    }
+    // the last minute is listed once the next one exists
+    fs.mkdirs(DatabusStreamReader.getMinuteDirPath(streamDir, cal.getTime()));
+    return start;
+  }
+
+  private static double measure(FileSystem fs, Configuration conf, Date start,
+      int numThreads) throws Exception {
+    double best = 0;
+    for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+      PartitionId partitionId = new PartitionId("benchmark", null);
+      PartitionReaderStatsExposer metrics = new PartitionReaderStatsExposer(
+          "backfill", "benchmark", partitionId.toString());
+      DatabusStreamWaitingReader reader = new DatabusStreamWaitingReader(
+          partitionId, fs, STREAM_DIR, TextInputFormat.class.getName(), conf,
+          1000, metrics, true);
+      ExecutorService pool = null;
+      if (numThreads > 0) {
+        pool = Executors.newFixedThreadPool(numThreads);
+        reader.setBackfill(1, 2 * numThreads, pool,
+            new Semaphore(MessagingConsumerConfig.DEFAULT_QUEUE_SIZE));
+      }
+      long startNanos = System.nanoTime();
+      reader.build(start);
+      reader.initFromStart();
+      reader.openStream();
+      long numLines = 0;
+      while (reader.readLine() != null) {
+        numLines++;
+      }
+      long elapsed = System.nanoTime() - startNanos;
+      reader.close();
+      if (pool != null) {
+        pool.shutdown();
+      }
+      if (run >= WARMUP_RUNS) {
+        best = Math.max(best, numLines * 1e9 / elapsed);
+      }
+    }
+    return best;
+  }
+}
@@ -0,0 +1,92 @@
+package com.inmobi.databus.benchmark;
+
+import java.util.Random;
+
+import org.apache.commons.codec.binary.Base64;
+
+import com.inmobi.messaging.Message;
+import com.inmobi.messaging.MessagePool;
+import com.inmobi.messaging.consumer.util.Base64Decoder;
+
+/**
+ * Compares the throughput of {@link Base64Decoder} with commons-codec for
+ * messages of 200B, 2KB and 20KB, in MB of decoded data per second.
+ *
+ * The decoder is measured decoding into new arrays, as commons-codec does,
+ * and into pooled messages, as partition readers do with pooled buffers.
+ * Usage: Base64DecodeBenchmark [numMessages]
+ */
+public class Base64DecodeBenchmark {
+
+  private static final int[] MESSAGE_SIZES = {200, 2 * 1024, 20 * 1024};
+  private static final int NUM_DISTINCT_MESSAGES = 64;
+  private static final int WARMUP_RUNS = 2;
+  private static final int MEASURED_RUNS = 3;
+
+  private interface Decoder {
+    int decode(byte[] encoded);
+  }
+
+  public static void main(String[] args) {
+    int numMessages = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    final MessagePool pool = new MessagePool();
+    Decoder commons = new Decoder() {
+      @Override
+      public int decode(byte[] encoded) {
+        return Base64.decodeBase64(encoded).length;
+      }
+    };
+    Decoder array = new Decoder() {
+      @Override
+      public int decode(byte[] encoded) {
+        return Base64Decoder.decode(encoded).length;
+      }
+    };
+    Decoder pooled = new Decoder() {
+      @Override
+      public int decode(byte[] encoded) {
+        Message msg = Base64Decoder.decode(encoded, pool);
+        int length = msg.getData().remaining();
+        msg.release();
+        return length;
+      }
+    };
+    System.out.println("size\tcommons MB/s\tdecoder MB/s\tpooled MB/s");
+    for (int size : MESSAGE_SIZES) {
+      int count = Math.max(1000, (int) ((long) numMessages * 200 / size));
+      byte[][] messages = createMessages(size);
+      System.out.println(size + "\t"
+          + (long) measure(commons, messages, count) + "\t"
+          + (long) measure(array, messages, count) + "\t"
+          + (long) measure(pooled, messages, count));
+    }
+  }
+
+  private static byte[][] createMessages(int size) {
+    Random random = new Random(size);
+    byte[][] messages = new byte[NUM_DISTINCT_MESSAGES][];
+    for (int i = 0; i < messages.length; i++) {
+      byte[] data = new byte[size];
+      random.nextBytes(data);
+      messages[i] = Base64.encodeBase64(data);
+    }
+    return messages;
+  }
+
+  private static double measure(Decoder decoder, byte[][] messages,
+      int count) {
+    double best = 0;
+    for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+      long decoded = 0;
+      long start = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        decoded += decoder.decode(messages[i % messages.length]);
+      }
+      long elapsed = System.nanoTime() - start;
+      if (run >= WARMUP_RUNS) {
+        best = Math.max(best, decoded * 1e9 / elapsed / (1024 * 1024));
+      }
+    }
+    return best;
+  }
+}
@@ -0,0 +1,101 @@
+package com.inmobi.databus.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.util.Date;
+
+import com.inmobi.databus.CheckpointProvider;
+import com.inmobi.databus.FSCheckpointProvider;
+import com.inmobi.databus.partition.PartitionCheckpoint;
+import com.inmobi.databus.partition.PartitionId;
+import com.inmobi.databus.readers.CollectorStreamReader;
+import com.inmobi.messaging.consumer.databus.Checkpoint;
+import com.inmobi.messaging.consumer.databus.LocalJournalCheckpointProvider;
+
+/**
+ * Compares the marks per second of {@link FSCheckpointProvider} and
+ * {@link LocalJournalCheckpointProvider} on the local disk.
+ *
+ * Every mark writes the checkpoint of a consumer reading the passed number of
+ * partitions, with the line numbers moving on between marks.
+ * Usage: CheckpointProviderBenchmark [numMarks] [numPartitions]
+ */
+public class CheckpointProviderBenchmark {
+
+  private static final int WARMUP_RUNS = 2;
+  private static final int MEASURED_RUNS = 3;
+  private static final String KEY = "benchmark_topic";
+  private static final File BASE_DIR = new File(
+      "/tmp/databus-benchmark/checkpointprovider");
+
+  public static void main(String[] args) throws Exception {
+    int numMarks = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    int numPartitions = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+    byte[][] checkpoints = createCheckpoints(numPartitions, 100);
+
+    System.out.println("provider\tmarks/s");
+    System.out.println("fs\t" + (long) measure(false, numMarks, checkpoints));
+    System.out.println("journal\t" + (long) measure(true, numMarks,
+        checkpoints));
+    delete(BASE_DIR);
+  }
+
+  /**
+   * Create checkpoints in the format written by {@link Checkpoint}.
+   */
+  private static byte[][] createCheckpoints(int numPartitions, int num)
+      throws Exception {
+    byte[][] checkpoints = new byte[num][];
+    Date now = new Date();
+    for (int i = 0; i < num; i++) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(-1);
+      out.writeInt(numPartitions);
+      for (int p = 0; p < numPartitions; p++) {
+        new PartitionId("cluster", "collector" + p).write(out);
+        out.writeBoolean(true);
+        new PartitionCheckpoint(CollectorStreamReader.getCollectorFile(
+            "benchmark", now), i * 100L, i * 10000L).write(out);
+      }
+      out.close();
+      checkpoints[i] = bytes.toByteArray();
+      // fail early if the format is off
+      new Checkpoint(checkpoints[i]);
+    }
+    return checkpoints;
+  }
+
+  private static double measure(boolean journal, int numMarks,
+      byte[][] checkpoints) throws Exception {
+    double best = 0;
+    for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+      delete(BASE_DIR);
+      String dir = new File(BASE_DIR, "run" + run).getPath();
+      CheckpointProvider provider = journal
+          ? new LocalJournalCheckpointProvider(dir)
+          : new FSCheckpointProvider(dir);
+      long start = System.nanoTime();
+      for (int i = 0; i < numMarks; i++) {
+        provider.checkpoint(KEY, checkpoints[i % checkpoints.length]);
+      }
+      long elapsed = System.nanoTime() - start;
+      provider.close();
+      if (run >= WARMUP_RUNS) {
+        best = Math.max(best, numMarks * 1e9 / elapsed);
+      }
+    }
+    return best;
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,118 @@
+package com.inmobi.databus.benchmark;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.TreeMap;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+
+import com.inmobi.databus.files.FileMap;
+import com.inmobi.databus.files.HadoopStreamFile;
+import com.inmobi.databus.readers.DatabusStreamReader;
+
+/**
+ * Measures how many file switches per second a {@link FileMap} supports for
+ * listings of 1k, 10k and 100k files.
+ *
+ * A file switch is what a stream reader does at the end of a file: position
+ * the map at the current file, check that there is a next file and get it.
+ * Files are spread over minute directories, ten files per minute.
+ * Usage: FileSwitchBenchmark [numSwitches]
+ */
+public class FileSwitchBenchmark {
+
+  private static final int[] NUM_FILES = {1000, 10000, 100000};
+  private static final int FILES_PER_MINUTE = 10;
+  private static final int WARMUP_RUNS = 2;
+  private static final int MEASURED_RUNS = 3;
+  private static final Path STREAM_DIR = new Path(
+      "file:///tmp/databus-benchmark/fileswitch");
+
+  public static void main(String[] args) throws Exception {
+    int numSwitches = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    System.out.println("files\tswitches/s");
+    for (int numFiles : NUM_FILES) {
+      BenchmarkFileMap fileMap = new BenchmarkFileMap(createFiles(numFiles));
+      fileMap.build();
+      System.out.println(numFiles + "\t"
+          + (long) measure(fileMap, numSwitches));
+    }
+  }
+
+  private static FileStatus[] createFiles(int numFiles) {
+    FileStatus[] files = new FileStatus[numFiles];
+    Calendar cal = Calendar.getInstance();
+    cal.set(Calendar.SECOND, 0);
+    cal.set(Calendar.MILLISECOND, 0);
+    cal.add(Calendar.MINUTE, -numFiles / FILES_PER_MINUTE);
+    for (int i = 0; i < numFiles; i++) {
+      if (i % FILES_PER_MINUTE == 0) {
+        cal.add(Calendar.MINUTE, 1);
+      }
+      Path minuteDir = DatabusStreamReader.getMinuteDirPath(STREAM_DIR,
+          cal.getTime());
+      files[i] = new FileStatus(1024, false, 1, 1024, cal.getTimeInMillis(),
+          new Path(minuteDir, "file" + (i % FILES_PER_MINUTE)));
+    }
+    return files;
+  }
+
+  private static double measure(FileMap<HadoopStreamFile> fileMap,
+      int numSwitches) {
+    double best = 0;
+    for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+      FileStatus current = fileMap.getFirstFile();
+      long start = System.nanoTime();
+      for (int i = 0; i < numSwitches; i++) {
+        fileMap.setIterator(current);
+        if (fileMap.hasNext()) {
+          current = fileMap.getNext();
+        } else {
+          current = fileMap.getFirstFile();
+        }
+      }
+      long elapsed = System.nanoTime() - start;
+      if (run >= WARMUP_RUNS) {
+        best = Math.max(best, numSwitches * 1e9 / elapsed);
+      }
+    }
+    return best;
+  }
+
+  private static class BenchmarkFileMap extends FileMap<HadoopStreamFile> {
+    private final FileStatus[] listing;
+
+    BenchmarkFileMap(FileStatus[] listing) {
+      this.listing = listing;
+    }
+
+    @Override
+    protected void buildList() throws IOException {
+      for (FileStatus file : listing) {
+        files.put(getStreamFile(file), file);
+      }
+    }
+
+    @Override
+    protected TreeMap<HadoopStreamFile, FileStatus> createFilesMap() {
+      return new TreeMap<HadoopStreamFile, FileStatus>();
+    }
+
+    @Override
+    protected HadoopStreamFile getStreamFile(String fileName) {
+      throw new RuntimeException("Not implemented");
+    }
+
+    @Override
+    protected HadoopStreamFile getStreamFile(FileStatus file) {
+      return HadoopStreamFile.create(file);
+    }
+
+    @Override
+    protected PathFilter createPathFilter() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package com.inmobi.databus.benchmark;
+
+import java.util.Date;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.TextInputFormat;
+
+import com.inmobi.databus.partition.PartitionId;
+import com.inmobi.databus.readers.DatabusStreamWaitingReader;
+import com.inmobi.messaging.metrics.PartitionReaderStatsExposer;
+
+/**
+ * Measures how many lines per second a {@link DatabusStreamWaitingReader}
+ * reads from an uncompressed stream on the local file system, through the
+ * text input format and by mapping the files in memory.
+ *
+ * Usage: MappedReadBenchmark [numMinutes] [linesPerFile]
+ */
+public class MappedReadBenchmark {
+
+  private static final int WARMUP_RUNS = 2;
+  private static final int MEASURED_RUNS = 5;
+  private static final Path STREAM_DIR = new Path(
+      "file:///tmp/databus-benchmark/mapped");
+
+  public static void main(String[] args) throws Exception {
+    int numMinutes = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+    int linesPerFile = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+    Configuration conf = new Configuration();
+    FileSystem fs = STREAM_DIR.getFileSystem(conf);
+    Date start = BackfillBenchmark.createStream(fs, STREAM_DIR, numMinutes,
+        linesPerFile, false);
+    try {
+      System.out.println("reader\tlines/s");
+      System.out.println("input format\t"
+          + (long) measure(fs, conf, start, false));
+      System.out.println("mapped\t" + (long) measure(fs, conf, start, true));
+    } finally {
+      fs.delete(STREAM_DIR, true);
+    }
+  }
+
+  private static double measure(FileSystem fs, Configuration conf, Date start,
+      boolean mapped) throws Exception {
+    double best = 0;
+    for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+      PartitionId partitionId = new PartitionId("benchmark", null);
+      PartitionReaderStatsExposer metrics = new PartitionReaderStatsExposer(
+          "mapped", "benchmark", partitionId.toString());
+      DatabusStreamWaitingReader reader = new DatabusStreamWaitingReader(
+          partitionId, fs, STREAM_DIR, TextInputFormat.class.getName(), conf,
+          1000, metrics, true);
+      reader.setReadValueBytes(true);
+      reader.setMapLocalFiles(mapped);
+      long startNanos = System.nanoTime();
+      reader.build(start);
+      reader.initFromStart();
+      reader.openStream();
+      long numLines = 0;
+      while (reader.readLine() != null) {
+        numLines++;
+      }
+      long elapsed = System.nanoTime() - startNanos;
+      reader.close();
+      if (run >= WARMUP_RUNS) {
+        best = Math.max(best, numLines * 1e9 / elapsed);
+      }
+    }
+    return best;
+  }
+}
@@ -0,0 +1,115 @@
+package com.inmobi.databus.benchmark;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.TextInputFormat;
+
+import com.inmobi.databus.readers.DatabusStreamReader;
+import com.inmobi.messaging.ClientConfig;
+import com.inmobi.messaging.consumer.hadoop.HadoopConsumer;
+import com.inmobi.messaging.consumer.hadoop.HadoopConsumerConfig;
+
+/**
+ * Compares the aggregate throughput of a consumer reading 1, 8, 32 and 128
+ * partitions from the local file system through the shared buffer and
+ * through the partitioned buffer.
+ *
+ * Every partition is a root directory of a {@link HadoopConsumer} holding one
+ * text file; the total number of messages is the same for all partition
+ * counts. Usage: PartitionedBufferBenchmark [totalMessages] [bufferSize]
+ */
+public class PartitionedBufferBenchmark {
+
+  private static final int[] NUM_PARTITIONS = {1, 8, 32, 128};
+  private static final int WARMUP_RUNS = 2;
+  private static final int MEASURED_RUNS = 3;
+  private static final String TOPIC = "benchmark";
+  private static final Path BASE_DIR = new Path(
+      "file:///tmp/databus-benchmark/partitionedbuffer");
+
+  public static void main(String[] args) throws Exception {
+    int totalMessages = args.length > 0 ? Integer.parseInt(args[0]) : 512000;
+    int bufferSize = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+    Configuration conf = new Configuration();
+    FileSystem fs = BASE_DIR.getFileSystem(conf);
+    Calendar cal = Calendar.getInstance();
+    cal.add(Calendar.MINUTE, -10);
+    cal.set(Calendar.SECOND, 0);
+    cal.set(Calendar.MILLISECOND, 0);
+    Date fileTime = cal.getTime();
+
+    System.out.println("partitions\tshared(msgs/s)\tpartitioned(msgs/s)");
+    for (int numPartitions : NUM_PARTITIONS) {
+      String rootDirs = setupPartitions(fs, numPartitions,
+          totalMessages / numPartitions, fileTime);
+      int numMessages = (totalMessages / numPartitions) * numPartitions;
+      double shared = measure(rootDirs, numMessages, bufferSize, false,
+          fileTime);
+      double partitioned = measure(rootDirs, numMessages, bufferSize, true,
+          fileTime);
+      System.out.println(numPartitions + "\t" + (long) shared + "\t"
+          + (long) partitioned);
+    }
+    fs.delete(BASE_DIR, true);
+  }
+
+  private static String setupPartitions(FileSystem fs, int numPartitions,
+      int messagesPerPartition, Date fileTime) throws Exception {
+    fs.delete(BASE_DIR, true);
+    StringBuilder rootDirs = new StringBuilder();
+    for (int p = 0; p < numPartitions; p++) {
+      Path rootDir = new Path(BASE_DIR, "p" + p);
+      Path minuteDir = DatabusStreamReader.getMinuteDirPath(rootDir, fileTime);
+      FSDataOutputStream out = fs.create(new Path(minuteDir, "datafile0"));
+      for (int i = 0; i < messagesPerPartition; i++) {
+        out.write(("partition " + p + " message " + i
+            + " abcdefghijklmnopqrstuvwxyz0123456789\n").getBytes());
+      }
+      out.close();
+      // the following minute marks the file as complete
+      Calendar cal = Calendar.getInstance();
+      cal.setTime(fileTime);
+      cal.add(Calendar.MINUTE, 1);
+      fs.mkdirs(DatabusStreamReader.getMinuteDirPath(rootDir, cal.getTime()));
+      if (p > 0) {
+        rootDirs.append(",");
+      }
+      rootDirs.append(rootDir.toString());
+    }
+    return rootDirs.toString();
+  }
+
+  private static double measure(String rootDirs, int numMessages,
+      int bufferSize, boolean partitioned, Date startTime) throws Exception {
+    double best = 0;
+    for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+      ClientConfig config = new ClientConfig();
+      config.set(HadoopConsumerConfig.rootDirsConfig, rootDirs);
+      config.set(HadoopConsumerConfig.checkpointDirConfig,
+          new Path(BASE_DIR, "checkpoint" + run).toString());
+      config.set(HadoopConsumerConfig.inputFormatClassNameConfig,
+          TextInputFormat.class.getName());
+      config.set(HadoopConsumerConfig.queueSizeConfig,
+          Integer.toString(bufferSize));
+      config.set(HadoopConsumerConfig.partitionedBufferConfig,
+          Boolean.toString(partitioned));
+      HadoopConsumer consumer = new HadoopConsumer();
+      long start = System.nanoTime();
+      consumer.init(TOPIC, "benchmark" + run, startTime, config);
+      for (int i = 0; i < numMessages; i++) {
+        consumer.next();
+      }
+      long elapsed = System.nanoTime() - start;
+      consumer.close();
+      if (run >= WARMUP_RUNS) {
+        best = Math.max(best, numMessages * 1e9 / elapsed);
+      }
+    }
+    return best;
+  }
+}
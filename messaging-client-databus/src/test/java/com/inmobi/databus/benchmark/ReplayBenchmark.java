@@ -0,0 +1,82 @@
+package com.inmobi.databus.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.inmobi.messaging.ClientConfig;
+import com.inmobi.messaging.Message;
+import com.inmobi.messaging.consumer.hadoop.HadoopConsumer;
+import com.inmobi.messaging.consumer.hadoop.HadoopConsumerConfig;
+
+/**
+ * Measures how many messages per second a {@link HadoopConsumer} replays
+ * from a generated gzipped stream on the local file system with 1, 2, 4 and
+ * 8 replay readers.
+ *
+ * Usage: ReplayBenchmark [numMinutes] [linesPerFile]
+ */
+public class ReplayBenchmark {
+
+  private static final int[] NUM_READERS = {1, 2, 4, 8};
+  private static final int WARMUP_RUNS = 1;
+  private static final int MEASURED_RUNS = 3;
+  private static final int BATCH_SIZE = 1000;
+  private static final Path BASE_DIR = new Path(
+      "file:///tmp/databus-benchmark/replay");
+
+  public static void main(String[] args) throws Exception {
+    int numMinutes = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+    int linesPerFile = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+    Configuration conf = new Configuration();
+    FileSystem fs = BASE_DIR.getFileSystem(conf);
+    Path streamDir = new Path(BASE_DIR, "stream");
+    BackfillBenchmark.createStream(fs, streamDir, numMinutes, linesPerFile);
+    try {
+      System.out.println("readers\tmessages/s");
+      for (int numReaders : NUM_READERS) {
+        System.out.println(numReaders + "\t" + (long) measure(fs, streamDir,
+            numReaders, (long) numMinutes * linesPerFile));
+      }
+    } finally {
+      fs.delete(BASE_DIR, true);
+    }
+  }
+
+  private static double measure(FileSystem fs, Path streamDir, int numReaders,
+      long numMessages) throws Exception {
+    Path checkpointDir = new Path(BASE_DIR, "checkpoint");
+    double best = 0;
+    for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+      fs.delete(checkpointDir, true);
+      ClientConfig config = new ClientConfig();
+      config.set(HadoopConsumerConfig.rootDirsConfig, streamDir.toString());
+      config.set(HadoopConsumerConfig.checkpointDirConfig,
+          checkpointDir.toUri().getPath());
+      config.set(HadoopConsumerConfig.replayReadersConfig,
+          Integer.toString(numReaders));
+      HadoopConsumer consumer = new HadoopConsumer();
+      long start = System.nanoTime();
+      consumer.init("replay", "benchmark", null, config);
+      long numRead = 0;
+      while (numRead < numMessages) {
+        List<Message> batch = consumer.nextBatch(BATCH_SIZE, 10,
+            TimeUnit.SECONDS);
+        if (batch.isEmpty()) {
+          throw new IllegalStateException("Replay stopped after " + numRead
+              + " of " + numMessages + " messages");
+        }
+        numRead += batch.size();
+      }
+      long elapsed = System.nanoTime() - start;
+      consumer.close();
+      if (run >= WARMUP_RUNS) {
+        best = Math.max(best, numRead * 1e9 / elapsed);
+      }
+    }
+    return best;
+  }
+}
@@ -33,6 +33,11 @@ public class TestCollectorFile {
     Assert.assertEquals(cf1.compareTo(cf2), 1);
     cf1 = new CollectorFile(stream2, date, 0);
     Assert.assertEquals(cf1.compareTo(cf2), 1);
+    // ids are compared as numbers, also beyond the formatted width
+    cf1 = new CollectorFile(stream1, date, 100000);
+    cf2 = new CollectorFile(stream1, date, 99999);
+    Assert.assertEquals(cf1.compareTo(cf2), 1);
+    Assert.assertEquals(cf1.compareTo(CollectorFile.create(cf1.toString())), 0);
     
     Throwable th = null;
     try {
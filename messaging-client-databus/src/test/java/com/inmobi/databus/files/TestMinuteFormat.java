@@ -0,0 +1,76 @@
+package com.inmobi.databus.files;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestMinuteFormat {
+
+  private static void checkParseAndFormat() throws Exception {
+    SimpleDateFormat fileFormat = new SimpleDateFormat("yyyy-MM-dd-HH-mm");
+    SimpleDateFormat dirFormat = new SimpleDateFormat("yyyy/MM/dd/HH/mm");
+    Calendar cal = Calendar.getInstance();
+    // two weeks from the end of a year
+    cal.clear();
+    cal.set(2012, Calendar.DECEMBER, 31, 20, 3);
+    for (int i = 0; i < 3000; i++) {
+      Date date = cal.getTime();
+      String fileStr = fileFormat.format(date);
+      long key = MinuteFormat.parse("stream-" + fileStr + "_00001", 7, '-');
+      Assert.assertEquals(key, MinuteFormat.getKey(date));
+      Assert.assertEquals(MinuteFormat.toMillis(key), date.getTime());
+      Assert.assertEquals(MinuteFormat.format(key, '-'), fileStr);
+      Assert.assertEquals(MinuteFormat.parse(dirFormat.format(date), 0, '/'),
+          key);
+      cal.add(Calendar.MINUTE, 7);
+    }
+  }
+
+  @Test
+  public void testParseAndFormat() throws Throwable {
+    // minutes are in the default time zone, which a thread picks up when it
+    // first uses them, so they are checked in UTC from a new thread
+    TimeZone defaultZone = TimeZone.getDefault();
+    TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+    final Throwable[] error = new Throwable[1];
+    try {
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            checkParseAndFormat();
+          } catch (Throwable t) {
+            error[0] = t;
+          }
+        }
+      };
+      thread.start();
+      thread.join();
+    } finally {
+      TimeZone.setDefault(defaultZone);
+    }
+    if (error[0] != null) {
+      throw error[0];
+    }
+  }
+
+  @Test
+  public void testInvalid() {
+    Assert.assertEquals(MinuteFormat.parse("2013-01-01-00-0", 0, '-'),
+        MinuteFormat.INVALID);
+    Assert.assertEquals(MinuteFormat.parse("2013-01-01-00-60", 0, '-'),
+        MinuteFormat.INVALID);
+    Assert.assertEquals(MinuteFormat.parse("2013-13-01-00-00", 0, '-'),
+        MinuteFormat.INVALID);
+    Assert.assertEquals(MinuteFormat.parse("2013/01/01/00/00", 0, '-'),
+        MinuteFormat.INVALID);
+    Assert.assertEquals(MinuteFormat.parse("2013-0a-01-00-00", 0, '-'),
+        MinuteFormat.INVALID);
+    Assert.assertEquals(MinuteFormat.parse("2013-01-01-00-00", -1, '-'),
+        MinuteFormat.INVALID);
+  }
+}
@@ -124,6 +124,8 @@ public class TestCurrentFile {
     Assert.assertEquals(prMetrics.getSwitchesFromCollectorToLocal(), 0);
     Assert.assertEquals(prMetrics.getSwitchesFromLocalToCollector(), 0);
     Assert.assertTrue(prMetrics.getCumulativeNanosForFetchMessage() > 0);
+    // open HDFS streams do not see the data synced later
+    Assert.assertTrue(prMetrics.getFileOpens() > 1);
   }
 
 }
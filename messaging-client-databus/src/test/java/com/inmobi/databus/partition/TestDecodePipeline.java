@@ -0,0 +1,125 @@
+package com.inmobi.databus.partition;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.binary.Base64;
+import org.testng.Assert;
+import org.testng.annotations.AfterTest;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.inmobi.databus.files.StreamFile;
+import com.inmobi.messaging.Message;
+import com.inmobi.messaging.MessagePool;
+import com.inmobi.messaging.consumer.databus.QueueEntry;
+
+public class TestDecodePipeline {
+
+  private final PartitionId partitionId = new PartitionId("cluster", null);
+  private ExecutorService pool;
+
+  private class Factory implements DecodePipeline.EntryFactory {
+    private final AtomicInteger numAdded = new AtomicInteger(0);
+    // entries are left encoded, to be decoded into this pool, if set
+    private MessagePool messagePool;
+
+    @Override
+    public QueueEntry createEntry(byte[] line, StreamFile streamFile,
+        long lineNum, long offset, boolean lastInFile) {
+      if (lineNum % 7 == 0) {
+        // let the batches finish out of order
+        Thread.yield();
+      }
+      if (messagePool != null) {
+        return new QueueEntry(Base64.encodeBase64(line), messagePool,
+            partitionId, 0, streamFile, lineNum, offset);
+      }
+      return new QueueEntry(new Message(ByteBuffer.wrap(line)), partitionId,
+          0, streamFile, lineNum, offset);
+    }
+
+    @Override
+    public void entryAdded(QueueEntry entry) {
+      numAdded.incrementAndGet();
+    }
+  }
+
+  @BeforeTest
+  public void setup() {
+    pool = Executors.newFixedThreadPool(4);
+  }
+
+  @AfterTest
+  public void cleanup() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void testOrder() throws Exception {
+    BlockingQueue<QueueEntry> buffer = new LinkedBlockingQueue<QueueEntry>();
+    Factory factory = new Factory();
+    DecodePipeline pipeline = new DecodePipeline(pool, buffer, factory, 10, 4);
+    int numLines = 1000;
+    for (int i = 1; i <= numLines; i++) {
+      pipeline.add(Integer.toString(i).getBytes(), null, i, -1, false);
+    }
+    pipeline.flush();
+    Assert.assertEquals(buffer.size(), numLines);
+    Assert.assertEquals(factory.numAdded.get(), numLines);
+    for (int i = 1; i <= numLines; i++) {
+      QueueEntry entry = buffer.take();
+      Assert.assertEquals(entry.getLineNum(), i);
+      Assert.assertEquals(new String(entry.getMessage().getData().array()),
+          Integer.toString(i));
+    }
+    Assert.assertEquals(pipeline.close(), 0);
+  }
+
+  @Test
+  public void testCloseWithFullBuffer() throws Exception {
+    BlockingQueue<QueueEntry> buffer = new LinkedBlockingQueue<QueueEntry>(5);
+    Factory factory = new Factory();
+    DecodePipeline pipeline = new DecodePipeline(pool, buffer, factory, 4, 2);
+    for (int i = 1; i <= 12; i++) {
+      pipeline.add(Integer.toString(i).getBytes(), null, i, -1, false);
+    }
+    while (buffer.remainingCapacity() > 0) {
+      Thread.sleep(10);
+    }
+    // lines which are not in the buffer are dropped
+    Assert.assertEquals(pipeline.close(), 7);
+    // nothing is added once closed, even with room in the buffer
+    Assert.assertEquals(buffer.take().getLineNum(), 1);
+    Assert.assertFalse(pipeline.add("13".getBytes(), null, 13, -1, false));
+    Thread.sleep(200);
+    Assert.assertEquals(buffer.size(), 4);
+    Assert.assertEquals(buffer.take().getLineNum(), 2);
+  }
+
+  @Test
+  public void testCloseWithDeferredEntries() throws Exception {
+    BlockingQueue<QueueEntry> buffer = new LinkedBlockingQueue<QueueEntry>(5);
+    Factory factory = new Factory();
+    factory.messagePool = new MessagePool();
+    DecodePipeline pipeline = new DecodePipeline(pool, buffer, factory, 4, 2);
+    for (int i = 1; i <= 12; i++) {
+      pipeline.add(Integer.toString(i).getBytes(), null, i, -1, false);
+    }
+    while (buffer.remainingCapacity() > 0) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(pipeline.close(), 7);
+    // the dropped entries are not decoded
+    Assert.assertEquals(factory.messagePool.getNumAllocations(), 0);
+    QueueEntry entry = buffer.take();
+    Assert.assertTrue(entry.getMessage().isPooled());
+    Assert.assertEquals(factory.messagePool.getOutstanding(), 1);
+    entry.release();
+    Assert.assertEquals(factory.messagePool.getOutstanding(), 0);
+  }
+}
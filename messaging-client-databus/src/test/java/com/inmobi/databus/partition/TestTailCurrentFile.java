@@ -0,0 +1,123 @@
+package com.inmobi.databus.partition;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.AfterTest;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.inmobi.databus.Cluster;
+import com.inmobi.databus.readers.CollectorStreamReader;
+import com.inmobi.messaging.consumer.databus.DataEncodingType;
+import com.inmobi.messaging.consumer.databus.QueueEntry;
+import com.inmobi.messaging.consumer.databus.StreamType;
+import com.inmobi.messaging.consumer.util.DatabusUtil;
+import com.inmobi.messaging.consumer.util.MessageUtil;
+import com.inmobi.messaging.consumer.util.TestUtil;
+import com.inmobi.messaging.metrics.CollectorReaderStatsExposer;
+
+/**
+ * Reads the collector file being written on the local file system, keeping it
+ * open while waiting for flushes, and moves on once the file is moved to the
+ * local stream.
+ */
+public class TestTailCurrentFile {
+  private static final String testStream = "testclient";
+  private static final String collectorName = "collector1";
+  private static final String clusterName = "testCluster";
+
+  private LinkedBlockingQueue<QueueEntry> buffer =
+      new LinkedBlockingQueue<QueueEntry>(1000);
+
+  private FileSystem fs;
+  private Cluster cluster;
+  private Path collectorDir;
+  private Path streamsLocalDir;
+  private int msgIndex = 300;
+  private PartitionReader preader;
+  private PartitionId partitionId = new PartitionId(clusterName, collectorName);
+
+  private String currentScribeFile = TestUtil.files[3];
+  private String nextScribeFile = TestUtil.files[5];
+  private Configuration conf = new Configuration();
+
+  private void writeMessages(OutputStream out, int num) throws IOException {
+    for (int i = 0; i < num; i++) {
+      out.write(Base64.encodeBase64(
+          MessageUtil.constructMessage(msgIndex).getBytes()));
+      out.write('\n');
+      msgIndex++;
+    }
+    out.flush();
+  }
+
+  @BeforeTest
+  public void setup() throws Exception {
+    cluster = TestUtil.setupLocalCluster(this.getClass().getSimpleName(),
+        testStream, partitionId, null, null, 0);
+    collectorDir = DatabusUtil.getCollectorStreamDir(
+        new Path(cluster.getRootDir()), testStream, collectorName);
+    streamsLocalDir = DatabusUtil.getStreamDir(StreamType.LOCAL,
+        new Path(cluster.getRootDir()), testStream);
+    fs = FileSystem.get(cluster.getHadoopConf());
+  }
+
+  @AfterTest
+  public void cleanup() throws IOException {
+    TestUtil.cleanupCluster(cluster);
+  }
+
+  @Test
+  public void testTailCurrentFile() throws Exception {
+    CollectorReaderStatsExposer prMetrics = new CollectorReaderStatsExposer(
+        testStream, "c1", partitionId.toString());
+    preader = new PartitionReader(partitionId, null, conf, fs,
+        collectorDir, streamsLocalDir, buffer, testStream,
+        CollectorStreamReader.getDateFromCollectorFile(currentScribeFile), 1000,
+        1000, DataEncodingType.BASE64, prMetrics);
+    preader.setTailCollectorFiles(true);
+    preader.start();
+    Assert.assertTrue(buffer.isEmpty());
+
+    // appended as a collector does, without going through the file system
+    Path currentPath = new Path(collectorDir, currentScribeFile);
+    OutputStream out = new FileOutputStream(
+        new File(currentPath.toUri().getPath()));
+    writeMessages(out, 10);
+    TestUtil.assertBuffer(CollectorStreamReader.getCollectorFile(
+        currentScribeFile), 4, 0, 10, partitionId, buffer, true);
+    writeMessages(out, 20);
+    TestUtil.assertBuffer(CollectorStreamReader.getCollectorFile(
+        currentScribeFile), 4, 10, 20, partitionId, buffer, true);
+    Assert.assertTrue(buffer.isEmpty());
+    // the appended data is read from the stream opened first
+    Assert.assertEquals(prMetrics.getFileOpens(), 1);
+    Assert.assertTrue(prMetrics.getWaitTimeInSameFile() > 0);
+    out.close();
+
+    // the file goes to the local stream, and the next one is created
+    TestUtil.moveFileToStreamLocal(fs, testStream, collectorName, cluster,
+        collectorDir, currentScribeFile);
+    MessageUtil.createMessageFile(nextScribeFile, fs, collectorDir, 500);
+    TestUtil.assertBuffer(CollectorStreamReader.getCollectorFile(
+        nextScribeFile), 6, 0, 100, partitionId, buffer, true);
+    Assert.assertTrue(buffer.isEmpty());
+    Assert.assertEquals(((CollectorReader) preader.getReader())
+        .getReader().getClass().getName(),
+        CollectorStreamReader.class.getName());
+    preader.close();
+    Assert.assertEquals(prMetrics.getMessagesReadFromSource(), 130);
+    Assert.assertEquals(prMetrics.getMessagesAddedToBuffer(), 130);
+    Assert.assertEquals(prMetrics.getSwitchesFromCollectorToLocal(), 1);
+    Assert.assertEquals(prMetrics.getSwitchesFromLocalToCollector(), 1);
+  }
+}
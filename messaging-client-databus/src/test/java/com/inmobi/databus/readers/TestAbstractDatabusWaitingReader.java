@@ -2,6 +2,9 @@ package com.inmobi.databus.readers;
 
 import java.io.IOException;
 import java.util.Calendar;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.hadoop.conf.Configuration;
@@ -144,6 +147,7 @@ public abstract class TestAbstractDatabusWaitingReader {
     Assert.assertEquals(metrics.getMessagesReadFromSource(), 300);
     Assert.assertEquals(metrics.getWaitTimeUnitsNewFile(), 0);
     Assert.assertTrue(metrics.getCumulativeNanosForFetchMessage() > 0);
+    Assert.assertEquals(metrics.getFileOpens(), 3);
   }
 
   public void testReadFromCheckpoint() throws Exception {
@@ -190,4 +194,73 @@ public abstract class TestAbstractDatabusWaitingReader {
     Assert.assertTrue(metrics.getCumulativeNanosForFetchMessage() > 0);
   }
 
+  public void testReadWithPrefetch() throws Exception {
+    PartitionReaderStatsExposer metrics = new PartitionReaderStatsExposer(
+        testStream, "c1", partitionId.toString());
+    lreader = new DatabusStreamWaitingReader(partitionId,
+        fs, getStreamsDir(), inputFormatClass, conf, 1000, metrics, false);
+    lreader.setPrefetch(2, 10);
+    lreader.build(DatabusStreamWaitingReader.getDateFromStreamDir(streamDir,
+        finalFiles[0].getParent()));
+    lreader.initFromStart();
+    lreader.openStream();
+    readFile(lreader, 0, 0, finalFiles[0], encoded);
+    readFile(lreader, 1, 0, finalFiles[1], encoded);
+    readFile(lreader, 2, 0, finalFiles[2], encoded);
+    lreader.close();
+    Assert.assertEquals(metrics.getHandledExceptions(), 0);
+    Assert.assertEquals(metrics.getMessagesReadFromSource(), 300);
+    Assert.assertEquals(metrics.getPrefetchedFiles(), 2);
+  }
+
+  public void testReadWithBackfill() throws Exception {
+    PartitionReaderStatsExposer metrics = new PartitionReaderStatsExposer(
+        testStream, "c1", partitionId.toString());
+    lreader = new DatabusStreamWaitingReader(partitionId,
+        fs, getStreamsDir(), inputFormatClass, conf, 1000, metrics, false);
+    // all the files are behind
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    lreader.setBackfill(1, 2, pool, new Semaphore(100));
+    lreader.build(DatabusStreamWaitingReader.getDateFromStreamDir(streamDir,
+        finalFiles[0].getParent()));
+    lreader.initFromStart();
+    lreader.openStream();
+    readFile(lreader, 0, 0, finalFiles[0], encoded);
+    readFile(lreader, 1, 0, finalFiles[1], encoded);
+    readFile(lreader, 2, 0, finalFiles[2], encoded);
+    lreader.close();
+    pool.shutdown();
+    Assert.assertEquals(metrics.getHandledExceptions(), 0);
+    Assert.assertEquals(metrics.getMessagesReadFromSource(), 300);
+    Assert.assertEquals(metrics.getBackfilledFiles(), 2);
+    Assert.assertEquals(metrics.getPrefetchedFiles(), 0);
+  }
+
+  public void testIncrementalListing() throws Exception {
+    PartitionReaderStatsExposer metrics = new PartitionReaderStatsExposer(
+        testStream, "c1", partitionId.toString());
+    lreader = new DatabusStreamWaitingReader(partitionId,
+        fs, getStreamsDir(), inputFormatClass, conf, 1000, metrics, false);
+    lreader.build(DatabusStreamWaitingReader.getDateFromStreamDir(streamDir,
+        finalFiles[0].getParent()));
+    long fullListingCalls = metrics.getLastListingFsCalls();
+    Assert.assertTrue(fullListingCalls > 0);
+
+    // listed minutes are not listed again
+    lreader.build();
+    Assert.assertTrue(metrics.getLastListingFsCalls() < fullListingCalls);
+    lreader.build(DatabusStreamWaitingReader.getDateFromStreamDir(streamDir,
+        finalFiles[1].getParent()));
+    Assert.assertTrue(metrics.getLastListingFsCalls() < fullListingCalls);
+    Assert.assertEquals(metrics.getListings(), 3);
+
+    // files before the build time are dropped, later ones are kept
+    lreader.initFromStart();
+    Assert.assertEquals(lreader.getCurrentFile(), finalFiles[1]);
+    lreader.initializeCurrentFile(
+        DatabusStreamWaitingReader.getDateFromStreamDir(streamDir,
+        finalFiles[2].getParent()));
+    Assert.assertEquals(lreader.getCurrentFile(), finalFiles[2]);
+    lreader.close();
+  }
 }
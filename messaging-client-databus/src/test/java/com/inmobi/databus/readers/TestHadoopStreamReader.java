@@ -43,6 +43,16 @@ public class TestHadoopStreamReader extends TestAbstractDatabusWaitingReader{
     super.testReadFromStart();
   }
 
+  @Test
+  public void testReadWithPrefetch() throws Exception {
+    super.testReadWithPrefetch();
+  }
+
+  @Test
+  public void testReadWithBackfill() throws Exception {
+    super.testReadWithBackfill();
+  }
+
   @Test
   public void testReadFromCheckpoint() throws Exception {
     super.testReadFromCheckpoint();
@@ -53,6 +63,11 @@ public class TestHadoopStreamReader extends TestAbstractDatabusWaitingReader{
     super.testReadFromTimeStamp();
   }
 
+  @Test
+  public void testIncrementalListing() throws Exception {
+    super.testIncrementalListing();
+  }
+
   @Override
   Path getStreamsDir() {
     return streamDir;
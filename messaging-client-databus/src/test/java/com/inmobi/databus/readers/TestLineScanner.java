@@ -0,0 +1,64 @@
+package com.inmobi.databus.readers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestLineScanner {
+
+  private static LineScanner scan(String data, int bufferSize) {
+    LineScanner scanner = new LineScanner(bufferSize);
+    scanner.reset(new ByteArrayInputStream(data.getBytes()), 0);
+    return scanner;
+  }
+
+  private static void assertLine(byte[] line, String expected) {
+    Assert.assertNotNull(line);
+    Assert.assertEquals(new String(line), expected);
+  }
+
+  @Test
+  public void testLinesAndOffsets() throws IOException {
+    // small buffer, so that lines and terminators span refills
+    LineScanner scanner = scan("first\nsecond\r\nthird\rfourth line\n\n", 4);
+    assertLine(scanner.readLine(false), "first");
+    Assert.assertEquals(scanner.getPosition(), 6);
+    assertLine(scanner.readLine(false), "second");
+    Assert.assertEquals(scanner.getPosition(), 14);
+    assertLine(scanner.readLine(false), "third");
+    Assert.assertEquals(scanner.getPosition(), 20);
+    assertLine(scanner.readLine(false), "fourth line");
+    Assert.assertEquals(scanner.getPosition(), 32);
+    assertLine(scanner.readLine(false), "");
+    Assert.assertEquals(scanner.getPosition(), 33);
+    Assert.assertNull(scanner.readLine(true));
+    Assert.assertEquals(scanner.getPosition(), 33);
+  }
+
+  @Test
+  public void testPartialLine() throws IOException {
+    LineScanner scanner = scan("complete\npartial", 1024);
+    assertLine(scanner.readLine(false), "complete");
+    Assert.assertNull(scanner.readLine(false));
+    Assert.assertEquals(scanner.getPosition(), 9);
+
+    scanner = scan("complete\npartial", 1024);
+    scanner.readLine(false);
+    assertLine(scanner.readLine(true), "partial");
+    Assert.assertEquals(scanner.getPosition(), 16);
+    Assert.assertNull(scanner.readLine(true));
+  }
+
+  @Test
+  public void testBinaryBytes() throws IOException {
+    byte[] data = new byte[] {(byte) 0xff, (byte) 0xfe, 0, (byte) 0x80, '\n'};
+    LineScanner scanner = new LineScanner(2);
+    scanner.reset(new ByteArrayInputStream(data), 100);
+    byte[] line = scanner.readLine(false);
+    Assert.assertEquals(line, new byte[] {(byte) 0xff, (byte) 0xfe, 0,
+        (byte) 0x80});
+    Assert.assertEquals(scanner.getPosition(), 105);
+  }
+}
@@ -0,0 +1,85 @@
+package com.inmobi.databus.readers;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestListingCache {
+
+  private static class CountingLister implements ListingCache.Lister {
+    private final AtomicInteger numCalls = new AtomicInteger(0);
+
+    @Override
+    public FileStatus[] list(Path dir) throws IOException {
+      numCalls.incrementAndGet();
+      try {
+        // let the other readers miss the directory meanwhile
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return new FileStatus[0];
+    }
+  }
+
+  @Test
+  public void testConcurrentMisses() throws Exception {
+    final ListingCache cache = new ListingCache(60000);
+    final CountingLister lister = new CountingLister();
+    final Path dir = new Path("file:///tmp/stream/2012/12/12/12/12");
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] readers = new Thread[8];
+    for (int i = 0; i < readers.length; i++) {
+      readers[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            cache.get(dir, lister, 0);
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      readers[i].start();
+    }
+    start.countDown();
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    Assert.assertEquals(lister.numCalls.get(), 1);
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    ListingCache cache = new ListingCache(200);
+    CountingLister lister = new CountingLister();
+    Path dir = new Path("file:///tmp/stream/2012/12/12/12/12");
+    cache.get(dir, lister, 0);
+    cache.get(dir, lister, 0);
+    Assert.assertEquals(lister.numCalls.get(), 1);
+    // listings are timed when they start
+    Thread.sleep(160);
+    cache.get(dir, lister, 0);
+    Assert.assertEquals(lister.numCalls.get(), 2);
+  }
+
+  @Test
+  public void testListedAfter() throws Exception {
+    ListingCache cache = new ListingCache(60000);
+    CountingLister lister = new CountingLister();
+    Path dir = new Path("file:///tmp/stream/2012/12/12/12/12");
+    cache.get(dir, lister, 0);
+    long seen = System.currentTimeMillis();
+    // the listing started before is too old
+    Assert.assertTrue(cache.get(dir, lister, seen).getTime() >= seen);
+    Assert.assertEquals(lister.numCalls.get(), 2);
+    cache.get(dir, lister, seen);
+    Assert.assertEquals(lister.numCalls.get(), 2);
+  }
+}
@@ -0,0 +1,75 @@
+package com.inmobi.databus.readers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.AfterTest;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+public class TestLocalFileWatcher {
+
+  private final File dir = new File("/tmp/test/localfilewatcher");
+  private final File file = new File(dir, "file");
+
+  @BeforeTest
+  public void setup() {
+    cleanup();
+    dir.mkdirs();
+  }
+
+  @AfterTest
+  public void cleanup() {
+    file.delete();
+    dir.delete();
+  }
+
+  private void appendLater(final long delay) {
+    new Thread() {
+      public void run() {
+        try {
+          Thread.sleep(delay);
+          FileOutputStream out = new FileOutputStream(file, true);
+          try {
+            out.write("line\n".getBytes());
+          } finally {
+            out.close();
+          }
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }.start();
+  }
+
+  @Test
+  public void testWaitForChange() throws Exception {
+    Path path = new Path(file.getAbsolutePath());
+    // creation of the file
+    appendLater(50);
+    long start = System.currentTimeMillis();
+    Assert.assertTrue(LocalFileWatcher.waitForChange(
+        Collections.singletonList(path), 10000));
+    Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+
+    // append to the file
+    appendLater(50);
+    start = System.currentTimeMillis();
+    Assert.assertTrue(LocalFileWatcher.waitForChange(
+        Collections.singletonList(path), 10000));
+    Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+  }
+
+  @Test
+  public void testTimeout() throws IOException, InterruptedException {
+    Path path = new Path(dir.getAbsolutePath(), "missing");
+    long start = System.currentTimeMillis();
+    Assert.assertFalse(LocalFileWatcher.waitForChange(
+        Collections.singletonList(path), 100));
+    Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+  }
+}
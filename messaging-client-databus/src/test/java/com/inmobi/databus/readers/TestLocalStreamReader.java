@@ -44,6 +44,16 @@ public class TestLocalStreamReader extends TestAbstractDatabusWaitingReader{
     super.testReadFromStart();
   }
 
+  @Test
+  public void testReadWithPrefetch() throws Exception {
+    super.testReadWithPrefetch();
+  }
+
+  @Test
+  public void testReadWithBackfill() throws Exception {
+    super.testReadWithBackfill();
+  }
+
   @Test
   public void testReadFromCheckpoint() throws Exception {
     super.testReadFromCheckpoint();
@@ -0,0 +1,83 @@
+package com.inmobi.databus.readers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterTest;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+public class TestMappedLineReader {
+
+  private final File file = new File("/tmp/test/mappedlinereader/file");
+
+  @BeforeTest
+  public void setup() throws IOException {
+    file.getParentFile().mkdirs();
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write("abc\ndef\r\n\rghi\rjkl".getBytes());
+    } finally {
+      out.close();
+    }
+  }
+
+  @AfterTest
+  public void cleanup() {
+    file.delete();
+    file.getParentFile().delete();
+  }
+
+  private void assertLine(MappedLineReader reader, String line,
+      long position) {
+    Assert.assertEquals(new String(reader.readLine()), line);
+    Assert.assertEquals(reader.getPosition(), position);
+  }
+
+  @Test
+  public void testReadLines() throws IOException {
+    MappedLineReader reader = MappedLineReader.open(file, 0);
+    Assert.assertEquals(reader.getPosition(), 0);
+    assertLine(reader, "abc", 4);
+    assertLine(reader, "def", 9);
+    assertLine(reader, "", 10);
+    assertLine(reader, "ghi", 14);
+    // the last line is returned without terminator
+    assertLine(reader, "jkl", 17);
+    Assert.assertNull(reader.readLine());
+    reader.close();
+  }
+
+  @Test
+  public void testOpenAtOffset() throws IOException {
+    // at the start of a line
+    MappedLineReader reader = MappedLineReader.open(file, 4);
+    Assert.assertEquals(reader.getPosition(), 4);
+    assertLine(reader, "def", 9);
+    reader.close();
+
+    // within a line, which is skipped
+    reader = MappedLineReader.open(file, 5);
+    Assert.assertEquals(reader.getPosition(), 9);
+    assertLine(reader, "", 10);
+    reader.close();
+
+    // at the end of the file
+    reader = MappedLineReader.open(file, 17);
+    Assert.assertNull(reader.readLine());
+    reader.close();
+  }
+
+  @Test
+  public void testClose() throws IOException {
+    MappedLineReader reader = MappedLineReader.open(file, 0);
+    byte[] line = reader.readLine();
+    reader.close();
+    // the lines read stay valid once the file is unmapped
+    Assert.assertEquals(new String(line), "abc");
+    Assert.assertNull(reader.readLine());
+    reader.close();
+  }
+}
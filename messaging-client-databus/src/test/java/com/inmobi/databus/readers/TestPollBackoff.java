@@ -0,0 +1,34 @@
+package com.inmobi.databus.readers;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestPollBackoff {
+
+  @Test
+  public void testBackoff() throws InterruptedException {
+    PollBackoff backoff = new PollBackoff(100);
+    backoff.setMaxWait(500);
+    Assert.assertEquals(backoff.nextWait(), 100);
+    Assert.assertEquals(backoff.nextWait(), 200);
+    Assert.assertEquals(backoff.nextWait(), 400);
+    Assert.assertEquals(backoff.nextWait(), 500);
+    Assert.assertEquals(backoff.nextWait(), 500);
+    Thread.sleep(10);
+    Assert.assertTrue(backoff.found() >= 10);
+
+    // waits start again from the initial wait once data is found
+    Assert.assertEquals(backoff.found(), -1);
+    Assert.assertEquals(backoff.nextWait(), 100);
+  }
+
+  @Test
+  public void testNoBackoff() {
+    PollBackoff backoff = new PollBackoff(100);
+    Assert.assertEquals(backoff.nextWait(), 100);
+    Assert.assertEquals(backoff.nextWait(), 100);
+    backoff.setMaxWait(50);
+    Assert.assertEquals(backoff.nextWait(), 100);
+    Assert.assertEquals(backoff.nextWait(), 100);
+  }
+}
@@ -1,12 +1,17 @@
 package com.inmobi.messaging.consumer.databus;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.inmobi.databus.files.CollectorFile;
 import com.inmobi.databus.partition.PartitionCheckpoint;
 import com.inmobi.databus.partition.PartitionId;
 import com.inmobi.databus.readers.CollectorStreamReader;
@@ -42,4 +47,106 @@ public class TestCheckpointSerialization {
     Assert.assertEquals(map_cp2.get(id2), pcp2);
     Assert.assertNull(map_cp2.get(id3));
   }
+
+  @Test
+  public void testOffset() throws IOException {
+    Map<PartitionId, PartitionCheckpoint> partitionsChkPoint =
+        new HashMap<PartitionId, PartitionCheckpoint>();
+    PartitionId id1 = new PartitionId("cluster1", "collector1");
+    PartitionCheckpoint pcp1 = new PartitionCheckpoint(
+        CollectorStreamReader.getCollectorFile(TestUtil.files[0]), 100, 2345);
+    partitionsChkPoint.put(id1, pcp1);
+    Checkpoint ckPoint = new Checkpoint(
+        new Checkpoint(partitionsChkPoint).toBytes());
+    PartitionCheckpoint read = ckPoint.getPartitionsCheckpoint().get(id1);
+    Assert.assertEquals(read, pcp1);
+    Assert.assertEquals(read.getOffset(), 2345);
+  }
+
+  private static QueueEntry entry(PartitionId id, CollectorFile file,
+      long lineNum, boolean lastInFile) {
+    QueueEntry entry = new QueueEntry(null, id, 0, file, lineNum, -1);
+    entry.setLastInFile(lastInFile);
+    return entry;
+  }
+
+  @Test
+  public void testReplayProgress() throws IOException {
+    PartitionId id1 = new PartitionId("cluster1", "replay0");
+    PartitionId id2 = new PartitionId("cluster1", "replay1");
+    List<CollectorFile> files = new ArrayList<CollectorFile>();
+    for (int i = 0; i < 4; i++) {
+      files.add(CollectorStreamReader.getCollectorFile(TestUtil.files[i]));
+    }
+    Checkpoint ckPoint = new Checkpoint(
+        new HashMap<PartitionId, PartitionCheckpoint>());
+    Assert.assertNull(ckPoint.getReplayProgress());
+    ReplayProgress progress = new ReplayProgress(1000, 2000);
+    ckPoint.setReplayProgress(progress);
+    progress.setFiles("cluster1", files);
+
+    // only the last entry of a file finishes it
+    ckPoint.set(entry(id2, files.get(1), 10, false));
+    Assert.assertFalse(progress.isFinished("cluster1", files.get(1)));
+    ckPoint.set(entry(id2, files.get(1), 20, true));
+    Assert.assertTrue(progress.isFinished("cluster1", files.get(1)));
+    Assert.assertFalse(progress.isFinished("cluster1", files.get(0)));
+    Assert.assertEquals(progress.getNumFinishedFiles(), 1);
+    // files finished in order are only kept as the watermark
+    ckPoint.set(entry(id1, files.get(0), 20, true));
+    Assert.assertTrue(progress.isFinished("cluster1", files.get(0)));
+    Assert.assertEquals(progress.getNumFinishedFiles(), 0);
+    ckPoint.set(entry(id2, files.get(3), 20, true));
+    Assert.assertEquals(progress.getNumFinishedFiles(), 1);
+    // moving to another file does not finish the previous one
+    ckPoint.set(entry(id1, files.get(2), 5, false));
+    Assert.assertFalse(progress.isFinished("cluster1", files.get(2)));
+    Assert.assertFalse(progress.isFinished("cluster2", files.get(0)));
+
+    Checkpoint read = new Checkpoint(ckPoint.toBytes());
+    Assert.assertEquals(read, ckPoint);
+    ReplayProgress readProgress = read.getReplayProgress();
+    Assert.assertEquals(readProgress.getStartTime(), 1000);
+    Assert.assertEquals(readProgress.getEndTime(), 2000);
+    Assert.assertTrue(readProgress.isFinished("cluster1", files.get(1)));
+    Assert.assertTrue(readProgress.isFinished("cluster1", files.get(3)));
+    Assert.assertFalse(readProgress.isFinished("cluster1", files.get(2)));
+    // the watermark goes on once the files are listed again
+    readProgress.setFiles("cluster1", files);
+    readProgress.fileFinished("cluster1", files.get(2));
+    Assert.assertEquals(readProgress.getNumFinishedFiles(), 0);
+
+    Checkpoint copy = new Checkpoint(ckPoint);
+    Assert.assertEquals(copy, ckPoint);
+    copy.getReplayProgress().fileFinished("cluster1", files.get(2));
+    Assert.assertFalse(progress.isFinished("cluster1", files.get(2)));
+  }
+
+  @Test
+  public void testUnversionedFormat() throws IOException {
+    PartitionId id1 = new PartitionId("cluster1", "collector1");
+    PartitionId id2 = new PartitionId("cluster1", "collector2");
+    CollectorFile file = CollectorStreamReader.getCollectorFile(
+        TestUtil.files[0]);
+
+    // checkpoint as written before the format was versioned
+    ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bOut);
+    out.writeInt(2);
+    id1.write(out);
+    out.writeBoolean(true);
+    out.writeUTF(file.getClass().getCanonicalName());
+    file.write(out);
+    out.writeLong(100);
+    id2.write(out);
+    out.writeBoolean(false);
+    out.close();
+
+    Checkpoint ckPoint = new Checkpoint(bOut.toByteArray());
+    PartitionCheckpoint pcp1 = ckPoint.getPartitionsCheckpoint().get(id1);
+    Assert.assertEquals(pcp1, new PartitionCheckpoint(file, 100));
+    Assert.assertEquals(pcp1.getOffset(), PartitionCheckpoint.UNKNOWN_OFFSET);
+    Assert.assertTrue(ckPoint.getPartitionsCheckpoint().containsKey(id2));
+    Assert.assertNull(ckPoint.getPartitionsCheckpoint().get(id2));
+  }
 }
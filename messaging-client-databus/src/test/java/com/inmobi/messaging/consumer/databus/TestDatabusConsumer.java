@@ -19,6 +19,12 @@ public class TestDatabusConsumer extends TestAbstractDatabusConsumer {
   private String ck3 = "/tmp/test/databustest2/checkpoint1";
   private String ck4 = "/tmp/test/databustest2/checkpoint2";
   private String ck5 = "/tmp/test/databustest2/checkpoint3";
+  private String ck6 = "/tmp/test/databustest1/checkpoint3";
+  private String ck7 = "/tmp/test/databustest1/checkpoint4";
+  private String ck8 = "/tmp/test/databustest2/checkpoint4";
+  private String ck9 = "/tmp/test/databustest1/checkpoint5";
+  private String ck10 = "/tmp/test/databustest1/checkpoint6";
+  private String ck11 = "/tmp/test/databustest2/checkpoint5";
 
   ClientConfig loadConfig() {
     return ClientConfig.loadFromClasspath(
@@ -53,6 +59,62 @@ public class TestDatabusConsumer extends TestAbstractDatabusConsumer {
         CollectorStreamReader.getDateFromCollectorFile(dataFiles[1]), false);
   }
 
+  @Test
+  public void testTimedAndBatchNext() throws Exception {
+    ClientConfig config = loadConfig();
+    config.set(DatabusConsumerConfig.databusRootDirsConfig,
+        rootDirs[0].toUri().toString());
+    config.set(DatabusConsumerConfig.checkpointDirConfig, ck6);
+    ConsumerUtil.testTimedAndBatchNext(config, testStream, consumerName, false);
+  }
+
+  @Test
+  public void testHandler() throws Exception {
+    ClientConfig config = loadConfig();
+    config.set(DatabusConsumerConfig.databusRootDirsConfig,
+        rootDirs[0].toUri().toString() + "," + rootDirs[1].toUri().toString());
+    config.set(DatabusConsumerConfig.checkpointDirConfig, ck8);
+    ConsumerUtil.testHandler(config, testStream, consumerName, 2,
+        numDataFiles * numMessagesPerFile);
+  }
+
+  @Test
+  public void testHandlerFailure() throws Exception {
+    ClientConfig config = loadConfig();
+    config.set(DatabusConsumerConfig.databusRootDirsConfig,
+        rootDirs[0].toUri().toString());
+    config.set(DatabusConsumerConfig.checkpointDirConfig, ck7);
+    ConsumerUtil.testHandlerFailure(config, testStream, consumerName);
+  }
+
+  @Test
+  public void testPublisher() throws Exception {
+    ClientConfig config = loadConfig();
+    config.set(DatabusConsumerConfig.databusRootDirsConfig,
+        rootDirs[0].toUri().toString());
+    config.set(DatabusConsumerConfig.checkpointDirConfig, ck9);
+    ConsumerUtil.testPublisher(config, testStream, consumerName);
+  }
+
+  @Test
+  public void testPublisherWithIdlePartition() throws Exception {
+    ClientConfig config = loadConfig();
+    config.set(DatabusConsumerConfig.databusRootDirsConfig,
+        rootDirs[0].toUri().toString() + "," + rootDirs[1].toUri().toString());
+    config.set(DatabusConsumerConfig.checkpointDirConfig, ck11);
+    ConsumerUtil.testPublisherWithIdlePartition(config, testStream,
+        consumerName, 2 * numDataFiles * numMessagesPerFile);
+  }
+
+  @Test
+  public void testAutoCommit() throws Exception {
+    ClientConfig config = loadConfig();
+    config.set(DatabusConsumerConfig.databusRootDirsConfig,
+        rootDirs[0].toUri().toString());
+    config.set(DatabusConsumerConfig.checkpointDirConfig, ck10);
+    ConsumerUtil.testAutoCommit(config, testStream, consumerName);
+  }
+
   @Test
   public void testMultipleClusters() throws Exception {
     ClientConfig config = loadConfig();
@@ -138,6 +138,20 @@ public class TestDatabusConsumerMultipleCollectors
         false);
   }
 
+  @Test
+  public void testCollectorStreamPartitionedBuffer() throws Exception {
+    ClientConfig config = loadConfig();
+    config.set(DatabusConsumerConfig.databusRootDirsConfig,
+        rootDirs[0].toString() + "," + rootDirs[1].toString());
+    config.set(DatabusConsumerConfig.checkpointDirConfig,
+        "/tmp/test/databustest5/checkpoint5");
+    config.set(DatabusConsumerConfig.databusStreamType,
+        StreamType.COLLECTOR.name());
+    config.set(DatabusConsumerConfig.partitionedBufferConfig, "true");
+    ConsumerUtil.assertMessages(config, testStream, consumerName, 2, 2, 4, 100,
+        false);
+  }
+
   @AfterTest
   public void cleanup() throws IOException {
     super.cleanup();
@@ -0,0 +1,109 @@
+package com.inmobi.messaging.consumer.databus;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TestLocalJournalCheckpointProvider {
+
+  private final File dir = new File("/tmp/test/journalcheckpoint");
+
+  @BeforeMethod
+  public void setup() {
+    cleanup();
+  }
+
+  @AfterMethod
+  public void cleanup() {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  private static byte[] checkpoint(int i) {
+    return ("checkpoint" + i).getBytes();
+  }
+
+  @Test
+  public void testReadLatest() throws Exception {
+    LocalJournalCheckpointProvider provider =
+        new LocalJournalCheckpointProvider(dir.getPath());
+    Assert.assertNull(provider.read("c1_topic"));
+    for (int i = 0; i < 100; i++) {
+      provider.checkpoint("c1_topic", checkpoint(i));
+    }
+    provider.checkpoint("c2_topic", checkpoint(1000));
+    Assert.assertEquals(provider.read("c1_topic"), checkpoint(99));
+    provider.close();
+
+    provider = new LocalJournalCheckpointProvider(dir.getPath());
+    Assert.assertEquals(provider.read("c1_topic"), checkpoint(99));
+    Assert.assertEquals(provider.read("c2_topic"), checkpoint(1000));
+    provider.checkpoint("c1_topic", checkpoint(100));
+    Assert.assertEquals(provider.read("c1_topic"), checkpoint(100));
+    provider.close();
+  }
+
+  @Test
+  public void testCompaction() throws Exception {
+    // room for a few records only
+    LocalJournalCheckpointProvider provider =
+        new LocalJournalCheckpointProvider(dir.getPath(), 64, false);
+    for (int i = 0; i < 1000; i++) {
+      provider.checkpoint("c1_topic", checkpoint(i));
+      Assert.assertEquals(provider.read("c1_topic"), checkpoint(i));
+    }
+    // records larger than a segment are kept as well
+    byte[] large = new byte[1000];
+    large[999] = 1;
+    provider.checkpoint("c1_topic", large);
+    provider.close();
+    File journal = new File(dir, "c1_topic"
+        + LocalJournalCheckpointProvider.JOURNAL_SUFFIX);
+    Assert.assertTrue(journal.length() < 4096);
+    Assert.assertFalse(new File(journal.getPath() + ".tmp").exists());
+
+    provider = new LocalJournalCheckpointProvider(dir.getPath(), 64, false);
+    Assert.assertEquals(provider.read("c1_topic"), large);
+    provider.checkpoint("c1_topic", checkpoint(1));
+    provider.close();
+    provider = new LocalJournalCheckpointProvider(dir.getPath(), 64, false);
+    Assert.assertEquals(provider.read("c1_topic"), checkpoint(1));
+    provider.close();
+  }
+
+  @Test
+  public void testTornRecord() throws Exception {
+    LocalJournalCheckpointProvider provider =
+        new LocalJournalCheckpointProvider(dir.getPath());
+    provider.checkpoint("c1_topic", checkpoint(1));
+    provider.checkpoint("c1_topic", checkpoint(2));
+    provider.close();
+
+    // corrupt the last byte of the second record
+    File journal = new File(dir, "c1_topic"
+        + LocalJournalCheckpointProvider.JOURNAL_SUFFIX);
+    int recordSize = 8 + checkpoint(1).length;
+    RandomAccessFile file = new RandomAccessFile(journal, "rw");
+    file.seek(4 + 2 * recordSize - 5);
+    file.write(0x7f);
+    file.close();
+
+    provider = new LocalJournalCheckpointProvider(dir.getPath());
+    Assert.assertEquals(provider.read("c1_topic"), checkpoint(1));
+    // the torn record is overwritten by the next one
+    provider.checkpoint("c1_topic", checkpoint(3));
+    provider.close();
+    provider = new LocalJournalCheckpointProvider(dir.getPath());
+    Assert.assertEquals(provider.read("c1_topic"), checkpoint(3));
+    provider.close();
+  }
+}
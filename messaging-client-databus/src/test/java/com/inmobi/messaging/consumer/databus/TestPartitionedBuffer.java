@@ -0,0 +1,91 @@
+package com.inmobi.messaging.consumer.databus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestPartitionedBuffer {
+
+  @Test
+  public void testCapacitySplit() {
+    PartitionedBuffer<Integer> buffer = new PartitionedBuffer<Integer>(10);
+    BlockingQueue<Integer> p1 = buffer.addPartition();
+    BlockingQueue<Integer> p2 = buffer.addPartition();
+    BlockingQueue<Integer> p3 = buffer.addPartition();
+    buffer.allocate();
+    Assert.assertEquals(buffer.getNumPartitions(), 3);
+    Assert.assertEquals(buffer.remainingCapacity(), 9);
+    for (int i = 0; i < 3; i++) {
+      Assert.assertTrue(p1.offer(i));
+    }
+    // a full partition does not take the space of the others
+    Assert.assertFalse(p1.offer(3));
+    Assert.assertTrue(p2.offer(0));
+    Assert.assertTrue(p3.offer(0));
+    Assert.assertEquals(buffer.size(), 5);
+    try {
+      buffer.addPartition();
+      Assert.fail("Added a partition to an allocated buffer");
+    } catch (IllegalStateException e) {
+    }
+  }
+
+  @Test
+  public void testRoundRobin() {
+    PartitionedBuffer<Integer> buffer = new PartitionedBuffer<Integer>(30);
+    BlockingQueue<Integer> p1 = buffer.addPartition();
+    BlockingQueue<Integer> p2 = buffer.addPartition();
+    BlockingQueue<Integer> p3 = buffer.addPartition();
+    buffer.allocate();
+    for (int i = 0; i < 3; i++) {
+      p1.offer(10 + i);
+      p3.offer(30 + i);
+    }
+    p2.offer(20);
+    int[] expected = {10, 20, 30, 11, 31, 12, 32};
+    for (int e : expected) {
+      Assert.assertEquals(buffer.poll(), Integer.valueOf(e));
+    }
+    Assert.assertNull(buffer.poll());
+    Assert.assertTrue(buffer.isEmpty());
+
+    for (int i = 0; i < 4; i++) {
+      p1.offer(10 + i);
+      p2.offer(20 + i);
+    }
+    List<Integer> drained = new ArrayList<Integer>();
+    Assert.assertEquals(buffer.drainTo(drained, 6), 6);
+    Assert.assertEquals(drained.size(), 6);
+    Assert.assertEquals(buffer.size(), 2);
+  }
+
+  @Test
+  public void testBlocking() throws Exception {
+    PartitionedBuffer<Integer> buffer = new PartitionedBuffer<Integer>(2);
+    final BlockingQueue<Integer> p1 = buffer.addPartition();
+    buffer.allocate();
+    Assert.assertNull(buffer.poll(10, TimeUnit.MILLISECONDS));
+
+    final int numMessages = 1000;
+    Thread producer = new Thread() {
+      public void run() {
+        try {
+          for (int i = 0; i < numMessages; i++) {
+            p1.put(i);
+          }
+        } catch (InterruptedException e) {
+        }
+      }
+    };
+    producer.start();
+    for (int i = 0; i < numMessages; i++) {
+      Assert.assertEquals(buffer.take(), Integer.valueOf(i));
+    }
+    producer.join();
+    Assert.assertTrue(buffer.isEmpty());
+  }
+}
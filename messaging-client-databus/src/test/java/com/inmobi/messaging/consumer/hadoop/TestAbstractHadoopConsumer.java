@@ -19,6 +19,7 @@ public abstract class TestAbstractHadoopConsumer {
   protected String ck3;
   protected String ck4;
   protected String ck5;
+  protected String ck6;
 
   int numMessagesPerFile = 100;
   int numDataFiles;
@@ -105,6 +106,14 @@ public abstract class TestAbstractHadoopConsumer {
         numDataFiles, numMessagesPerFile, true);
   }
 
+  public void testReplay() throws Exception {
+    config.set(HadoopConsumerConfig.rootDirsConfig,
+        rootDirs[0].toString());
+    config.set(HadoopConsumerConfig.checkpointDirConfig, ck6);
+    ConsumerUtil.testReplay(config, testStream, consumerName, 2,
+        numSuffixDirs * numDataFiles * numMessagesPerFile);
+  }
+
   public void cleanup() throws IOException {
     FileSystem lfs = FileSystem.getLocal(conf);
     for (Path rootDir : rootDirs) {
@@ -1,17 +1,30 @@
 package com.inmobi.messaging.consumer.util;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 import org.testng.Assert;
 
 import com.inmobi.messaging.ClientConfig;
 import com.inmobi.messaging.Message;
 import com.inmobi.messaging.consumer.BaseMessageConsumerStatsExposer;
+import com.inmobi.messaging.consumer.MessageHandler;
 import com.inmobi.messaging.consumer.databus.AbstractMessagingDatabusConsumer;
 import com.inmobi.messaging.consumer.databus.Checkpoint;
 import com.inmobi.messaging.consumer.databus.DatabusConsumer;
+import com.inmobi.messaging.consumer.databus.MessageStreamPublisher;
+import com.inmobi.messaging.consumer.databus.MessagingConsumerConfig;
+import com.inmobi.messaging.consumer.databus.ReplayProgress;
 import com.inmobi.messaging.consumer.hadoop.HadoopConsumer;
+import com.inmobi.messaging.consumer.hadoop.HadoopConsumerConfig;
+import com.inmobi.messaging.metrics.DatabusConsumerStatsExposer;
 
 public class ConsumerUtil {
 
@@ -213,6 +226,379 @@ public class ConsumerUtil {
         consumer.getMetrics())).getNumMessagesConsumed(), 60);
   }
 
+  public static void testTimedAndBatchNext(ClientConfig config,
+      String streamName, String consumerName, boolean hadoop)
+          throws Exception {
+    AbstractMessagingDatabusConsumer consumer = createConsumer(hadoop);
+    consumer.init(streamName, consumerName, null, config);
+
+    int i;
+    for (i = 0; i < 20; i++) {
+      Message msg = consumer.next(10, TimeUnit.SECONDS);
+      Assert.assertEquals(getMessage(msg.getData().array(), hadoop),
+          MessageUtil.constructMessage(i));
+    }
+    while (i < 300) {
+      List<Message> batch = consumer.nextBatch(50, 10, TimeUnit.SECONDS);
+      Assert.assertTrue(batch.size() > 0 && batch.size() <= 50);
+      for (Message msg : batch) {
+        Assert.assertEquals(getMessage(msg.getData().array(), hadoop),
+            MessageUtil.constructMessage(i));
+        i++;
+      }
+    }
+    Assert.assertEquals(i, 300);
+    // the stream is exhausted
+    Assert.assertNull(consumer.next(1, TimeUnit.SECONDS));
+    Assert.assertEquals(consumer.nextBatch(50, 1, TimeUnit.SECONDS).size(), 0);
+    consumer.mark();
+    Checkpoint lastCheckpoint = new Checkpoint(
+        consumer.getCurrentCheckpoint().toBytes());
+    consumer.close();
+    Assert.assertEquals(((BaseMessageConsumerStatsExposer)(
+        consumer.getMetrics())).getNumMessagesConsumed(), 300);
+
+    // a new consumer starts after the last message of the last batch
+    consumer = createConsumer(hadoop);
+    consumer.init(streamName, consumerName, null, config);
+    Assert.assertEquals(consumer.getCurrentCheckpoint(), lastCheckpoint);
+    Assert.assertNull(consumer.next(1, TimeUnit.SECONDS));
+    consumer.close();
+  }
+
+  /**
+   * Handler counting messages the way {@link #assertMessages} does: a
+   * message is counted only if it is the next expected one of a partition.
+   */
+  static class CountingHandler implements MessageHandler {
+    final int[] counter;
+    final String failOn;
+    int numHandled = 0;
+
+    CountingHandler(int numCounters, String failOn) {
+      counter = new int[numCounters];
+      this.failOn = failOn;
+    }
+
+    @Override
+    public void handle(Message msg) throws Exception {
+      String msgStr = new String(msg.getData().array());
+      synchronized (this) {
+        numHandled++;
+        for (int m = 0; m < counter.length; m++) {
+          if (msgStr.equals(MessageUtil.constructMessage(counter[m]))) {
+            counter[m]++;
+            break;
+          }
+        }
+        notifyAll();
+      }
+      if (msgStr.equals(failOn)) {
+        throw new Exception("Failing on " + msgStr);
+      }
+    }
+
+    /**
+     * Wait for the messages to be handled and for the consumer to be done
+     * with them, so that its checkpoint covers them.
+     */
+    void waitFor(AbstractMessagingDatabusConsumer consumer, int numMessages)
+        throws InterruptedException {
+      synchronized (this) {
+        while (numHandled < numMessages) {
+          wait();
+        }
+      }
+      // the handler returns before the message is completed
+      while (consumer.getNumMessagesHandled() < numMessages) {
+        Thread.sleep(10);
+      }
+    }
+  }
+
+  public static void testHandler(ClientConfig config, String streamName,
+      String consumerName, int numCounters, int numMessagesPerCounter)
+          throws Exception {
+    AbstractMessagingDatabusConsumer consumer = createConsumer(false);
+    consumer.init(streamName, consumerName, null, config);
+    CountingHandler handler = new CountingHandler(numCounters, null);
+    consumer.registerHandler(handler, 4);
+    Throwable th = null;
+    try {
+      consumer.next();
+    } catch (Throwable t) {
+      th = t;
+    }
+    Assert.assertTrue(th instanceof IllegalStateException);
+
+    handler.waitFor(consumer, numCounters * numMessagesPerCounter);
+    // every partition was handled in order
+    for (int i = 0; i < numCounters; i++) {
+      Assert.assertEquals(handler.counter[i], numMessagesPerCounter);
+    }
+    consumer.mark();
+    Checkpoint lastCheckpoint = new Checkpoint(
+        consumer.getCurrentCheckpoint().toBytes());
+    consumer.close();
+
+    // all the messages are handled, nothing is read again
+    consumer = createConsumer(false);
+    consumer.init(streamName, consumerName, null, config);
+    Assert.assertEquals(consumer.getCurrentCheckpoint(), lastCheckpoint);
+    Assert.assertNull(consumer.next(1, TimeUnit.SECONDS));
+    consumer.close();
+  }
+
+  public static void testHandlerFailure(ClientConfig config, String streamName,
+      String consumerName) throws Exception {
+    AbstractMessagingDatabusConsumer consumer = createConsumer(false);
+    consumer.init(streamName, consumerName, null, config);
+    CountingHandler handler = new CountingHandler(1,
+        MessageUtil.constructMessage(150));
+    consumer.registerHandler(handler, 2);
+    // the failed message is retried, then no more messages are pushed
+    handler.waitFor(consumer, 151);
+    Assert.assertEquals(handler.counter[0], 151);
+    Assert.assertEquals(handler.numHandled, 151
+        + MessagingConsumerConfig.DEFAULT_HANDLER_RETRIES);
+    Throwable th = null;
+    try {
+      consumer.mark();
+    } catch (IOException e) {
+      th = e;
+    }
+    Assert.assertNotNull(th);
+    Assert.assertEquals(consumer.getNumMessagesHandled(), 151);
+    consumer.close();
+
+    // the checkpoint did not move past the failed message
+    consumer = createConsumer(false);
+    consumer.init(streamName, consumerName, null, config);
+    Message msg = consumer.next();
+    Assert.assertEquals(new String(msg.getData().array()),
+        MessageUtil.constructMessage(150));
+    consumer.close();
+  }
+
+  static class CollectingSubscriber implements Subscriber<Message> {
+    final List<String> received = new ArrayList<String>();
+    Subscription subscription;
+    Throwable error;
+    boolean completed = false;
+
+    @Override
+    public synchronized void onSubscribe(Subscription s) {
+      subscription = s;
+    }
+
+    @Override
+    public synchronized void onNext(Message msg) {
+      received.add(new String(msg.getData().array()));
+      notifyAll();
+    }
+
+    @Override
+    public synchronized void onError(Throwable t) {
+      error = t;
+      notifyAll();
+    }
+
+    @Override
+    public synchronized void onComplete() {
+      completed = true;
+      notifyAll();
+    }
+
+    synchronized void waitFor(int numMessages) throws InterruptedException {
+      while (received.size() < numMessages && error == null && !completed) {
+        wait();
+      }
+    }
+
+    /**
+     * @return whether the messages were received within the timeout
+     */
+    synchronized boolean waitFor(int numMessages, long timeoutMillis)
+        throws InterruptedException {
+      long deadline = System.currentTimeMillis() + timeoutMillis;
+      while (received.size() < numMessages && error == null && !completed) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          return false;
+        }
+        wait(remaining);
+      }
+      return received.size() >= numMessages;
+    }
+
+    synchronized void waitForTermination() throws InterruptedException {
+      while (error == null && !completed) {
+        wait();
+      }
+    }
+  }
+
+  public static void testPublisher(ClientConfig config, String streamName,
+      String consumerName) throws Exception {
+    AbstractMessagingDatabusConsumer consumer = createConsumer(false);
+    consumer.init(streamName, consumerName, null, config);
+    MessageStreamPublisher publisher = new MessageStreamPublisher(consumer);
+    CollectingSubscriber subscriber = new CollectingSubscriber();
+    publisher.subscribe(subscriber);
+
+    // nothing is delivered without demand
+    Thread.sleep(500);
+    Assert.assertTrue(subscriber.received.isEmpty());
+    subscriber.subscription.request(10);
+    subscriber.waitFor(10);
+    Thread.sleep(500);
+    Assert.assertEquals(subscriber.received.size(), 10);
+    subscriber.subscription.request(20);
+    subscriber.waitFor(30);
+    for (int i = 0; i < 30; i++) {
+      Assert.assertEquals(subscriber.received.get(i),
+          MessageUtil.constructMessage(i));
+    }
+
+    // only one subscriber is supported
+    CollectingSubscriber second = new CollectingSubscriber();
+    publisher.subscribe(second);
+    Assert.assertTrue(second.error instanceof IllegalStateException);
+
+    // non positive demand is an error
+    subscriber.subscription.request(0);
+    subscriber.waitForTermination();
+    Assert.assertTrue(subscriber.error instanceof IllegalArgumentException);
+    Assert.assertEquals(subscriber.received.size(), 30);
+    consumer.close();
+
+    // subscriber is completed when the consumer is closed
+    consumer = createConsumer(false);
+    consumer.init(streamName, consumerName, null, config);
+    subscriber = new CollectingSubscriber();
+    new MessageStreamPublisher(consumer).subscribe(subscriber);
+    subscriber.subscription.request(Long.MAX_VALUE);
+    subscriber.waitFor(300);
+    Assert.assertEquals(subscriber.received.size(), 300);
+    consumer.close();
+    subscriber.waitForTermination();
+    Assert.assertTrue(subscriber.completed);
+    Assert.assertNull(subscriber.error);
+  }
+
+  /**
+   * Request messages one at a time from several partitions, so that a
+   * partition which has read all its messages waits for new ones while the
+   * others still have messages to deliver.
+   */
+  public static void testPublisherWithIdlePartition(ClientConfig config,
+      String streamName, String consumerName, int numMessages)
+          throws Exception {
+    AbstractMessagingDatabusConsumer consumer = createConsumer(false);
+    consumer.init(streamName, consumerName, null, config);
+    CollectingSubscriber subscriber = new CollectingSubscriber();
+    new MessageStreamPublisher(consumer).subscribe(subscriber);
+    for (int i = 1; i <= numMessages; i++) {
+      subscriber.subscription.request(1);
+      Assert.assertTrue(subscriber.waitFor(i, 10000),
+          "Delivery stalled after " + subscriber.received.size() + " of "
+              + numMessages + " messages");
+    }
+    Assert.assertNull(subscriber.error);
+    consumer.close();
+  }
+
+  public static void testAutoCommit(ClientConfig config, String streamName,
+      String consumerName) throws Exception {
+    config.set(MessagingConsumerConfig.autoCommitConfig, "true");
+    config.set(MessagingConsumerConfig.autoCommitMessagesConfig, "10");
+    AbstractMessagingDatabusConsumer consumer = createConsumer(false);
+    consumer.init(streamName, consumerName, null, config);
+    DatabusConsumerStatsExposer metrics =
+        (DatabusConsumerStatsExposer) consumer.getMetrics();
+    for (int i = 0; i < 25; i++) {
+      Message msg = consumer.next();
+      Assert.assertEquals(getMessage(msg.getData().array(), false),
+          MessageUtil.constructMessage(i));
+    }
+    // snapshots after 10 and 20 messages are written without a mark
+    while (metrics.getCheckpointsWritten() + metrics.getCheckpointsCoalesced()
+        < 2) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(metrics.getCheckpointFailures(), 0);
+
+    // a new consumer starts after the last snapshot
+    config.set(MessagingConsumerConfig.autoCommitConfig, "false");
+    AbstractMessagingDatabusConsumer consumer2 = createConsumer(false);
+    consumer2.init(streamName, consumerName, null, config);
+    Assert.assertEquals(getMessage(consumer2.next().getData().array(), false),
+        MessageUtil.constructMessage(20));
+    consumer2.close();
+
+    // close commits the messages consumed since the last snapshot
+    consumer.close();
+    Assert.assertEquals(metrics.getCheckpointLagMillis(), 0);
+    consumer2 = createConsumer(false);
+    consumer2.init(streamName, consumerName, null, config);
+    Assert.assertEquals(getMessage(consumer2.next().getData().array(), false),
+        MessageUtil.constructMessage(25));
+    consumer2.close();
+  }
+
+  /**
+   * Replay the stream with several readers, stopping half way, and check
+   * that a new consumer reads exactly the remaining messages, even with
+   * files going to other readers.
+   */
+  public static void testReplay(ClientConfig config, String streamName,
+      String consumerName, int numReaders, int totalMessages)
+          throws Exception {
+    config.set(HadoopConsumerConfig.replayReadersConfig,
+        Integer.toString(numReaders));
+    Set<String> messages = new HashSet<String>();
+    AbstractMessagingDatabusConsumer consumer = createConsumer(true);
+    consumer.init(streamName, consumerName, null, config);
+    Assert.assertEquals(consumer.getPartitionReaders().size(), numReaders);
+    for (int i = 0; i < totalMessages / 2; i++) {
+      Message msg = consumer.next();
+      Assert.assertTrue(messages.add(getMessage(msg.getData().array(), true)));
+    }
+    consumer.mark();
+    ReplayProgress progress = consumer.getCurrentCheckpoint()
+        .getReplayProgress();
+    consumer.close();
+
+    // one more reader deals the files out differently
+    config.set(HadoopConsumerConfig.replayReadersConfig,
+        Integer.toString(numReaders + 1));
+    Thread.sleep(10);
+    consumer = createConsumer(true);
+    consumer.init(streamName, consumerName, null, config);
+    // the range of the replay is kept
+    ReplayProgress resumed = consumer.getCurrentCheckpoint()
+        .getReplayProgress();
+    Assert.assertEquals(resumed.getStartTime(), progress.getStartTime());
+    Assert.assertEquals(resumed.getEndTime(), progress.getEndTime());
+    Message msg;
+    while ((msg = consumer.next(2, TimeUnit.SECONDS)) != null) {
+      Assert.assertTrue(messages.add(getMessage(msg.getData().array(), true)));
+    }
+    Assert.assertEquals(messages.size(), totalMessages);
+    for (int i = 0; i < totalMessages; i++) {
+      Assert.assertTrue(messages.contains(MessageUtil.constructMessage(i)));
+    }
+    consumer.mark();
+    consumer.close();
+
+    // every file is done
+    consumer = createConsumer(true);
+    consumer.init(streamName, consumerName, null, config);
+    Assert.assertNull(consumer.next(2, TimeUnit.SECONDS));
+    consumer.close();
+    config.set(HadoopConsumerConfig.replayReadersConfig, "0");
+  }
+
   public static void testMarkAndReset(ClientConfig config, String streamName,
       String consumerName, boolean hadoop) throws Exception {
 
@@ -0,0 +1,62 @@
+package com.inmobi.messaging.consumer.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.codec.binary.Base64;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.inmobi.messaging.Message;
+import com.inmobi.messaging.MessagePool;
+
+public class TestBase64Decoder {
+
+  private static void assertDecoded(String encoded) {
+    byte[] src = encoded.getBytes();
+    Assert.assertEquals(Base64Decoder.decode(src), Base64.decodeBase64(src),
+        encoded);
+  }
+
+  @Test
+  public void testRandomData() {
+    Random random = new Random(42);
+    for (int length = 0; length < 300; length++) {
+      byte[] data = new byte[length];
+      random.nextBytes(data);
+      byte[] encoded = Base64.encodeBase64(data);
+      Assert.assertEquals(Base64Decoder.decode(encoded), data);
+    }
+  }
+
+  @Test
+  public void testSameAsCommonsCodec() {
+    assertDecoded("");
+    assertDecoded("QQ");
+    assertDecoded("QUI");
+    assertDecoded("QUJD");
+    assertDecoded("Q");
+    assertDecoded("QUJDRA==");
+    assertDecoded("QUJD\r\nRA==");
+    assertDecoded("QU JD RA");
+    assertDecoded("QU=JDRA==");
+    assertDecoded("-_-_");
+    assertDecoded("+/+/");
+    assertDecoded("QUJD*RA$$");
+  }
+
+  @Test
+  public void testDecodeIntoPooledMessage() {
+    MessagePool pool = new MessagePool();
+    byte[] data = "pooled message".getBytes();
+    Message msg = Base64Decoder.decode(Base64.encodeBase64(data), pool);
+    ByteBuffer decoded = msg.getData();
+    Assert.assertEquals(decoded.remaining(), data.length);
+    Assert.assertEquals(Arrays.copyOfRange(decoded.array(),
+        decoded.arrayOffset() + decoded.position(),
+        decoded.arrayOffset() + decoded.limit()), data);
+    msg.release();
+    Assert.assertEquals(pool.getOutstanding(), 0);
+  }
+}
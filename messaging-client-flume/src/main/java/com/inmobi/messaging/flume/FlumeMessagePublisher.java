@@ -1,6 +1,7 @@
 package com.inmobi.messaging.flume;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -55,7 +56,7 @@ public class FlumeMessagePublisher extends AbstractMessagePublisher {
   protected void publish(Map<String, String> headers, Message m) {
     // headers.put("streamName", "rr");
     String topic = headers.get(HEADER_TOPIC);
-    Event event = EventBuilder.withBody(m.getData().array(), headers);
+    Event event = EventBuilder.withBody(getBody(m), headers);
     synchronized (queue) {
       if (!queue.offer(event)) {
         // queue is full
@@ -68,6 +69,46 @@ public class FlumeMessagePublisher extends AbstractMessagePublisher {
     }
   }
 
+  @Override
+  protected void publish(Map<String, String> headers, List<Message> msgs) {
+    String topic = headers.get(HEADER_TOPIC);
+    List<Event> events = new ArrayList<Event>(msgs.size());
+    for (Message m : msgs) {
+      events.add(EventBuilder.withBody(getBody(m), headers));
+    }
+    int numDropped = 0;
+    synchronized (queue) {
+      for (Event event : events) {
+        if (!queue.offer(event)) {
+          numDropped++;
+        }
+      }
+      if (numDropped < events.size()) {
+        queue.notify();
+      }
+    }
+    if (numDropped > 0) {
+      LOG.warn("Queue is full. dropping " + numDropped + " messages");
+      getStats(topic).accumulateOutcomeWithDelta(Outcome.UNHANDLED_FAILURE, 0,
+          numDropped);
+    }
+  }
+
+  /**
+   * Events keep a reference to the body array, so the data of pooled
+   * messages is copied out and the buffer is released right away.
+   */
+  private static byte[] getBody(Message m) {
+    if (!m.isPooled()) {
+      return m.getData().array();
+    }
+    ByteBuffer data = m.getData().duplicate();
+    byte[] body = new byte[data.remaining()];
+    data.get(body);
+    m.release();
+    return body;
+  }
+
   @Override
   public void close() {
     super.close();
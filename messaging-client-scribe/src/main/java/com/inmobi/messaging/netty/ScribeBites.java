@@ -34,7 +34,7 @@ public class ScribeBites {
     output.writeBytes(catBytes);
 
     output.writeBytes(BODY_MARKER);
-    output.writeInt(m.getData().array().length);
+    output.writeInt(m.getData().remaining());
     output.writeBytes(m.getData());
 
     output.writeBytes(TRAILER);
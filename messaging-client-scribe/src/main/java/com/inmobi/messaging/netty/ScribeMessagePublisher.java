@@ -2,6 +2,7 @@ package com.inmobi.messaging.netty;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
@@ -84,6 +85,12 @@ public class ScribeMessagePublisher extends AbstractMessagePublisher implements
     scribeConnections.get(topic).publish(m);
   }
 
+  @Override
+  protected void publish(Map<String, String> headers, List<Message> msgs) {
+    String topic = headers.get(HEADER_TOPIC);
+    scribeConnections.get(topic).publish(msgs);
+  }
+
   public void close() {
     for (ScribeTopicPublisher connection : scribeConnections.values()) {
       connection.close();
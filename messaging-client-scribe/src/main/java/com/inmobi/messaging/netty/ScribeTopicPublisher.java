@@ -1,6 +1,7 @@
 package com.inmobi.messaging.netty;
 
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -138,12 +139,37 @@ public class ScribeTopicPublisher {
         LOG.warn("Messages to be sent Queue is full," +
             " dropping the message");
         stats.accumulateOutcomeWithDelta(Outcome.LOST, 0);
+        m.release();
         return;
       }
       toBeSent.add(m);
     }
   }
 
+  protected void publish(List<Message> msgs) {
+    addToSend(msgs);
+    trySending();
+  }
+
+  private void addToSend(List<Message> msgs) {
+    int numDropped = 0;
+    synchronized (toBeSent) {
+      for (Message m : msgs) {
+        if (toBeSent.remainingCapacity() == 0) {
+          numDropped++;
+          m.release();
+        } else {
+          toBeSent.add(m);
+        }
+      }
+    }
+    if (numDropped > 0) {
+      LOG.warn("Messages to be sent Queue is full, dropping " + numDropped
+          + " messages of the batch");
+      stats.accumulateOutcomeWithDelta(Outcome.LOST, 0, numDropped);
+    }
+  }
+
   private boolean isSendQueueEmpty() {
     synchronized (toBeSent) {
       return toBeSent.isEmpty();
@@ -176,8 +202,11 @@ public class ScribeTopicPublisher {
   private boolean send(Message m) {
     synchronized (toBeAcked) {
       if (toBeAcked.remainingCapacity() > 0) {
+        // the clone keeps a reference to the message data until it is acked;
+        // the reference of the sent message is not needed once it is written
         toBeAcked.add(m.clone());
         ScribeBites.publish(thisChannel, topic, m);
+        m.release();
         return true;
       } else {
         LOG.info("Could not send earlier messages successfully, not" +
@@ -278,7 +307,7 @@ public class ScribeTopicPublisher {
           LOG.warn("Emptying ack queue of size:" + toBeAcked.size());
         }
         while (!toBeAcked.isEmpty()) {
-          toBeAcked.remove();
+          toBeAcked.remove().release();
           stats.accumulateOutcomeWithDelta(Outcome.GRACEFUL_FAILURE, 0);
         }
       }
@@ -291,7 +320,7 @@ public class ScribeTopicPublisher {
         LOG.warn("Emptying message queue of size:" + toBeSent.size());
       }
       while (!toBeSent.isEmpty()) {
-        toBeSent.remove();
+        toBeSent.remove().release();
         stats.accumulateOutcomeWithDelta(Outcome.LOST, 0);
       }
     }
@@ -328,6 +357,9 @@ public class ScribeTopicPublisher {
         }
         if (success.getValue() == 0) {
           stats.accumulateOutcomeWithDelta(Outcome.SUCCESS, 0);
+          if (m != null) {
+            m.release();
+          }
         } else {
           if (enabledRetries) {
             LOG.info("Could not send the message successfully, resending");
@@ -340,6 +372,9 @@ public class ScribeTopicPublisher {
           } else {
             LOG.warn("Could not send the message successfully. Got TRY_LATER");
             stats.accumulateOutcomeWithDelta(Outcome.GRACEFUL_FAILURE, 0);
+            if (m != null) {
+              m.release();
+            }
           }
         }
       }